@@ -0,0 +1,69 @@
+package vending;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Base class for the benchmarks' machine, with the scenarios every benchmark is run in: a small or large float of
+ * change, and a full, nearly empty or empty product stock. The events of the machine are turned off, so the
+ * benchmarks measure the machine rather than the console.
+ */
+@State(Scope.Thread)
+public abstract class MachineFixture {
+
+    static final int MAX_SIZE = 20;
+    static final String CODE = "0003";
+
+    /**
+     * The number of each coin the machine holds for change.
+     */
+    @Param({"SMALL", "LARGE"})
+    public String coinFloat;
+
+    /**
+     * How much of each product the machine holds.
+     */
+    @Param({"FULL", "NEAR_EMPTY", "EMPTY"})
+    public String stock;
+
+    VendingMachine vend;
+    int changeLevel;
+    int productLevel;
+
+    @Setup(Level.Trial)
+    public void createMachine() {
+        changeLevel = coinFloat.equals("SMALL") ? 5 : 1_000;
+        productLevel = stock.equals("FULL") ? MAX_SIZE : stock.equals("NEAR_EMPTY") ? 1 : 0;
+        vend = new VendingMachine(MAX_SIZE, productLevel, changeLevel);
+        vend.setEventSink(MachineEventSink.NONE);
+    }
+
+    /**
+     * This method is used to put the machine back in its base state, with the scenario's stock and float of change,
+     * and empty buckets.
+     */
+    void reset() {
+        Session session = vend.getSession();
+        vend.setCurrentState(productLevel == 0 ? vend.getProductEmptyState() : vend.getNotSelectedState());
+        session.getInsertedCoinStock().setStock(0);
+        session.getRefundCoinStock().setStock(0);
+        session.getProductBucket().setStock(0);
+        session.getCoinBucket().setStock(0);
+        vend.getCoinStock().setStock(changeLevel);
+        for (Product product : vend.getCatalog().getProducts()) {
+            vend.getProductStock().put(product, productLevel);
+        }
+    }
+
+    /**
+     * This method is used to select the benchmarked product and insert a two pound coin for it, after a reset.
+     */
+    void selectAndPay() {
+        reset();
+        vend.selectItem(CODE);
+        vend.insertCoin(Coin.TWO_POUND, 1);
+    }
+}
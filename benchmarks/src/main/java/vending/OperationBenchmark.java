@@ -0,0 +1,102 @@
+package vending;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the latency of single operations on the machine's hot paths. Operations that change the machine are
+ * given a freshly reset machine in the state they need before each call, so every call does the same work.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperationBenchmark {
+
+    @State(Scope.Thread)
+    public static class Selected extends MachineFixture {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            reset();
+            vend.selectItem(CODE);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Paid extends MachineFixture {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            selectAndPay();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Reset extends MachineFixture {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            reset();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Idle extends MachineFixture {
+    }
+
+    @State(Scope.Thread)
+    public static class Admin extends MachineFixture {
+        @Setup(Level.Iteration)
+        public void prepare() {
+            reset();
+            vend.login("OwnerUsername", "P4ssw0rd");
+        }
+    }
+
+    @Benchmark
+    public Money insertCoin(Selected machine) {
+        machine.vend.insertCoin(Coin.TWO_POUND, 1);
+        return machine.vend.getSession().getInsertedCoinStockTotal();
+    }
+
+    @Benchmark
+    public Object purchaseItem(Paid machine) {
+        machine.vend.purchaseItem();
+        return machine.vend.getCurrentState();
+    }
+
+    @Benchmark
+    public Object requestRefund(Paid machine) {
+        machine.vend.requestRefund();
+        return machine.vend.getCurrentState();
+    }
+
+    @Benchmark
+    public Object calculateChangeDenominations(Reset machine) {
+        try {
+            return machine.vend.calculateChangeDenominations(Money.ofPence(385));
+        } catch (MachineStockException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Money getMachineTotalMoneyValue(Idle machine) {
+        return machine.vend.getCoinStock().getMachineTotalMoneyValue();
+    }
+
+    @Benchmark
+    public String printAdminCoinInfo(Admin machine) {
+        return machine.vend.printAdminCoinInfo();
+    }
+}
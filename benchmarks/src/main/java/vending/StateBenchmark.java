@@ -0,0 +1,99 @@
+package vending;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the main operation of each implementation of the machine's states, with the machine put in the state
+ * before each call. Run with the GC profiler, "-prof gc", to report the bytes each state allocates per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateBenchmark {
+
+    @State(Scope.Thread)
+    public static class NotSelected extends MachineFixture {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            reset();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ItemSelected extends MachineFixture {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            reset();
+            vend.selectItem(CODE);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CoinInserted extends MachineFixture {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            selectAndPay();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ItemPurchased extends MachineFixture {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            selectAndPay();
+            vend.purchaseItem();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class AdminMode extends MachineFixture {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            reset();
+            vend.login("OwnerUsername", "P4ssw0rd");
+        }
+    }
+
+    @Benchmark
+    public Object notSelectedSelectItem(NotSelected machine) {
+        machine.vend.selectItem(MachineFixture.CODE);
+        return machine.vend.getCurrentState();
+    }
+
+    @Benchmark
+    public Object itemSelectedInsertCoin(ItemSelected machine) {
+        machine.vend.insertCoin(Coin.TWO_POUND, 1);
+        return machine.vend.getCurrentState();
+    }
+
+    @Benchmark
+    public Object coinInsertedPurchaseItem(CoinInserted machine) {
+        machine.vend.purchaseItem();
+        return machine.vend.getCurrentState();
+    }
+
+    @Benchmark
+    public Object itemPurchasedGetBucketProducts(ItemPurchased machine) {
+        return machine.vend.getBucketProducts();
+    }
+
+    @Benchmark
+    public Object adminModeRefillAllProduct(AdminMode machine) {
+        machine.vend.adminRefillAllProduct();
+        return machine.vend.getCurrentState();
+    }
+}
@@ -0,0 +1,70 @@
+package vending;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the throughput of whole customer transactions, from selecting a product to collecting the bucket.
+ * Once the machine runs out of the product or of change it is restocked in the same call, as an admin would, so a
+ * nearly empty machine also measures how often it needs a refill.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+
+    @State(Scope.Thread)
+    public static class Machine extends MachineFixture {
+        Product product;
+
+        @Setup(Level.Iteration)
+        public void prepare() {
+            reset();
+            product = vend.getCatalog().getProduct(CODE);
+        }
+
+        void restockIfEmpty() {
+            if (productLevel > 0 && vend.getProductStock().getInt(product) == 0) {
+                reset();
+            }
+        }
+    }
+
+    @Benchmark
+    public Object purchase(Machine machine) {
+        machine.restockIfEmpty();
+        VendingMachine vend = machine.vend;
+        try {
+            vend.selectItem(MachineFixture.CODE);
+            vend.insertCoin(Coin.TWO_POUND, 1);
+            vend.purchaseItem();
+            vend.getBucketProducts();
+            return vend.getBucketCoins();
+        } catch (MachinePurchaseException | MachineStockException e) {
+            machine.reset();
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object refund(Machine machine) {
+        VendingMachine vend = machine.vend;
+        vend.selectItem(MachineFixture.CODE);
+        vend.insertCoin(Coin.ONE_POUND, 1);
+        vend.requestRefund();
+        return vend.getBucketCoins();
+    }
+}
@@ -0,0 +1,99 @@
+package vending;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of how many purchases per second a concurrent machine completes without a transaction log, and with a
+ * log that forces every purchase out to the disk before it returns. Each thread is a customer with its own session,
+ * so purchases finishing together can share one force of the log.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class TransactionLogBenchmark {
+
+    private static final String[] CODES = {"0001", "0002", "0003", "0004", "1001", "1002", "1003", "1004"};
+    private static final int STOCK = 10_000_000;
+
+    @State(Scope.Benchmark)
+    public static class Machine {
+
+        /**
+         * Whether the machine writes its transactions to a log.
+         */
+        @Param({"false", "true"})
+        public boolean durable;
+
+        VendingMachine vend;
+        TransactionLog log;
+        Path file;
+
+        @Setup(Level.Trial)
+        public void open() throws IOException {
+            file = Files.createTempFile("vending-machine", ".log");
+            Files.delete(file);
+            log = durable ? new TransactionLog(file) : null;
+            vend = new VendingMachine(ProductCatalog.DEFAULT, STOCK, STOCK, STOCK, true, null, log);
+            vend.setEventSink(MachineEventSink.NONE);
+        }
+
+        @Setup(Level.Iteration)
+        public void restock() {
+            vend.getCoinStock().setStock(STOCK);
+            for (Product product : vend.getCatalog().getProducts()) {
+                vend.getProductStock().put(product, STOCK);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            if (log != null) {
+                log.close();
+            }
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(TransactionLog.snapshotFileOf(file));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Customer {
+        Session session;
+        int next;
+
+        @Setup(Level.Trial)
+        public void open(Machine machine) {
+            session = machine.vend.openSession();
+        }
+    }
+
+    @Benchmark
+    public Object purchase(Customer customer) {
+        Session session = customer.session;
+        session.selectItem(CODES[customer.next++ % CODES.length]);
+        session.insertCoin(Coin.TWO_POUND, 2);
+        session.purchaseItem();
+        session.getBucketProducts();
+        return session.getBucketCoins();
+    }
+}
@@ -8,10 +8,10 @@ import java.util.Map;
  * the machine.
  */
 public class AdminModeState implements AdminState{
-    private final VendingMachine vendingMachine;
+    private final Session session;
 
-    public AdminModeState(VendingMachine vendingMachine) {
-        this.vendingMachine = vendingMachine;
+    public AdminModeState(Session session) {
+        this.session = session;
     }
 
     /**
@@ -27,10 +27,13 @@ public class AdminModeState implements AdminState{
         if (coinAmount < 1){
             throw new MachineStockException("Coin amount");
         } else {
-            int coinStockLevel = vendingMachine.getCoinStock().get(coin);
-            coinStockLevel = coinStockLevel + coinAmount;
-            vendingMachine.getCoinStock().put(coin, coinStockLevel);
-            System.out.println("Admin inserted " + coinAmount + " " + coin.toString() + " coins into the machine!");
+            session.lockStock();
+            try {
+                session.getCoinStock().add(coin, coinAmount);
+            } finally {
+                session.unlockStock();
+            }
+            session.getEventSink().publish(MachineEventType.ADMIN_COIN_INSERTED, coin, coinAmount);
         }
     }
 
@@ -42,14 +45,14 @@ public class AdminModeState implements AdminState{
      * @return The current amount of coins deposited by the user.
      */
     @Override
-    public double amountDeposited() {
+    public Money amountDeposited() {
         this.printAdminCoinInfo();
-        return vendingMachine.getCoinStockTotal();
+        return session.getCoinStockTotal();
     }
 
     @Override
     public void requestRefund() {
-        System.out.println("Currently in Admin Mode. To Access this functionality Logout!");
+        session.getEventSink().publish(MachineEventType.MESSAGE, "Currently in Admin Mode. To Access this functionality Logout!");
     }
 
     /**
@@ -63,7 +66,7 @@ public class AdminModeState implements AdminState{
     @Override
     public void selectItem(String code) throws MachineSelectionException {
         try {
-            vendingMachine.getKeypad().enterItemCode(code);
+            session.getKeypad().enterItemCode(code);
         } catch (Exception e) {
             throw new MachineSelectionException("InvalidCode");
         }
@@ -77,10 +80,11 @@ public class AdminModeState implements AdminState{
      */
     @Override
     public Product currentItem() {
-        String currentItem = vendingMachine.getSelectedItem().toString();
-        System.out.println("The currently selected item is: " + currentItem);
-        System.out.println("The currently selected item: " + currentItem + "'s price is £" + vendingMachine.getSelectedItemPrice());
-        return vendingMachine.getSelectedItem();
+        Product currentItem = session.getSelectedItem();
+        MachineEventSink events = session.getEventSink();
+        events.publish(MachineEventType.CURRENT_ITEM, currentItem);
+        events.publish(MachineEventType.ITEM_PRICE, currentItem, session.getSelectedItemPrice());
+        return currentItem;
     }
 
     /**
@@ -92,17 +96,22 @@ public class AdminModeState implements AdminState{
      */
     @Override
     public void purchaseItem() throws MachinePurchaseException {
-        Product selectedItem = vendingMachine.getSelectedItem();
-        int itemStock = vendingMachine.getProductStock().get(selectedItem);
-        if (itemStock == 0) {
-            String errorCode = "stock";
-            throw new MachinePurchaseException(errorCode);
-        } else {
-            System.out.println("Admin retrieved one " + selectedItem.toString() + "! The item dropped into the bucket.");
-            vendingMachine.setSelectedItem(null);
-            Product purchasedProduct = selectedItem;
-            vendingMachine.getProductBucket().insert(purchasedProduct);
-            vendingMachine.getProductStock().reduce(purchasedProduct);
+        Product selectedItem = session.getSelectedItem();
+        session.lockStock();
+        try {
+            int itemStock = session.getProductStock().getInt(selectedItem);
+            if (itemStock == 0) {
+                String errorCode = "stock";
+                throw new MachinePurchaseException(errorCode);
+            } else {
+                session.getEventSink().publish(MachineEventType.ADMIN_RETRIEVED, selectedItem);
+                session.setSelectedItem(null);
+                Product purchasedProduct = selectedItem;
+                session.getProductBucket().insert(purchasedProduct);
+                session.getProductStock().reduce(purchasedProduct);
+            }
+        } finally {
+            session.unlockStock();
         }
     }
 
@@ -115,22 +124,18 @@ public class AdminModeState implements AdminState{
      */
     @Override
     public List<Product> getBucketProducts() {
-        int size = vendingMachine.getProductBucket().size();
-        int count = 0;
-        List<Product> collectedItems = new ArrayList<>();
-        for (Map.Entry<Enum, Integer> entry : vendingMachine.getProductBucket().entrySet()) {
-            count++;
-            if(entry.getValue() > 0){
-                collectedItems.add((Product) entry.getKey());
-                System.out.println("You collected your " + entry.getKey().toString() + " from the bucket!");
-            } else if (size == count-1){
-                System.out.println("The bucket is empty. There are no items to collect from the bucket!");
-
+        ProductStock productBucket = session.getProductBucket();
+        List<Product> collectedItems = new ArrayList<>(productBucket.getInStockCount());
+        for (int id = productBucket.nextInStock(0); id >= 0; id = productBucket.nextInStock(id + 1)) {
+            Product product = productBucket.getKey(id);
+            for (int unit = productBucket.getInt(product); unit > 0; unit--) {
+                collectedItems.add(product);
+                session.getEventSink().publish(MachineEventType.PRODUCT_COLLECTED, product);
             }
         }
-        vendingMachine.getProductBucket().setStock(0);
-        if(vendingMachine.isMachineEmptyCheck()){
-            System.out.println("The machine is empty. Please refill the machine!");
+        productBucket.clear();
+        if(session.isMachineEmptyCheck()){
+            session.getEventSink().publish(MachineEventType.MESSAGE, "The machine is empty. Please refill the machine!");
         } else {
             this.printAdminProductInfo();
         }
@@ -140,23 +145,19 @@ public class AdminModeState implements AdminState{
     /**
      * This method is used to collect the refunded coins from the bucket.
      *
-     * @return A list containing all the coins collected from the bucket.
+     * @return The number of each coin collected from the bucket, which can also be read as a list of the coins.
      */
     @Override
-    public List<Coin> getBucketCoins() {
-        double changeAmount = vendingMachine.getRefundCoinStockTotal();
-        List<Coin> collectedCoins = new ArrayList<>();
-        if(changeAmount == 0){
-            System.out.println("The bucket is empty. There are no coins to collect from the bucket!");
+    public CoinCollection getBucketCoins() {
+        Money changeAmount = session.getRefundCoinStockTotal();
+        CoinCollection collectedCoins = CoinCollection.EMPTY;
+        if(changeAmount.isZero()){
+            session.getEventSink().publish(MachineEventType.MESSAGE, "The bucket is empty. There are no coins to collect from the bucket!");
         } else {
-            for (Map.Entry<Coin, Integer> entry : vendingMachine.getCoinBucket().entrySet()) {
-                if(entry.getValue() > 0){
-                    collectedCoins.add(entry.getKey());
-                }
-            }
-            System.out.println("You collected your £" + Rounding.round(changeAmount) + " total withdrawn money from the bucket!");
-            vendingMachine.getRefundCoinStock().setStock(0);
-            vendingMachine.getCoinBucket().setStock(0);
+            collectedCoins = CoinCollection.of(session.getCoinBucket());
+            session.getEventSink().publish(MachineEventType.WITHDRAWN_COLLECTED, changeAmount);
+            session.getRefundCoinStock().setStock(0);
+            session.getCoinBucket().setStock(0);
         }
         return collectedCoins;
     }
@@ -173,7 +174,7 @@ public class AdminModeState implements AdminState{
      */
     @Override
     public void login(String username, String password) throws AdminPrivilegeException {
-        System.out.println("You are already logged in to Admin!");
+        session.getEventSink().publish(MachineEventType.MESSAGE, "You are already logged in to Admin!");
     }
 
     /**
@@ -183,11 +184,11 @@ public class AdminModeState implements AdminState{
      */
     @Override
     public void logout(){
-        System.out.println("Logged out of Admin!");
-        if(vendingMachine.isMachineEmptyCheck()){
-            vendingMachine.setCurrentState(vendingMachine.getProductEmptyState());
+        session.getEventSink().publish(MachineEventType.ADMIN_LOGOUT);
+        if(session.isMachineEmptyCheck()){
+            session.setCurrentState(session.getProductEmptyState());
         } else {
-            vendingMachine.setCurrentState(vendingMachine.getNotSelectedState());
+            session.setCurrentState(session.getNotSelectedState());
         }
     }
 
@@ -195,18 +196,18 @@ public class AdminModeState implements AdminState{
      * This method is used by the admin to withdraw all coins from the machine.
      * Throws an error if the user is not in admin mode.
      *
-     * @return A list of all the coins withdrawn from the machine.
+     * @return The number of each coin withdrawn from the machine, which can also be read as a list of the coins.
      * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
      */
     @Override
-    public List<Coin> withdrawCoins() throws AdminPrivilegeException{
-        double refundAmount = Rounding.round(vendingMachine.getCoinStockTotal());
+    public CoinCollection withdrawCoins() throws AdminPrivilegeException{
+        Money refundAmount = session.getCoinStockTotal();
 
-        vendingMachine.calculateChangeDenominations(refundAmount);
-        vendingMachine.setCoinBucket();
-        System.out.println("Your total change £" + refundAmount + " Total has been placed into the bucket. Please collect your withdrawn coins!");
-        vendingMachine.getInsertedCoinStock().setStock(0);
-        return vendingMachine.getBucketCoins();
+        session.calculateChangeDenominations(refundAmount);
+        session.setCoinBucket();
+        session.getEventSink().publish(MachineEventType.COINS_WITHDRAWN, refundAmount);
+        session.getInsertedCoinStock().setStock(0);
+        return session.getBucketCoins();
     }
 
     /**
@@ -219,8 +220,9 @@ public class AdminModeState implements AdminState{
     @Override
     public void depositCoins(Integer amount) throws MachineStockException{
         if(amount > 0){
-            for (Map.Entry<Coin, Integer> entry : vendingMachine.getCoinStock().entrySet()) {
-                vendingMachine.insertCoin(entry.getKey(), amount);
+            CoinStock coinStock = session.getCoinStock();
+            for (int i = 0; i < coinStock.size(); i++) {
+                session.insertCoin(coinStock.getKey(i), amount);
             }
         } else {
             throw new MachineStockException("Inserted amount of coins must be more than 0");
@@ -228,32 +230,36 @@ public class AdminModeState implements AdminState{
     }
 
     /**
-     * This method is used by an admin to refill the entered product to the machine's maximum allowed stock level.
+     * This method is used by an admin to refill the entered product to the machine's maximum allowed stock level,
+     * or the product's own capacity if it has one.
      * Throws an error if the user is not in admin mode.
      *
      * @param product The product to refill the current machine's max stock level.
      */
     @Override
     public void adminRefillProduct(Product product) {
-        int machineMaxSize = vendingMachine.getMAX_SIZE();
-        int currentStockLevel = vendingMachine.getProductStock().get(product);
+        int machineMaxSize = session.getCapacity(product);
+        int currentStockLevel = session.getProductStock().getInt(product);
         if(machineMaxSize > currentStockLevel){
-            vendingMachine.getProductStock().put(product, machineMaxSize);
-            System.out.println("The Vending Machine was fully refilled of " + product.toString() + "!");
+            session.getProductStock().put(product, machineMaxSize);
+            session.getEventSink().publish(MachineEventType.PRODUCT_REFILLED, product);
         } else {
-            System.out.println("The Vending Machine's max stock size is: " + machineMaxSize + ". The Vending Machine is already full of " + product.toString() + ".");
+            session.getEventSink().publish(MachineEventType.PRODUCT_FULL, product, machineMaxSize);
         }
     }
 
     /**
      * This method is used by the admin to completely refill the machine to its maximum allowed stock level for
-     * all products.
+     * all products, or each product's own capacity if it has one.
      */
     @Override
     public void adminRefillAllProduct() {
-        int machineMaxSize = vendingMachine.getMAX_SIZE();
-        vendingMachine.getProductStock().setStock(machineMaxSize);
-        System.out.println("The Vending Machine was fully refilled!");
+        ProductStock productStock = session.getProductStock();
+        for (int i = 0; i < productStock.size(); i++) {
+            Product product = productStock.getKey(i);
+            productStock.put(product, session.getCapacity(product));
+        }
+        session.getEventSink().publish(MachineEventType.MACHINE_REFILLED);
     }
 
     /**
@@ -264,22 +270,23 @@ public class AdminModeState implements AdminState{
      */
     @Override
     public String printAdminCoinInfo(){
-        if(vendingMachine.getCurrentState() == vendingMachine.getAdminModeState()){
-            double totalMachineMoney = vendingMachine.getCoinStockTotal();
+        if(session.getCurrentState() == session.getAdminModeState()){
+            Money totalMachineMoney = session.getCoinStockTotal();
             StringBuilder str = new StringBuilder();
             str.append("\n |--------------------------------------");
             str.append("\n | \t Printing Coin Stock information");
             str.append("\n |--------------------------------------");
             str.append("\n | \t Total money in machine = £").append(totalMachineMoney);
             str.append("\n |--------------------------------------");
-            for (Map.Entry<Coin, Integer> entry : vendingMachine.getCoinStock().entrySet()) {
+            for (Map.Entry<Coin, Integer> entry : session.getCoinStock().entrySet()) {
                 Coin coin = entry.getKey();
-                int value = vendingMachine.getCoinStock().get(coin);
+                int value = session.getCoinStock().get(coin);
                 str.append("\n |\t Coin: ").append(coin).append(" Amount: ").append(value);
             }
             str.append("\n |--------------------------------------");
-            System.out.println(str);
-            return str.toString();
+            String coinInfo = str.toString();
+            session.getEventSink().publish(MachineEventType.ADMIN_REPORT, coinInfo);
+            return coinInfo;
         } else {
             throw new AdminPrivilegeException("Must be logged in to Admin mode to print Vending Machine info!");
         }
@@ -293,19 +300,20 @@ public class AdminModeState implements AdminState{
      */
     @Override
     public String printAdminProductInfo(){
-        if(vendingMachine.getCurrentState() == vendingMachine.getAdminModeState()){
+        if(session.getCurrentState() == session.getAdminModeState()){
             StringBuilder str1 = new StringBuilder();
             str1.append("\n |--------------------------------------");
             str1.append("\n | \t Printing Product Stock information");
             str1.append("\n |--------------------------------------");
-            for (Map.Entry<Enum, Integer> entry : vendingMachine.getProductStock().entrySet()) {
-                Product product = (Product) entry.getKey();
-                int value = vendingMachine.getProductStock().get(product);
+            for (Map.Entry<Product, Integer> entry : session.getProductStock().entrySet()) {
+                Product product = entry.getKey();
+                int value = session.getProductStock().get(product);
                 str1.append("\n |\t Product: ").append(product).append(" Amount: ").append(value);
             }
             str1.append("\n |--------------------------------------");
-            System.out.println(str1);
-            return str1.toString();
+            String productInfo = str1.toString();
+            session.getEventSink().publish(MachineEventType.ADMIN_REPORT, productInfo);
+            return productInfo;
         } else {
             throw new AdminPrivilegeException("Must be logged in to Admin mode to print Vending Machine info!");
         }
@@ -318,7 +326,7 @@ public class AdminModeState implements AdminState{
      */
     @Override
     public void printAdminInfo(){
-        if(vendingMachine.getCurrentState() == vendingMachine.getAdminModeState()){
+        if(session.getCurrentState() == session.getAdminModeState()){
             printAdminProductInfo();
             printAdminCoinInfo();
         } else {
@@ -3,11 +3,29 @@
  * the correct login details, or when the user attempts to use a method without being in admin state.
  */
 public class AdminPrivilegeException extends RuntimeException {
+    private final String errorType;
+
     public AdminPrivilegeException(String errorType) {
+        super(message(errorType));
+        this.errorType = errorType;
+    }
+
+    /**
+     * @return The type of admin error.
+     */
+    public String getErrorType() {
+        return errorType;
+    }
+
+    /**
+     * @param errorType The type of admin error.
+     * @return The error message shown to the user for the type of error.
+     */
+    private static String message(String errorType) {
         if(errorType.equals("Login")){
-            System.out.println("ERROR: The login details entered were incorrect!");
+            return "ERROR: The login details entered were incorrect!";
         } else {
-            System.out.println("ERROR: You cannot perform this action without Admin privileges!");
+            return "ERROR: You cannot perform this action without Admin privileges!";
         }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,3 @@
-import java.util.List;
-
 /**
  * Interface to provide classes with admin state methods.
  * These methods can only be used when the admin has logged into the machine.
@@ -8,7 +6,7 @@ public interface AdminState extends State{
     void logout() throws AdminPrivilegeException;
 
     // Take the money out of the machine
-    List<Coin> withdrawCoins() throws AdminPrivilegeException;
+    CoinCollection withdrawCoins() throws AdminPrivilegeException;
 
     // Add money to the machine
     void depositCoins(Integer amount) throws AdminPrivilegeException;
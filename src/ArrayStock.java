@@ -0,0 +1,323 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class for the machine's stock inventories. Stores each key's stock level as a primitive int
+ * in an array indexed by the key's dense id, so reading and updating stock levels does not box integers
+ * or allocate.
+ *
+ * @param <E> The key of the inventory.
+ */
+public abstract class ArrayStock<E extends Item> implements Stock<E, Integer> {
+
+    private static final StockListener[] NO_LISTENERS = new StockListener[0];
+    private static final LowStockListener[] NO_LOW_STOCK_LISTENERS = new LowStockListener[0];
+
+    private final E[] keys;
+    private final Class<?> keyType;
+    private final int[] levels;
+    private List<Map.Entry<E, Integer>> entries;
+    private StockListener[] listeners = NO_LISTENERS;
+    private int[] lowWatermarks;
+    private LowStockListener[] lowStockListeners = NO_LOW_STOCK_LISTENERS;
+
+    /**
+     * Constructor for the array stock. Every key starts with a stock level of zero.
+     *
+     * @param keys The keys of the inventory, each at the position of its id.
+     */
+    protected ArrayStock(E[] keys) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].getId() != i) {
+                throw new IllegalArgumentException("Stock key " + keys[i] + " is not at the position of its id");
+            }
+        }
+        this.keys = keys;
+        this.keyType = keys.getClass().getComponentType();
+        this.levels = new int[keys.length];
+    }
+
+    /**
+     * This method is called whenever a key's stock level changes. Subclasses override it to keep
+     * their own running totals up to date.
+     *
+     * @param key The key whose stock level changed.
+     * @param oldLevel The previous stock level.
+     * @param newLevel The new stock level.
+     */
+    protected void levelChanged(E key, int oldLevel, int newLevel) {
+    }
+
+    /**
+     * This method is used to add a listener that is told whenever a stock level of the inventory changes.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(StockListener listener) {
+        StockListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * This method is used to add a listener that is told when a stock level of the inventory falls below its low watermark,
+     * and when it is restocked back up to it.
+     *
+     * @param listener The listener to add.
+     */
+    public void addLowStockListener(LowStockListener listener) {
+        LowStockListener[] updated = Arrays.copyOf(lowStockListeners, lowStockListeners.length + 1);
+        updated[lowStockListeners.length] = listener;
+        lowStockListeners = updated;
+    }
+
+    /**
+     * This method is used to set the low watermark of a key. Low stock listeners are told once when the key's stock level
+     * falls below the watermark, and once when it is restocked back up to it, rather than on every change while it is low.
+     *
+     * @param item The key.
+     * @param watermark The lowest stock level that is not low, or zero for no watermark.
+     */
+    public void setLowWatermark(Item item, int watermark) {
+        if (watermark < 0) {
+            throw new IllegalArgumentException("A low watermark must be 0 or more");
+        }
+        if (lowWatermarks == null) {
+            if (watermark == 0) {
+                return;
+            }
+            lowWatermarks = new int[levels.length];
+        }
+        lowWatermarks[indexOf(item)] = watermark;
+    }
+
+    /**
+     * This method is used to set the low watermark of every key.
+     *
+     * @param watermark The lowest stock level that is not low, or zero for no watermarks.
+     */
+    public void setLowWatermarks(int watermark) {
+        for (int i = 0; i < keys.length; i++) {
+            setLowWatermark(keys[i], watermark);
+        }
+    }
+
+    /**
+     * @param item The key.
+     * @return The lowest stock level of the key that is not low, or zero if it has no watermark.
+     */
+    public int getLowWatermark(Item item) {
+        return lowWatermarks == null ? 0 : lowWatermarks[indexOf(item)];
+    }
+
+    /**
+     * @param item The key.
+     * @return True if the key's stock level is below its low watermark.
+     */
+    public boolean isLow(Item item) {
+        return levels[indexOf(item)] < getLowWatermark(item);
+    }
+
+    /**
+     * This method is used to set the stock level of the key at the index, and notify the subclass and listeners of the change.
+     *
+     * @param index The id of the key.
+     * @param newLevel The new stock level.
+     */
+    private void setLevel(int index, int newLevel) {
+        int oldLevel = levels[index];
+        if (oldLevel != newLevel) {
+            levels[index] = newLevel;
+            levelChanged(keys[index], oldLevel, newLevel);
+            for (StockListener listener : listeners) {
+                listener.stockChanged(keys[index], oldLevel, newLevel);
+            }
+            if (lowWatermarks != null) {
+                int watermark = lowWatermarks[index];
+                if (oldLevel >= watermark && newLevel < watermark) {
+                    for (LowStockListener listener : lowStockListeners) {
+                        listener.stockLow(keys[index], newLevel, watermark);
+                    }
+                } else if (oldLevel < watermark && newLevel >= watermark) {
+                    for (LowStockListener listener : lowStockListeners) {
+                        listener.stockRestored(keys[index], newLevel, watermark);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This method is used to get the position of the item within the inventory.
+     *
+     * @param item The key.
+     * @return The id of the item.
+     * @throws ClassCastException Throws exception if the item is not a key of this inventory, such as a coin given to a product stock.
+     */
+    private int indexOf(Item item) {
+        if (!keyType.isInstance(item)) {
+            throw new ClassCastException(item.getClass() + " != " + keyType);
+        }
+        return item.getId();
+    }
+
+    /**
+     * This method is Used to set the inventory's stock to the inputted level.
+     *
+     * @param stockLevel The integer to set the stock inventory level to.
+     */
+    @Override
+    public void setStock(Integer stockLevel) {
+        int level = stockLevel;
+        for (int i = 0; i < levels.length; i++) {
+            setLevel(i, level);
+        }
+    }
+
+    /**
+     * This method is used to change the chosen key's value within the inventory.
+     *
+     * @param keyValue The key.
+     * @param value The value being assigned within the inventory to the provided key.
+     */
+    @Override
+    public void put(Item keyValue, Integer value) {
+        setLevel(indexOf(keyValue), value);
+    }
+
+    /**
+     * This method is used to increase the chosen key's value by one.
+     *
+     * @param insertedItem The key.
+     */
+    @Override
+    public void insert(Item insertedItem) {
+        add(insertedItem, 1);
+    }
+
+    /**
+     * This method is used to decrease the chosen key's value by one.
+     *
+     * @param reducedItem The key.
+     */
+    @Override
+    public void reduce(Item reducedItem) {
+        subtract(reducedItem, 1);
+    }
+
+    /**
+     * This method is used to increase the chosen key's value by the inputted amount.
+     *
+     * @param item The key.
+     * @param amount The amount to add to the key's value.
+     */
+    @Override
+    public void add(Item item, int amount) {
+        int index = indexOf(item);
+        setLevel(index, levels[index] + amount);
+    }
+
+    /**
+     * This method is used to decrease the chosen key's value by the inputted amount.
+     *
+     * @param item The key.
+     * @param amount The amount to subtract from the key's value.
+     */
+    @Override
+    public void subtract(Item item, int amount) {
+        int index = indexOf(item);
+        setLevel(index, levels[index] - amount);
+    }
+
+    /**
+     * This method is used to return the value of the specified key.
+     *
+     * @param item The key.
+     * @return The value of the associated key.
+     */
+    @Override
+    public Integer get(Item item) {
+        return levels[indexOf(item)];
+    }
+
+    /**
+     * This method is used to return the value of the specified key, without boxing it.
+     *
+     * @param item The key.
+     * @return The value of the associated key.
+     */
+    @Override
+    public int getInt(Item item) {
+        return levels[indexOf(item)];
+    }
+
+    /**
+     * This method is used to return the key at the specified position, in id order.
+     *
+     * @param index The position of the key.
+     * @return The key at the position.
+     */
+    @Override
+    public E getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * This method is used to return a live view of the inventory's keys and values, in id order.
+     * The entries are created once and then reused.
+     *
+     * @return The entry view of the inventory.
+     */
+    @Override
+    public Iterable<? extends Map.Entry<E, Integer>> entrySet() {
+        if (entries == null) {
+            List<Map.Entry<E, Integer>> view = new ArrayList<>(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                view.add(new StockEntry(i));
+            }
+            entries = Collections.unmodifiableList(view);
+        }
+        return entries;
+    }
+
+    /**
+     * This method is used to return the number of keys in the inventory.
+     *
+     * @return The size of the inventory.
+     */
+    @Override
+    public int size() {
+        return levels.length;
+    }
+
+    /**
+     * A live entry of the inventory, reading and writing the key's stock level.
+     */
+    private final class StockEntry implements Map.Entry<E, Integer> {
+        private final int index;
+
+        private StockEntry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public E getKey() {
+            return keys[index];
+        }
+
+        @Override
+        public Integer getValue() {
+            return levels[index];
+        }
+
+        @Override
+        public Integer setValue(Integer value) {
+            int oldLevel = levels[index];
+            setLevel(index, value);
+            return oldLevel;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Class for working out the change the machine gives from its coin stock.
+ * Finds the combination of coins in stock with the fewest coins that adds up to an amount, or reports that
+ * the change cannot be made, without taking any coins from the stock.
+ *
+ * The fewest coins for every amount up to TABLE_LIMIT_PENCE is cached in a table, built one layer per coin
+ * type. When a coin's stock level changes only the layers from that coin onwards are rebuilt, the next time
+ * the table is used. Amounts above the table limit are worked out when they are requested, in a second table that is
+ * kept and reused, so it is only allocated again when a larger amount is requested than any before it.
+ */
+public class ChangeMaker implements StockListener {
+
+    static final int TABLE_LIMIT_PENCE = 1000;
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final CoinStock coinStock;
+    private final int coinTypes;
+    private int[][] table;
+    private int[][] scratch;
+    private int[] window;
+    private int dirtyFrom = 0;
+
+    /**
+     * Constructor for the change maker. Registers the change maker with the coin stock, so it is told
+     * whenever a coin's stock level changes.
+     *
+     * @param coinStock The coin stock that change is given from.
+     */
+    public ChangeMaker(CoinStock coinStock) {
+        this.coinStock = coinStock;
+        this.coinTypes = coinStock.size();
+        coinStock.addListener(this);
+    }
+
+    /**
+     * This method is called when a coin's stock level changes, and marks the cached table as out of date
+     * from that coin's layer onwards.
+     *
+     * @param item The coin whose stock level changed.
+     * @param oldLevel The previous stock level.
+     * @param newLevel The new stock level.
+     */
+    @Override
+    public void stockChanged(Item item, int oldLevel, int newLevel) {
+        int index = ((Coin) item).ordinal();
+        if (index < dirtyFrom) {
+            dirtyFrom = index;
+        }
+    }
+
+    /**
+     * This method is used to check whether the machine can give the amount as change from its current coin stock.
+     *
+     * @param amount The amount of change in pence.
+     * @return True if the coins in stock can make up the amount exactly.
+     */
+    public boolean canMakeChange(long amount) {
+        return minimumCoins(amount) >= 0;
+    }
+
+    /**
+     * This method is used to find the fewest coins from the current coin stock that make up the amount.
+     *
+     * @param amount The amount of change in pence.
+     * @return The fewest number of coins that make up the amount, or -1 if the amount cannot be made.
+     */
+    public int minimumCoins(long amount) {
+        if (amount < 0 || amount > coinStock.getTotalPence()) {
+            return -1;
+        } else if (amount == coinStock.getTotalPence()) {
+            return coinStock.getCoinCount();
+        } else if (amount <= TABLE_LIMIT_PENCE) {
+            int coins = updatedTable()[coinTypes][(int) amount];
+            return coins == UNREACHABLE ? -1 : coins;
+        } else {
+            int[][] layers = buildLayers((int) amount);
+            int coins = layers[coinTypes][(int) amount];
+            return coins == UNREACHABLE ? -1 : coins;
+        }
+    }
+
+    /**
+     * This method is used to find the combination of coins from the current coin stock with the fewest coins
+     * that make up the amount. The coin stock is not changed.
+     *
+     * @param amount The amount of change in pence.
+     * @param coinCounts Array filled with the number of each coin to give, indexed by the coin's ordinal.
+     * @return True if the amount can be made, false if the change cannot be made from the coins in stock.
+     */
+    public boolean makeChange(long amount, int[] coinCounts) {
+        for (int i = 0; i < coinTypes; i++) {
+            coinCounts[i] = 0;
+        }
+        if (amount < 0 || amount > coinStock.getTotalPence()) {
+            return false;
+        } else if (amount == coinStock.getTotalPence()) {
+            for (int i = 0; i < coinTypes; i++) {
+                coinCounts[i] = coinStock.getInt(coinStock.getKey(i));
+            }
+            return true;
+        }
+        int[][] layers = amount <= TABLE_LIMIT_PENCE ? updatedTable() : buildLayers((int) amount);
+        int remaining = (int) amount;
+        if (layers[coinTypes][remaining] == UNREACHABLE) {
+            return false;
+        }
+        for (int i = coinTypes - 1; i >= 0; i--) {
+            Coin coin = coinStock.getKey(i);
+            int coinValue = coin.getPence();
+            int maxCoins = Math.min(coinStock.getInt(coin), remaining / coinValue);
+            int target = layers[i + 1][remaining];
+            for (int k = 0; k <= maxCoins; k++) {
+                int previous = layers[i][remaining - k * coinValue];
+                if (previous != UNREACHABLE && previous + k == target) {
+                    coinCounts[i] = k;
+                    remaining = remaining - k * coinValue;
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method is used to return the cached table, rebuilding any layers that are out of date.
+     *
+     * @return The cached table of the fewest coins for each amount up to the table limit.
+     */
+    private int[][] updatedTable() {
+        if (table == null) {
+            table = new int[coinTypes + 1][TABLE_LIMIT_PENCE + 1];
+            fillBaseLayer(table[0], TABLE_LIMIT_PENCE);
+            dirtyFrom = 0;
+        }
+        if (dirtyFrom < coinTypes) {
+            fillLayers(table, dirtyFrom, TABLE_LIMIT_PENCE);
+            dirtyFrom = coinTypes;
+        }
+        return table;
+    }
+
+    /**
+     * This method is used to build a table for amounts larger than the cached table covers. The table is built in the
+     * scratch table, which is only replaced if it does not cover the limit, and may cover more amounts than the limit.
+     *
+     * @param limit The largest amount the table covers.
+     * @return The table of the fewest coins for each amount up to the limit.
+     */
+    private int[][] buildLayers(int limit) {
+        if (scratch == null || scratch[0].length < limit + 1) {
+            scratch = new int[coinTypes + 1][limit + 1];
+        }
+        fillBaseLayer(scratch[0], limit);
+        fillLayers(scratch, 0, limit);
+        return scratch;
+    }
+
+    /**
+     * This method is used to fill the layer for no coins, where only zero pence can be made.
+     *
+     * @param layer The base layer of the table.
+     * @param limit The largest amount the table covers.
+     */
+    private void fillBaseLayer(int[] layer, int limit) {
+        layer[0] = 0;
+        for (int i = 1; i <= limit; i++) {
+            layer[i] = UNREACHABLE;
+        }
+    }
+
+    /**
+     * This method is used to fill the layers of the table from the given coin onwards. Each layer holds the
+     * fewest coins for each amount using the coins up to that layer, limited to the number of each coin in stock.
+     * Uses a sliding window minimum for each remainder of the coin's value, so each layer takes O(limit) time.
+     *
+     * @param layers The table to fill.
+     * @param fromCoin The ordinal of the first coin whose layer needs filling.
+     * @param limit The largest amount the table covers.
+     */
+    private void fillLayers(int[][] layers, int fromCoin, int limit) {
+        if (window == null || window.length < limit + 1) {
+            window = new int[limit + 1];
+        }
+        for (int i = fromCoin; i < coinTypes; i++) {
+            Coin coin = coinStock.getKey(i);
+            int coinValue = coin.getPence();
+            int available = coinStock.getInt(coin);
+            int[] previous = layers[i];
+            int[] current = layers[i + 1];
+            for (int remainder = 0; remainder < coinValue && remainder <= limit; remainder++) {
+                int head = 0;
+                int tail = 0;
+                for (int j = 0, amount = remainder; amount <= limit; j++, amount += coinValue) {
+                    if (previous[amount] != UNREACHABLE) {
+                        int value = previous[amount] - j;
+                        while (tail > head && windowValue(previous, remainder, coinValue, window[tail - 1]) >= value) {
+                            tail--;
+                        }
+                        window[tail++] = j;
+                    }
+                    while (tail > head && window[head] < j - available) {
+                        head++;
+                    }
+                    current[amount] = tail > head
+                            ? windowValue(previous, remainder, coinValue, window[head]) + j
+                            : UNREACHABLE;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The fewest coins for the j-th amount with the remainder, less j, from the previous layer.
+     */
+    private static int windowValue(int[] previous, int remainder, int coinValue, int j) {
+        return previous[remainder + j * coinValue] - j;
+    }
+}
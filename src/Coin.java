@@ -3,18 +3,21 @@
  */
 enum Coin implements Item {
 
-        TWO_POUND(2),
-        ONE_POUND(1),
-        FIFTY_PENCE(0.5),
-        TWENTY_PENCE(0.2),
-        TEN_PENCE(0.1),
-        FIVE_PENCE(0.05),
-        TWO_PENCE(0.02),
-        ONE_PENCE(0.01);
-        private final double moneyValue;
-
-        Coin(double moneyValue){
-                this.moneyValue = moneyValue;
+        TWO_POUND(200),
+        ONE_POUND(100),
+        FIFTY_PENCE(50),
+        TWENTY_PENCE(20),
+        TEN_PENCE(10),
+        FIVE_PENCE(5),
+        TWO_PENCE(2),
+        ONE_PENCE(1);
+        private static final Coin[] COINS = values();
+        private final int pence;
+        private final Money moneyValue;
+
+        Coin(int pence){
+                this.pence = pence;
+                this.moneyValue = Money.ofPence(pence);
         }
 
         /**
@@ -30,11 +33,41 @@ enum Coin implements Item {
         }
 
         /**
-         * @return The money value of the product.
+         * @return The coin's id, its position in the enum.
+         */
+        @Override
+        public int getId(){
+        return ordinal();
+        }
+
+        /**
+         * @param id The id of a coin.
+         * @return The coin with the id, without copying the array of coins.
+         */
+        static Coin get(int id){
+        return COINS[id];
+        }
+
+        /**
+         * @return The number of coins, without copying the array of coins.
+         */
+        static int count(){
+        return COINS.length;
+        }
+
+        /**
+         * @return The money value of the coin.
          */
-        public double getMoneyValue(){
+        public Money getMoneyValue(){
         return moneyValue;
         }
 
+        /**
+         * @return The money value of the coin in pence.
+         */
+        public int getPence(){
+        return pence;
+        }
+
 }
 
@@ -0,0 +1,99 @@
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Immutable class for the coins collected from the bucket, or withdrawn by an admin, held as the number of each coin.
+ * Creating one takes time in the number of coin denominations, not the number of coins, so cashing out a large float
+ * does not build a list with an entry per coin.
+ *
+ * It is also a read only {@link java.util.List} of the individual coins, largest first, for callers that need them one
+ * by one. The list is a view worked out from the counts as it is read; it is never stored.
+ */
+public final class CoinCollection extends AbstractList<Coin> implements RandomAccess {
+
+    public static final CoinCollection EMPTY = new CoinCollection(new int[Coin.values().length]);
+
+    private final int[] counts;
+    private final int size;
+    private final long totalPence;
+
+    /**
+     * Constructor for the coin collection.
+     *
+     * @param counts The number of each coin, by coin id. The array is copied.
+     */
+    CoinCollection(int[] counts) {
+        this.counts = counts.clone();
+        int coins = 0;
+        long pence = 0;
+        for (int id = 0; id < this.counts.length; id++) {
+            coins = coins + this.counts[id];
+            pence = pence + (long) Coin.get(id).getPence() * this.counts[id];
+        }
+        this.size = coins;
+        this.totalPence = pence;
+    }
+
+    /**
+     * This method is used to copy the coins held in a coin stock, such as the coin bucket.
+     *
+     * @param coinStock The coin stock.
+     * @return The coins in the stock.
+     */
+    static CoinCollection of(CoinStock coinStock) {
+        int[] counts = new int[coinStock.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[coinStock.getKey(i).getId()] = coinStock.getInt(coinStock.getKey(i));
+        }
+        return new CoinCollection(counts);
+    }
+
+    /**
+     * @param coin The coin.
+     * @return The number of the coin collected.
+     */
+    public int getCount(Coin coin) {
+        return counts[coin.getId()];
+    }
+
+    /**
+     * @return The number of each coin collected, by coin id.
+     */
+    public int[] getCounts() {
+        return counts.clone();
+    }
+
+    /**
+     * @return The total value of the coins collected.
+     */
+    public Money getTotal() {
+        return Money.ofPence(totalPence);
+    }
+
+    /**
+     * @return The number of coins collected.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index The position of a coin in the list, with the largest coins first.
+     * @return The coin at the position.
+     */
+    @Override
+    public Coin get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int remaining = index;
+        for (int id = 0; id < counts.length; id++) {
+            if (remaining < counts[id]) {
+                return Coin.get(id);
+            }
+            remaining = remaining - counts[id];
+        }
+        throw new IllegalStateException();
+    }
+}
@@ -1,17 +1,15 @@
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Class for the coin inserted state. This is the state of the machine once a user has
  * inserted money. To proceed the user must purchase an item if enough money has been entered.
  */
 public class CoinInsertedState implements State{
-    private final VendingMachine vendingMachine;
-    private double afterPurchaseRefundAmount = 0;
+    private final Session session;
+    private Money afterPurchaseRefundAmount = Money.ZERO;
 
-    public CoinInsertedState(VendingMachine vendingMachine) {
-        this.vendingMachine = vendingMachine;
+    public CoinInsertedState(Session session) {
+        this.session = session;
     }
 
     /**
@@ -27,19 +25,31 @@ public class CoinInsertedState implements State{
         if (coinAmount < 1){
             throw new MachineStockException("Coin amount");
         } else {
-            vendingMachine.getCoinSlot().coinInserted(coin,coinAmount);
+            session.getCoinSlot().coinInserted(coin,coinAmount);
         }
     }
 
+    /**
+     * This method is used to insert a burst of coins at once.
+     * In this state the coins are added to the coins already inserted.
+     *
+     * The burst has already been checked by the session.
+     *
+     * @param coinCounts The number of each coin inserted, by coin id.
+     */
+    @Override
+    public void insertCoins(int[] coinCounts) throws MachineStockException {
+        session.getCoinSlot().coinsInserted(coinCounts);
+    }
+
     /**
      * Method used to tell the user the amount of coins currently deposited by them.
      *
      * @return The current amount of coins deposited by the user.
      */
     @Override
-    public double amountDeposited() {
-        double total = vendingMachine.getInsertedCoinStockTotal();
-        return Rounding.round(total);
+    public Money amountDeposited() {
+        return session.getInsertedCoinStockTotal();
     }
 
     /**
@@ -50,21 +60,26 @@ public class CoinInsertedState implements State{
      */
     @Override
     public void requestRefund(){
-        double refundAmount = Rounding.round(amountDeposited());
-        if (refundAmount == 0){
-            System.out.println("You have not inserted any coins!");
+        Money refundAmount = amountDeposited();
+        if (refundAmount.isZero()){
+            session.getEventSink().publish(MachineEventType.MESSAGE, "You have not inserted any coins!");
         } else {
-            if(refundAmount > vendingMachine.getCoinStockTotal()){
-                throw new MachineStockException("CoinStock");
+            session.lockStock();
+            try {
+                if(!session.canMakeChange(refundAmount)){
+                    throw new MachineStockException("CoinStock");
+                }
+                session.calculateChangeDenominations(refundAmount);
+            } finally {
+                session.unlockStock();
             }
-            vendingMachine.calculateChangeDenominations(refundAmount);
-            vendingMachine.setCoinBucket();
-            System.out.println("Your total change £" + refundAmount + " Total has been placed into the bucket. Please collect your change!");
-            vendingMachine.getInsertedCoinStock().setStock(0);
+            session.setCoinBucket();
+            session.getEventSink().publish(MachineEventType.CHANGE_PLACED, refundAmount);
+            session.getInsertedCoinStock().setStock(0);
         }
-        vendingMachine.getBucketCoins();
-        System.out.println("Your order has been cancelled. Please select an item to proceed!");
-        vendingMachine.setCurrentState(vendingMachine.getNotSelectedState());
+        session.getBucketCoins();
+        session.getEventSink().publish(MachineEventType.ORDER_CANCELLED);
+        session.setCurrentState(session.getNotSelectedState());
     }
 
     /**
@@ -78,7 +93,7 @@ public class CoinInsertedState implements State{
     @Override
     public void selectItem(String code) throws MachineSelectionException {
         try {
-            vendingMachine.getKeypad().enterItemCode(code);
+            session.getKeypad().enterItemCode(code);
         } catch (Exception e) {
             throw new MachineSelectionException("InvalidCode");
         }
@@ -92,42 +107,55 @@ public class CoinInsertedState implements State{
      */
     @Override
     public Product currentItem() {
-        String currentItem = vendingMachine.getSelectedItem().toString();
-        System.out.println("The currently selected item is: " + currentItem);
-        System.out.println("The currently selected item: " + currentItem + "'s price is £" + vendingMachine.getSelectedItemPrice());
-        return vendingMachine.getSelectedItem();
+        Product currentItem = session.getSelectedItem();
+        MachineEventSink events = session.getEventSink();
+        events.publish(MachineEventType.CURRENT_ITEM, currentItem);
+        events.publish(MachineEventType.ITEM_PRICE, currentItem, session.getSelectedItemPrice());
+        return currentItem;
     }
 
     /**
      * This method is used to purchase the currently selected item.
      * In this state it purchases the selected item, if the money entered is enough to purchase the item.
      * Then sets the state to item purchases state.
-     * Throws an error if the user has not entered enough money to purchase the item, or if the currently selected item is out of stock.
+     * Throws an error if the user has not entered enough money to purchase the item, if the currently selected item is out of stock,
+     * or if the machine cannot give the change. These are all checked before any stock is changed, and the product and change
+     * are taken from the machine's shared stock together while it is locked. The product is taken from the unit reserved
+     * for the customer when they selected it, or from an unreserved unit if their reservation has expired.
      *
-     * @throws MachinePurchaseException Throws an error if the user has not entered enough money to purchase the item, or the item is out of stock.
+     * @throws MachinePurchaseException Throws an error if the user has not entered enough money to purchase the item, the item is out of stock,
+     * or the machine cannot give the change.
      */
     @Override
     public void purchaseItem() throws MachinePurchaseException {
-        Product selectedItem = vendingMachine.getSelectedItem();
-        if(vendingMachine.getSelectedItemPrice() > amountDeposited()){
-            System.out.println("You have not inserted enough money to purchase this item. You have inserted £" + amountDeposited());
-            System.out.println("The currently selected item: " + selectedItem.toString() + "'s price is £" + vendingMachine.getSelectedItemPrice());
+        Product selectedItem = session.getSelectedItem();
+        if(session.getSelectedItemPrice().isGreaterThan(amountDeposited())){
+            MachineEventSink events = session.getEventSink();
+            events.publish(MachineEventType.INSUFFICIENT_MONEY, amountDeposited());
+            events.publish(MachineEventType.ITEM_PRICE, selectedItem, session.getSelectedItemPrice());
             throw new MachinePurchaseException("money");
         } else {
-            int itemStock = vendingMachine.getProductStock().get(selectedItem);
-            if (itemStock == 0) {
-                throw new MachinePurchaseException("stock");
-            } else {
-                double selectedItemPrice = vendingMachine.getSelectedItemPrice();
-                afterPurchaseRefundAmount = Rounding.round(vendingMachine.getInsertedCoinStockTotal() - selectedItemPrice);
-                vendingMachine.calculateChangeDenominations(afterPurchaseRefundAmount);
-                System.out.println(selectedItem.toString() + " was purchased!");
-                vendingMachine.setSelectedItem(null);
-                Product purchasedProduct = selectedItem;
-                addPurchasedProductToBucket(purchasedProduct);
-                vendingMachine.getProductStock().reduce(purchasedProduct);
-                vendingMachine.setCurrentState(vendingMachine.getItemPurchasedState());
+            Money selectedItemPrice = session.getSelectedItemPrice();
+            afterPurchaseRefundAmount = session.getInsertedCoinStockTotal().minus(selectedItemPrice);
+            session.lockStock();
+            try {
+                int itemStock = session.getProductStock().getInt(selectedItem);
+                if (itemStock == 0 || !session.claimSelectedItem()) {
+                    throw new MachinePurchaseException("stock");
+                } else if (!session.canMakeChange(afterPurchaseRefundAmount)) {
+                    session.unclaimSelectedItem();
+                    throw new MachinePurchaseException("change");
+                }
+                session.calculateChangeDenominations(afterPurchaseRefundAmount);
+                session.sellSelectedItem();
+            } finally {
+                session.unlockStock();
             }
+            session.getEventSink().publish(MachineEventType.PRODUCT_VENDED, selectedItem);
+            session.setSelectedItem(null);
+            Product purchasedProduct = selectedItem;
+            addPurchasedProductToBucket(purchasedProduct);
+            session.setCurrentState(session.getItemPurchasedState());
         }
     }
 
@@ -138,8 +166,8 @@ public class CoinInsertedState implements State{
      * @param purchasedProduct The product that has been purchased by the user.
      */
     private void addPurchasedProductToBucket(Product purchasedProduct){
-        System.out.println("Your purchased " + purchasedProduct.toString() + " dropped into the bucket. Please collect your purchased item!");
-        vendingMachine.getProductBucket().insert(purchasedProduct);
+        session.getEventSink().publish(MachineEventType.PRODUCT_IN_BUCKET, purchasedProduct);
+        session.getProductBucket().insert(purchasedProduct);
     }
 
     /**
@@ -150,7 +178,7 @@ public class CoinInsertedState implements State{
      */
     @Override
     public List<Product> getBucketProducts() {
-        System.out.println("No item has been purchased! Please purchase an item to proceed.");
+        session.getEventSink().publish(MachineEventType.MESSAGE, "No item has been purchased! Please purchase an item to proceed.");
         return null;
     }
 
@@ -158,25 +186,19 @@ public class CoinInsertedState implements State{
      * This method is used to collect the refunded coins from the bucket.
      * In this state, the refunded coins are collected from the bucket before the machine is reset to its default state.
      *
-     * @return A list containing all the coins collected from the bucket.
+     * @return The number of each coin collected from the bucket, which can also be read as a list of the coins.
      */
     @Override
-    public List<Coin> getBucketCoins() {
-        double changeAmount = vendingMachine.getRefundCoinStockTotal();
-        List<Coin> collectedCoins = new ArrayList<>();
-        if(changeAmount == 0){
-            System.out.println("The bucket is empty. There are no coins to collect from the bucket!");
+    public CoinCollection getBucketCoins() {
+        Money changeAmount = session.getRefundCoinStockTotal();
+        CoinCollection collectedCoins = CoinCollection.EMPTY;
+        if(changeAmount.isZero()){
+            session.getEventSink().publish(MachineEventType.MESSAGE, "The bucket is empty. There are no coins to collect from the bucket!");
         } else {
-            for (Map.Entry<Coin, Integer> entry : vendingMachine.getCoinBucket().entrySet()) {
-                if(entry.getValue() > 0){
-                    for(int i = 0;entry.getValue() > i;i++){
-                        collectedCoins.add(entry.getKey());
-                    }
-                }
-            }
-            System.out.println("You collected your £" + Rounding.round(changeAmount) + " total change from the bucket!");
-            vendingMachine.getRefundCoinStock().setStock(0);
-            vendingMachine.getCoinBucket().setStock(0);
+            collectedCoins = CoinCollection.of(session.getCoinBucket());
+            session.getEventSink().publish(MachineEventType.CHANGE_COLLECTED, changeAmount);
+            session.getRefundCoinStock().setStock(0);
+            session.getCoinBucket().setStock(0);
         }
         return collectedCoins;
     }
@@ -192,10 +214,10 @@ public class CoinInsertedState implements State{
     @Override
     public void login(String username, String password) throws AdminPrivilegeException{
         if(username.equals("OwnerUsername") && password.equals("P4ssw0rd")){
-            vendingMachine.requestRefund();
-            System.out.println("Logged in to Admin!");
-            vendingMachine.setCurrentState(vendingMachine.getAdminModeState());
-            vendingMachine.printAdminInfo();
+            session.requestRefund();
+            session.getEventSink().publish(MachineEventType.ADMIN_LOGIN);
+            session.setCurrentState(session.getAdminModeState());
+            session.printAdminInfo();
         } else {
             throw new AdminPrivilegeException("Login");
         }
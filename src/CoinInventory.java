@@ -1,13 +1,19 @@
 /**
- * Interface for the coin inventories that provides a method to calculate
- * their current total money value.
+ * Interface for the coin inventories that provides methods to get
+ * their current total money value and coin count.
  *
  * @param <K> Key of the map.
  * @param <V> Key's value in the mapping
  */
-public interface CoinInventory<K extends Enum<K>,V> extends Stock {
+public interface CoinInventory<K extends Enum<K> & Item,V> extends Stock<K,V> {
 
-    //Method used to calculate value of all coins within an inventory.
-    double getMachineTotalMoneyValue();
+    //Method used to get the value of all coins within an inventory.
+    Money getMachineTotalMoneyValue();
+
+    //Method used to get the value of all coins within an inventory in pence.
+    long getTotalPence();
+
+    //Method used to get the number of coins within an inventory.
+    int getCoinCount();
 
 }
@@ -3,9 +3,9 @@
  * Contains methods for the functionality of coins being inserted into the machine.
  */
 public class CoinSlot {
-    private final VendingMachine vendingMachine;
-    public CoinSlot(VendingMachine vendingMachine) {
-        this.vendingMachine = vendingMachine;
+    private final Session session;
+    public CoinSlot(Session session) {
+        this.session = session;
     }
 
     /**
@@ -16,12 +16,71 @@ public class CoinSlot {
      * @param coinAmount The amount of the chosen coin inserted into the machine.
      */
     public void coinInserted(Coin coin, Integer coinAmount){
-        int coinStockLevel = vendingMachine.getCoinStock().get(coin);
-        coinStockLevel = coinStockLevel+coinAmount;
-        int insertedCoinLevel = vendingMachine.getInsertedCoinStock().get(coin);
-        insertedCoinLevel = insertedCoinLevel+coinAmount;
-        vendingMachine.getCoinStock().put(coin, coinStockLevel);
-        vendingMachine.getInsertedCoinStock().put(coin, insertedCoinLevel);
-        System.out.println("You inserted " + coinAmount + " " + coin.toString() + " coins");
+        session.lockStock();
+        try {
+            session.getCoinStock().add(coin, coinAmount);
+        } finally {
+            session.unlockStock();
+        }
+        session.getInsertedCoinStock().add(coin, coinAmount);
+        session.getVendingMachine().getMetrics().recordCoinsAccepted(coin, coinAmount);
+        session.getEventSink().publish(MachineEventType.COIN_INSERTED, coin, coinAmount);
+    }
+
+    /**
+     * This method is the functionality of a burst of coins being inserted into the machine at once.
+     * The burst is added to the machine's coin stock and to the inserted coins in one pass under one lock,
+     * and a single event is published for the whole burst. The burst must already have been checked.
+     *
+     * @param coinCounts The number of each coin inserted, by coin id.
+     */
+    public void coinsInserted(int[] coinCounts){
+        CoinStock coinStock = session.getCoinStock();
+        CoinStock insertedCoinStock = session.getInsertedCoinStock();
+        MachineMetrics metrics = session.getVendingMachine().getMetrics();
+        int coins = 0;
+        long pence = 0;
+        session.lockStock();
+        try {
+            for (int id = 0; id < coinCounts.length; id++) {
+                int count = coinCounts[id];
+                if (count > 0) {
+                    Coin coin = Coin.get(id);
+                    coinStock.add(coin, count);
+                    insertedCoinStock.add(coin, count);
+                    metrics.recordCoinsAccepted(coin, count);
+                    coins = coins + count;
+                    pence = pence + (long) count * coin.getPence();
+                }
+            }
+        } finally {
+            session.unlockStock();
+        }
+        session.getEventSink().publish(MachineEventType.COINS_INSERTED, null, coins, Money.ofPence(pence), null);
+    }
+
+    /**
+     * This method is used to check a burst of coins from the coin acceptor.
+     *
+     * @param coinCounts The number of each coin inserted, by coin id.
+     * @return The number of coins in the burst.
+     * @throws MachineStockException Throws exception if there is not one count for each coin, a count is negative,
+     * there are no coins, or there are more coins than can be counted.
+     */
+    static int countCoins(int[] coinCounts) throws MachineStockException {
+        if (coinCounts == null || coinCounts.length != Coin.count()) {
+            throw new MachineStockException("Coin amount");
+        }
+        long total = 0;
+        for (int count : coinCounts) {
+            if (count < 0) {
+                throw new MachineStockException("Coin amount");
+            }
+            total = total + count;
+        }
+        if (total < 1 || total > Integer.MAX_VALUE) {
+            throw new MachineStockException("Coin amount");
+        }
+        return (int) total;
     }
 }
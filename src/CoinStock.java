@@ -1,115 +1,99 @@
-import java.util.EnumMap;
 import java.util.Map;
 
 /**
  * Class for the machine's different coin stock inventories.
- *
- * @param <K> An enum Coin Key value in the map.
- * @param <V> The integer value mapped to the enum key.
  */
-public class CoinStock<K extends Enum<K>,V> implements CoinInventory {
+public class CoinStock extends ArrayStock<Coin> implements CoinInventory<Coin,Integer> {
 
-    private final EnumMap<Coin, Integer> coinStock = new EnumMap<>(Coin.class);
+    private static volatile boolean consistencyCheck = false;
 
-    public CoinStock() {
-        coinStock.put(Coin.TWO_POUND, 0);
-        coinStock.put(Coin.ONE_POUND, 0);
-        coinStock.put(Coin.FIFTY_PENCE, 0);
-        coinStock.put(Coin.TWENTY_PENCE, 0);
-        coinStock.put(Coin.TEN_PENCE, 0);
-        coinStock.put(Coin.FIVE_PENCE, 0);
-        coinStock.put(Coin.TWO_PENCE, 0);
-        coinStock.put(Coin.ONE_PENCE, 0);
-    }
+    private long totalPence = 0;
+    private int coinCount = 0;
 
-    /**
-     * This method is Used to set the inventory's stock to the inputted level.
-     *
-     * @param stockLevel The integer to set the stock inventory level to.
-     */
-    @Override
-    public void setStock(Integer stockLevel) {
-        for (Map.Entry<Coin, Integer> entry : coinStock.entrySet()) {
-            coinStock.put(entry.getKey(), stockLevel);
-        }
+    public CoinStock() {
+        super(Coin.values());
     }
 
     /**
-     * This method is used to change the chosen key's value within the map.
+     * This method is used to adjust the running total value and coin count of the inventory
+     * whenever a coin's stock level changes.
      *
-     * @param keyValue The enum key.
-     * @param value The value being assigned within the map to the provided key.
+     * @param coin The coin whose stock level changed.
+     * @param oldLevel The previous stock level of the coin.
+     * @param newLevel The new stock level of the coin.
      */
     @Override
-    public void put(Item keyValue, Integer value) {
-        coinStock.put((Coin) keyValue, value);
+    protected void levelChanged(Coin coin, int oldLevel, int newLevel) {
+        int difference = newLevel - oldLevel;
+        totalPence = totalPence + ((long) coin.getPence() * difference);
+        coinCount = coinCount + difference;
     }
 
     /**
-     * This method is used to calculate the total value of all the coins contained
+     * This method is used to return the total value of all the coins contained
      * within the inventory.
      *
      * @return The total coin stock's money value.
      */
     @Override
-    public double getMachineTotalMoneyValue() {
-        double totalMachineMoneyValue = 0;
-        for (Map.Entry<Coin, Integer> entry : coinStock.entrySet()) {
-            totalMachineMoneyValue = totalMachineMoneyValue + (((entry.getKey()).getMoneyValue()) * (entry.getValue()));
-        }
-        return Rounding.round(totalMachineMoneyValue);
+    public Money getMachineTotalMoneyValue() {
+        return Money.ofPence(getTotalPence());
     }
 
     /**
-     * This method is used to increase the chosen key's value by one.
+     * This method is used to return the total value in pence of all the coins contained
+     * within the inventory. The total is kept up to date as the inventory changes, so this does not
+     * need to sum the inventory.
      *
-     * @param insertedItem The enum key.
+     * @return The total coin stock's value in pence.
      */
     @Override
-    public void insert(Item insertedItem){
-        int stockLevel = coinStock.get(insertedItem);
-        coinStock.put((Coin) insertedItem, stockLevel+1);
-    }
-
-    /**
-     * This method is used to decrease the chosen key's value by one.
-     *
-     * @param reducedItem The enum key.
-     */
-    @Override
-    public void reduce(Item reducedItem){
-        int stockLevel = coinStock.get(reducedItem);
-        coinStock.put((Coin) reducedItem, stockLevel-1);
+    public long getTotalPence() {
+        if (consistencyCheck) {
+            checkConsistency();
+        }
+        return totalPence;
     }
 
     /**
-     * This method is used to return the value of the specified key from the map.
+     * This method is used to return the number of coins contained within the inventory.
      *
-     * @param coin The key of the enum map.
-     * @return The value of the associated key in the enum map.
+     * @return The total number of coins in the coin stock.
      */
     @Override
-    public Integer get(Item coin) {
-        return coinStock.get(coin);
+    public int getCoinCount() {
+        if (consistencyCheck) {
+            checkConsistency();
+        }
+        return coinCount;
     }
 
     /**
-     * This method is used to return the set view of the enum map.
+     * This method is used to turn on checking the running totals of every coin stock against a full
+     * recalculation each time a total is read. Used by the tests, as it makes each total read O(n).
      *
-     * @return The set view of the enum map.
+     * @param enabled True to check the running totals on each read.
      */
-    @Override
-    public Iterable<? extends Map.Entry<Coin, Integer>> entrySet() {
-        return coinStock.entrySet();
+    static void setConsistencyCheck(boolean enabled) {
+        consistencyCheck = enabled;
     }
 
     /**
-     * This method is used to return the number of key-value mappings in this map.
+     * This method is used to recalculate the total value and coin count from the inventory, and compare
+     * them against the running totals.
      *
-     * @return The size of the specified enum map.
+     * @throws IllegalStateException Throws an error if the running totals do not match the inventory.
      */
-    @Override
-    public int size() {
-        return coinStock.size();
+    void checkConsistency() {
+        long recalculatedPence = 0;
+        int recalculatedCount = 0;
+        for (Map.Entry<Coin, Integer> entry : entrySet()) {
+            recalculatedPence = recalculatedPence + ((long) entry.getKey().getPence() * entry.getValue());
+            recalculatedCount = recalculatedCount + entry.getValue();
+        }
+        if (recalculatedPence != totalPence || recalculatedCount != coinCount) {
+            throw new IllegalStateException("Coin stock running total " + totalPence + "p (" + coinCount
+                    + " coins) does not match recalculated total " + recalculatedPence + "p (" + recalculatedCount + " coins)");
+        }
     }
-}
\ No newline at end of file
+}
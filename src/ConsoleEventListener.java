@@ -0,0 +1,16 @@
+/**
+ * Class for the event listener that prints each machine event's message to the console, giving the
+ * same output to the user as the machine has always given.
+ */
+public class ConsoleEventListener implements MachineEventListener {
+
+    /**
+     * This method is used to print the event's message to the console.
+     *
+     * @param event The event published by the machine.
+     */
+    @Override
+    public void onEvent(MachineEvent event) {
+        System.out.println(event.getMessage());
+    }
+}
@@ -0,0 +1,210 @@
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class containing a main method to simulate a fleet of vending machines, for load testing the systems that serve them.
+ * Creates the machines, measures how much heap each one takes, then drives every machine from its own thread with a
+ * stream of random customers, who select a product, insert coins, then buy it or ask for a refund, and the odd admin
+ * who refills the machine. Reports the throughput of the fleet and the 50th and 99th percentile latency of each operation,
+ * then plans the restock of the whole fleet as one route and reports how long planning took.
+ *
+ * Each machine runs on a virtual thread when the Java runtime has them, so a fleet of 100,000 machines does not need
+ * 100,000 platform threads; otherwise the machines share a pool of one platform thread per processor.
+ *
+ * Usage: FleetSimulator [machines] [customers per machine] [refund chance] [refill chance] [seed]
+ */
+public class FleetSimulator {
+
+    /**
+     * The operations timed by the simulator.
+     */
+    enum Operation {
+        SELECT_ITEM,
+        INSERT_COIN,
+        PURCHASE_ITEM,
+        REQUEST_REFUND,
+        ADMIN_REFILL
+    }
+
+    private static final int MAX_SIZE = 20;
+    private static final Coin[] COINS = Coin.values();
+
+    private final int machines;
+    private final int customers;
+    private final double refundChance;
+    private final double refillChance;
+    private final long seed;
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Constructor for the fleet simulator.
+     *
+     * @param machines The number of machines in the fleet.
+     * @param customers The number of customers served by each machine.
+     * @param refundChance The chance a customer asks for a refund instead of buying their product.
+     * @param refillChance The chance an admin refills the machine before a customer.
+     * @param seed The seed of the random customers, so a run can be repeated.
+     */
+    public FleetSimulator(int machines, int customers, double refundChance, double refillChance, long seed) {
+        if (machines < 1 || customers < 0) {
+            throw new IllegalArgumentException("A fleet needs at least one machine and no negative number of customers");
+        }
+        this.machines = machines;
+        this.customers = customers;
+        this.refundChance = refundChance;
+        this.refillChance = refillChance;
+        this.seed = seed;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int machines = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int customers = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        double refundChance = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+        double refillChance = args.length > 3 ? Double.parseDouble(args[3]) : 0.02;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+        new FleetSimulator(machines, customers, refundChance, refillChance, seed).run();
+    }
+
+    /**
+     * This method is used to create the fleet, drive every machine until each has served its customers, and print the report.
+     */
+    public void run() throws InterruptedException {
+        long heapBefore = usedHeap();
+        VendingMachine[] fleet = new VendingMachine[machines];
+        for (int m = 0; m < machines; m++) {
+            fleet[m] = new VendingMachine(MAX_SIZE, MAX_SIZE / 2, MAX_SIZE / 2);
+            fleet[m].setEventSink(MachineEventSink.NONE);
+        }
+        long heapPerMachine = (usedHeap() - heapBefore) / machines;
+
+        ExecutorService executor = virtualThreadExecutor();
+        boolean virtual = executor != null;
+        if (!virtual) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+        long start = System.nanoTime();
+        for (int m = 0; m < machines; m++) {
+            VendingMachine vend = fleet[m];
+            SplittableRandom random = new SplittableRandom(seed + m);
+            executor.execute(() -> drive(vend, random));
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        long operations = 0;
+        for (LatencyHistogram latency : latencies) {
+            operations = operations + latency.count();
+        }
+        System.out.printf("Machines: %,d, customers per machine: %,d, threads: %s%n", machines, customers,
+                virtual ? "virtual" : Runtime.getRuntime().availableProcessors() + " platform");
+        System.out.printf("Heap per machine: %,d bytes%n", heapPerMachine);
+        System.out.printf("Elapsed: %,d ms, %,.0f customers per second, %,.0f operations per second, %,d failed operations%n",
+                elapsed / 1_000_000, (double) machines * customers * 1_000_000_000L / elapsed,
+                (double) operations * 1_000_000_000L / elapsed, failures.get());
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram latency = latencies[operation.ordinal()];
+            System.out.printf("%-15s count %,12d  p50 %,9d ns  p99 %,9d ns%n", operation, latency.count(),
+                    latency.percentile(0.50), latency.percentile(0.99));
+        }
+
+        long planStart = System.nanoTime();
+        RestockPlanner planner = new RestockPlanner(elapsed / 1_000_000);
+        RestockManifest[] manifests = planner.planRoute(Arrays.asList(fleet), ForkJoinPool.commonPool());
+        long planElapsed = System.nanoTime() - planStart;
+        RestockManifest load = RestockManifest.total(manifests);
+        System.out.printf("Restock plan for another run: %,d machines in %,d ms, %,d units and £%s of change to load%n",
+                machines, planElapsed / 1_000_000, load.getTotalUnits(), load.getTotalChange());
+    }
+
+    /**
+     * This method is used to serve one machine's customers, one after another.
+     *
+     * @param vend The machine.
+     * @param random The source of the machine's random customers.
+     */
+    private void drive(VendingMachine vend, SplittableRandom random) {
+        ProductCatalog catalog = vend.getCatalog();
+        for (int c = 0; c < customers; c++) {
+            if (random.nextDouble() < refillChance || vend.isMachineEmptyCheck()) {
+                long start = System.nanoTime();
+                vend.login("OwnerUsername", "P4ssw0rd");
+                vend.adminRefillAllProduct();
+                vend.logout();
+                record(Operation.ADMIN_REFILL, start);
+            }
+            Product product = catalog.get(random.nextInt(catalog.size()));
+            try {
+                long start = System.nanoTime();
+                vend.selectItem(product.getCode());
+                record(Operation.SELECT_ITEM, start);
+
+                long inserted = 0;
+                long price = product.getPrice().getPence();
+                while (inserted < price) {
+                    Coin coin = COINS[random.nextInt(COINS.length)];
+                    start = System.nanoTime();
+                    vend.insertCoin(coin, 1);
+                    record(Operation.INSERT_COIN, start);
+                    inserted = inserted + coin.getPence();
+                }
+
+                if (random.nextDouble() < refundChance) {
+                    start = System.nanoTime();
+                    vend.requestRefund();
+                    record(Operation.REQUEST_REFUND, start);
+                } else {
+                    start = System.nanoTime();
+                    vend.purchaseItem();
+                    record(Operation.PURCHASE_ITEM, start);
+                    vend.getBucketProducts();
+                }
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+                vend.requestRefund();
+            }
+            vend.getBucketCoins();
+        }
+    }
+
+    /**
+     * @param operation The operation.
+     * @param start The time the operation started, from {@link System#nanoTime()}.
+     */
+    private void record(Operation operation, long start) {
+        latencies[operation.ordinal()].record(System.nanoTime() - start);
+    }
+
+    /**
+     * @return The heap in use after a collection, in bytes.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return An executor starting a virtual thread per task, or null if the Java runtime does not have virtual threads.
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
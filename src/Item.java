@@ -1,6 +1,9 @@
 /**
- * Item interface to group the respective product and coin enums.
+ * Item interface to group the respective product and coin classes.
  */
 public interface Item {
 
+    //Returns the item's dense id, used as its position in the stock inventories.
+    int getId();
+
 }
@@ -1,15 +1,14 @@
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Class for the item purchased state. This is the state of the machine when an item has been purchased by the user.
  */
 public class ItemPurchasedState implements State{
-    private final VendingMachine vendingMachine;
+    private final Session session;
 
-    public ItemPurchasedState(VendingMachine vendingMachine) {
-        this.vendingMachine = vendingMachine;
+    public ItemPurchasedState(Session session) {
+        this.session = session;
     }
 
     /**
@@ -23,7 +22,7 @@ public class ItemPurchasedState implements State{
      */
     @Override
     public void insertCoin(Coin coin, Integer coinAmount) throws MachineStockException {
-        System.out.println("Please collect your money and items from the bucket!");
+        session.getEventSink().publish(MachineEventType.MESSAGE, "Please collect your money and items from the bucket!");
     }
 
     /**
@@ -34,34 +33,32 @@ public class ItemPurchasedState implements State{
      * @return The current amount of coins deposited by the user.
      */
     @Override
-    public double amountDeposited() {
-        double depositedAmount = vendingMachine.getRefundCoinStockTotal();
-        System.out.println("You have £" + depositedAmount + " still remaining deposited in the machine!");
+    public Money amountDeposited() {
+        Money depositedAmount = session.getRefundCoinStockTotal();
+        session.getEventSink().publish(MachineEventType.DEPOSIT_REMAINING, depositedAmount);
         return depositedAmount;
     }
 
     /**
      * This method is used to request a refund of the total inserted coins by the user.
-     * In this state it places the remaining change into the coin bucket.
-     * Throws an error if the refund cannot be given to the user due to current coin stock not being enough.
+     * In this state it places the remaining change into the coin bucket. The change was already taken from
+     * the coin stock when the item was purchased, so it is not calculated again. The inserted coins have
+     * been spent on the item, so they are cleared even when there is no change to give.
      *
      */
     @Override
     public void requestRefund() {
-        double refundAmount = Rounding.round(amountDeposited());
-        if (refundAmount == 0){
-            System.out.println("You have no coins in the machine to refund. Please collect your items from the bucket!");
+        Money refundAmount = amountDeposited();
+        if (refundAmount.isZero()){
+            session.getEventSink().publish(MachineEventType.MESSAGE, "You have no coins in the machine to refund. Please collect your items from the bucket!");
+            session.getInsertedCoinStock().setStock(0);
         } else {
-            if(refundAmount > vendingMachine.getCoinStockTotal()){
-                throw new MachineStockException("CoinStock");
-            }
-            vendingMachine.calculateChangeDenominations(refundAmount);
-            vendingMachine.setCoinBucket();
-            System.out.println("Your total change £" + refundAmount + " Total has been placed into the bucket. Please collect your change!");
-            vendingMachine.getBucketCoins();
-            vendingMachine.getBucketProducts();
-            vendingMachine.getInsertedCoinStock().setStock(0);
-            vendingMachine.getRefundCoinStock().setStock(0);
+            session.setCoinBucket();
+            session.getEventSink().publish(MachineEventType.CHANGE_PLACED, refundAmount);
+            session.getBucketCoins();
+            session.getBucketProducts();
+            session.getInsertedCoinStock().setStock(0);
+            session.getRefundCoinStock().setStock(0);
         }
 
     }
@@ -71,7 +68,7 @@ public class ItemPurchasedState implements State{
      * This method prints to the user that they need to collect their items from the bucket to progress.
      */
     private void printCollectBucketItems(){
-        System.out.println("Please collect your money and items from the bucket!");
+        session.getEventSink().publish(MachineEventType.MESSAGE, "Please collect your money and items from the bucket!");
     }
 
     /**
@@ -120,24 +117,20 @@ public class ItemPurchasedState implements State{
      */
     @Override
     public List<Product> getBucketProducts() {
-        int size = vendingMachine.getProductBucket().size();
-        int count = 0;
-        List<Product> collectedItems = new ArrayList<>();
-        for (Map.Entry<Enum, Integer> entry : vendingMachine.getProductBucket().entrySet()) {
-            count++;
-            if(entry.getValue() > 0){
-                collectedItems.add((Product) entry.getKey());
-                System.out.println("You collected your " + entry.getKey().toString() + " from the bucket!");
-            } else if (size == count-1){
-                System.out.println("The bucket is empty. There are no items to collect from the bucket!");
-
+        ProductStock productBucket = session.getProductBucket();
+        List<Product> collectedItems = new ArrayList<>(productBucket.getInStockCount());
+        for (int id = productBucket.nextInStock(0); id >= 0; id = productBucket.nextInStock(id + 1)) {
+            Product product = productBucket.getKey(id);
+            for (int unit = productBucket.getInt(product); unit > 0; unit--) {
+                collectedItems.add(product);
+                session.getEventSink().publish(MachineEventType.PRODUCT_COLLECTED, product);
             }
         }
-        vendingMachine.getProductBucket().setStock(0);
-        if(vendingMachine.isMachineEmptyCheck()){
-            vendingMachine.setCurrentState(vendingMachine.getProductEmptyState());
+        productBucket.clear();
+        if(session.isMachineEmptyCheck()){
+            session.setCurrentState(session.getProductEmptyState());
         } else {
-            vendingMachine.setCurrentState(vendingMachine.getNotSelectedState());
+            session.setCurrentState(session.getNotSelectedState());
         }
         return collectedItems;
     }
@@ -146,25 +139,19 @@ public class ItemPurchasedState implements State{
      * This method is used to collect the refunded coins from the bucket.
      * In this state, the refunded coins are collected from the bucket before the machine is reset to its default state.
      *
-     * @return A list containing all the coins collected from the bucket.
+     * @return The number of each coin collected from the bucket, which can also be read as a list of the coins.
      */
     @Override
-    public List<Coin> getBucketCoins() {
-        double changeAmount = vendingMachine.getRefundCoinStockTotal();
-        List<Coin> collectedCoins = new ArrayList<>();
-        if(changeAmount == 0){
-            System.out.println("The bucket is empty. There are no items to collect from the bucket!");
+    public CoinCollection getBucketCoins() {
+        Money changeAmount = session.getRefundCoinStockTotal();
+        CoinCollection collectedCoins = CoinCollection.EMPTY;
+        if(changeAmount.isZero()){
+            session.getEventSink().publish(MachineEventType.MESSAGE, "The bucket is empty. There are no items to collect from the bucket!");
         } else {
-            for (Map.Entry<Coin, Integer> entry : vendingMachine.getCoinBucket().entrySet()) {
-                if(entry.getValue() > 0){
-                    for(int i = 0;entry.getValue() > i;i++){
-                        collectedCoins.add(entry.getKey());
-                    }
-                }
-            }
-            System.out.println("You collected your £" + Rounding.round(changeAmount) + " total change from the bucket!");
-            vendingMachine.getRefundCoinStock().setStock(0);
-            vendingMachine.getCoinBucket().setStock(0);
+            collectedCoins = CoinCollection.of(session.getCoinBucket());
+            session.getEventSink().publish(MachineEventType.CHANGE_COLLECTED, changeAmount);
+            session.getRefundCoinStock().setStock(0);
+            session.getCoinBucket().setStock(0);
         }
         return collectedCoins;
     }
@@ -180,9 +167,9 @@ public class ItemPurchasedState implements State{
     @Override
     public void login(String username, String password) throws AdminPrivilegeException{
         if(username.equals("OwnerUsername") && password.equals("P4ssw0rd")){
-            System.out.println("Logged in to Admin!");
-            vendingMachine.setCurrentState(vendingMachine.getAdminModeState());
-            vendingMachine.getAdminModeState().printAdminInfo();
+            session.getEventSink().publish(MachineEventType.ADMIN_LOGIN);
+            session.setCurrentState(session.getAdminModeState());
+            session.getAdminModeState().printAdminInfo();
         } else {
             throw new AdminPrivilegeException("Login");
         }
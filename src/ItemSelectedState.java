@@ -5,9 +5,9 @@ import java.util.List;
  * selected an item. To proceed, the user must insert money.
  */
 public class ItemSelectedState implements State{
-    private final VendingMachine vendingMachine;
-    public ItemSelectedState(VendingMachine vendingMachine) {
-        this.vendingMachine = vendingMachine;
+    private final Session session;
+    public ItemSelectedState(Session session) {
+        this.session = session;
     }
 
     /**
@@ -24,11 +24,46 @@ public class ItemSelectedState implements State{
         if (coinAmount < 1){
             throw new MachineStockException("Coin amount");
         } else {
-            vendingMachine.getCoinSlot().coinInserted(coin,coinAmount);
-            vendingMachine.setCurrentState(vendingMachine.getCoinInsertedState());
+            session.getCoinSlot().coinInserted(coin,coinAmount);
+            session.setCurrentState(session.getCoinInsertedState());
         }
     }
 
+    /**
+     * This method is used to insert a burst of coins at once.
+     * In this state the coins are inserted, and then the state of the machine transitions.
+     *
+     * The burst has already been checked by the session.
+     *
+     * @param coinCounts The number of each coin inserted, by coin id.
+     */
+    @Override
+    public void insertCoins(int[] coinCounts) throws MachineStockException {
+        session.getCoinSlot().coinsInserted(coinCounts);
+        session.setCurrentState(session.getCoinInsertedState());
+    }
+
+    /**
+     * Method used to tell the user the amount of coins currently deposited by them.
+     * In this state no money has been inserted, so it prints to the user and returns zero.
+     *
+     * @return The current amount of coins deposited by the user.
+     */
+    @Override
+    public Money amountDeposited() {
+        session.getEventSink().publish(MachineEventType.MESSAGE, "You have not inserted any money!");
+        return Money.ZERO;
+    }
+
+    /**
+     * This method is used to request a refund of the total inserted coins by the user.
+     * In this state no money has been inserted, so it prints to the user there is nothing to refund.
+     */
+    @Override
+    public void requestRefund() {
+        session.getEventSink().publish(MachineEventType.MESSAGE, "You have not entered any money to be refunded!");
+    }
+
     /**
      * This method is used by the user to select the item they wish to purchase using the code of the item.
      * In this state changes the currently selected item to the entered code's item.
@@ -40,7 +75,7 @@ public class ItemSelectedState implements State{
     @Override
     public void selectItem(String code) throws MachineSelectionException {
         try {
-            vendingMachine.getKeypad().enterItemCode(code);
+            session.getKeypad().enterItemCode(code);
         } catch (Exception e) {
             throw new MachineSelectionException("InvalidCode");
         }
@@ -54,10 +89,11 @@ public class ItemSelectedState implements State{
      */
     @Override
     public Product currentItem() {
-        String currentItem = vendingMachine.getSelectedItem().toString();
-        System.out.println("The currently selected item is: " + currentItem);
-        System.out.println("The currently selected item: " + currentItem + "'s price is £" + vendingMachine.getSelectedItemPrice());
-        return vendingMachine.getSelectedItem();
+        Product currentItem = session.getSelectedItem();
+        MachineEventSink events = session.getEventSink();
+        events.publish(MachineEventType.CURRENT_ITEM, currentItem);
+        events.publish(MachineEventType.ITEM_PRICE, currentItem, session.getSelectedItemPrice());
+        return currentItem;
     }
 
     /**
@@ -69,7 +105,7 @@ public class ItemSelectedState implements State{
      */
     @Override
     public void purchaseItem() throws MachinePurchaseException {
-        System.out.println("No money has been inserted. Please insert the money required to purchase the selected item!");
+        session.getEventSink().publish(MachineEventType.MESSAGE, "No money has been inserted. Please insert the money required to purchase the selected item!");
     }
 
     /**
@@ -80,7 +116,7 @@ public class ItemSelectedState implements State{
      */
     @Override
     public List<Product> getBucketProducts() {
-        System.out.println("No item has been purchased! To proceed, please insert the money required to purchase the selected item!");
+        session.getEventSink().publish(MachineEventType.MESSAGE, "No item has been purchased! To proceed, please insert the money required to purchase the selected item!");
         return null;
     }
 
@@ -88,11 +124,11 @@ public class ItemSelectedState implements State{
      * This method is used to collect the refunded coins from the bucket.
      * In this state no item has been purchased, so it prints to the user to please purchase an item.
      *
-     * @return A list containing all the coins collected from the bucket.
+     * @return The number of each coin collected from the bucket, which can also be read as a list of the coins.
      */
     @Override
-    public List<Coin> getBucketCoins() {
-        System.out.println("No coins are in the bucket! To proceed, please insert the money required to purchase the selected item!");
+    public CoinCollection getBucketCoins() {
+        session.getEventSink().publish(MachineEventType.MESSAGE, "No coins are in the bucket! To proceed, please insert the money required to purchase the selected item!");
         return null;
     }
 
@@ -107,10 +143,10 @@ public class ItemSelectedState implements State{
     @Override
     public void login(String username, String password) throws AdminPrivilegeException{
         if(username.equals("OwnerUsername") && password.equals("P4ssw0rd")){
-            vendingMachine.setSelectedItem(null);
-            System.out.println("Logged in to Admin!");
-            vendingMachine.setCurrentState(vendingMachine.getAdminModeState());
-            vendingMachine.printAdminInfo();
+            session.setSelectedItem(null);
+            session.getEventSink().publish(MachineEventType.ADMIN_LOGIN);
+            session.setCurrentState(session.getAdminModeState());
+            session.printAdminInfo();
         } else {
             throw new AdminPrivilegeException("Login");
         }
@@ -4,21 +4,26 @@
  */
 public class Keypad {
 
-    private final VendingMachine vendingMachine;
-    public Keypad(VendingMachine vendingMachine) {
-        this.vendingMachine = vendingMachine;
+    private final Session session;
+    public Keypad(Session session) {
+        this.session = session;
     }
 
     /**
      * This method is used to enter the item code of the product to be selected by the user.
      *
      * @param code The code of the item to be selected by the user.
+     * @throws MachineSelectionException Throws error if the code entered is not the code of a product.
      */
     public void enterItemCode(String code){
-        vendingMachine.setSelectedItem(Product.getProducts(code));
-        vendingMachine.setSelectedItemCode(code);
-        String selectedItemString = Product.getProducts(code).toString();
-        System.out.println("You Selected: " + selectedItemString);
-        System.out.println("The currently selected item: " + selectedItemString + "'s price is £" + vendingMachine.getSelectedItemPrice());
+        Product product = session.getCatalog().getProduct(code);
+        session.setSelectedItem(product);
+        session.setSelectedItemCode(code);
+        if (product == null) {
+            throw new MachineSelectionException("InvalidCode");
+        }
+        MachineEventSink events = session.getEventSink();
+        events.publish(MachineEventType.ITEM_SELECTED, product);
+        events.publish(MachineEventType.ITEM_PRICE, product, session.getSelectedItemPrice());
     }
 }
@@ -0,0 +1,125 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class for a histogram of latencies that threads can record into at the same time without locking, with one
+ * atomic increment per latency. Each power of two of nanoseconds is split into eight buckets, so the latency of a
+ * percentile is accurate to within an eighth of its value, from single nanoseconds up to about 68 seconds.
+ * Longer latencies are counted in the last bucket, which keeps each histogram to a couple of kilobytes.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36;
+    private static final long MAX_TRACKABLE_NANOS = (1L << MAX_EXPONENT) - 1;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * @param nanos The latency to record, in nanoseconds.
+     */
+    public void record(long nanos) {
+        buckets.incrementAndGet(bucketOf(Math.max(0, Math.min(nanos, MAX_TRACKABLE_NANOS))));
+    }
+
+    /**
+     * This method is used to copy the histogram's buckets, while latencies are still being recorded.
+     *
+     * @return The number of latencies recorded in each bucket.
+     */
+    public long[] snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * @return The number of latencies recorded.
+     */
+    public long count() {
+        return count(snapshot());
+    }
+
+    /**
+     * @param fraction The fraction of latencies, from 0 to 1.
+     * @return The latency that the fraction of recorded latencies are at or below, in nanoseconds.
+     */
+    public long percentile(double fraction) {
+        return percentile(snapshot(), fraction);
+    }
+
+    /**
+     * @param counts The buckets of a histogram, from {@link #snapshot()}.
+     * @return The number of latencies in the buckets.
+     */
+    static long count(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total = total + count;
+        }
+        return total;
+    }
+
+    /**
+     * @param counts The buckets of a histogram, from {@link #snapshot()}.
+     * @param fraction The fraction of latencies, from 0 to 1.
+     * @return The latency that the fraction of latencies in the buckets are at or below, in nanoseconds, or zero if there are none.
+     */
+    static long percentile(long[] counts, double fraction) {
+        long total = count(counts);
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen = seen + counts[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(counts.length - 1);
+    }
+
+    /**
+     * @param counts The buckets of a histogram, from {@link #snapshot()}.
+     * @return The longest latency in the buckets, in nanoseconds, or zero if there are none.
+     */
+    static long max(long[] counts) {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] > 0) {
+                return upperBoundOf(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param nanos A latency.
+     * @return The bucket of the latency.
+     */
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param bucket A bucket.
+     * @return The longest latency recorded in the bucket.
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Interface for classes that need to be told when a stock level of an inventory falls below its low watermark,
+ * such as to plan a restock before the machine runs out. Listeners are only told when the watermark is crossed,
+ * not on every change of a level that is already low.
+ */
+public interface LowStockListener {
+
+    //Called after the stock level of the item has fallen below its low watermark.
+    void stockLow(Item item, int level, int watermark);
+
+    //Called after the stock level of the item has been restocked back up to its low watermark.
+    default void stockRestored(Item item, int level, int watermark) {
+    }
+
+}
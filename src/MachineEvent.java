@@ -0,0 +1,89 @@
+/**
+ * Class for an event published by the vending machine. Holds the type of the event and the values it
+ * was published with; the message shown to the user is only built when a listener asks for it.
+ *
+ * Events are held in the event sink's ring buffer and reused once they have been delivered, so listeners
+ * must copy any values they need to keep.
+ */
+public final class MachineEvent {
+
+    private MachineEventType type;
+    private Item item;
+    private int count;
+    private Money amount;
+    private String text;
+
+    MachineEvent() {
+    }
+
+    /**
+     * This method is used to set the values of the event when it is published.
+     *
+     * @param type The type of the event.
+     * @param item The coin or product the event is about, or null.
+     * @param count The number of coins or products the event is about.
+     * @param amount The amount of money the event is about, or null.
+     * @param text The text of the event, or null.
+     */
+    void set(MachineEventType type, Item item, int count, Money amount, String text) {
+        this.type = type;
+        this.item = item;
+        this.count = count;
+        this.amount = amount;
+        this.text = text;
+    }
+
+    /**
+     * This method is used to clear the event once it has been delivered, so it does not keep any objects alive.
+     */
+    void clear() {
+        set(null, null, 0, null, null);
+    }
+
+    /**
+     * @return The type of the event.
+     */
+    public MachineEventType getType() {
+        return type;
+    }
+
+    /**
+     * @return The coin or product the event is about, or null.
+     */
+    public Item getItem() {
+        return item;
+    }
+
+    /**
+     * @return The number of coins or products the event is about.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The amount of money the event is about, or null.
+     */
+    public Money getAmount() {
+        return amount;
+    }
+
+    /**
+     * @return The text of the event, or null.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return The message for the event, as shown to the user.
+     */
+    public String getMessage() {
+        return type.describe(this);
+    }
+
+    @Override
+    public String toString() {
+        return getMessage();
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * Interface for classes that consume the events published by the vending machine, such as the console
+ * output shown to the user. Events are delivered on the event sink's background thread, one at a time.
+ */
+public interface MachineEventListener {
+
+    //Listener that consumes no events. Machines using it do not publish events at all.
+    MachineEventListener NONE = event -> { };
+
+    //Called on the event sink's thread for each published event.
+    //The event object is reused once this returns, so it must not be kept.
+    void onEvent(MachineEvent event);
+
+}
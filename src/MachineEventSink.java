@@ -0,0 +1,260 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class for delivering the vending machine's events to a listener on a background thread, so publishing an
+ * event does not build any strings or wait on the console.
+ *
+ * Events are passed through a bounded ring buffer of reused event objects. Any number of threads can publish
+ * without locking; each claims a slot by moving the shared tail forward with a compare and set, fills it in,
+ * and then marks it as published through the slot's sequence number. The single consumer thread delivers the
+ * slots in order and hands each one back to the publishers. When the buffer is full publishers wait for the
+ * consumer, so no events are lost. An event the listener throws an exception for is counted as a listener error
+ * and skipped, so one bad event does not stop the events after it being delivered.
+ *
+ * A sink for {@link MachineEventListener#NONE} has no buffer or thread, and publishing to it does nothing.
+ */
+public class MachineEventSink {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final MachineEventSink NONE = new MachineEventSink(MachineEventListener.NONE, DEFAULT_CAPACITY);
+
+    private static final int SPIN_LIMIT = 100;
+    private static final long PARK_NANOS = 50_000;
+    private static volatile MachineEventSink console;
+
+    private final MachineEventListener listener;
+    private final boolean enabled;
+    private final MachineEvent[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong listenerErrors = new AtomicLong();
+    private final Thread consumer;
+    private volatile boolean running;
+
+    /**
+     * Constructor for the event sink. Starts the consumer thread that delivers the events to the listener,
+     * unless the listener is {@link MachineEventListener#NONE}.
+     *
+     * @param listener The listener the events are delivered to.
+     * @param capacity The number of events the ring buffer holds, rounded up to a power of two.
+     */
+    public MachineEventSink(MachineEventListener listener, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Event sink capacity must be greater than 0");
+        }
+        this.listener = listener;
+        this.enabled = listener != MachineEventListener.NONE;
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new MachineEvent[enabled ? size : 0];
+        this.sequences = new AtomicLongArray(slots.length);
+        this.mask = slots.length - 1;
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new MachineEvent();
+            sequences.set(i, i);
+        }
+        if (enabled) {
+            running = true;
+            consumer = new Thread(this::consume, "vending-machine-events");
+            consumer.setDaemon(true);
+            consumer.start();
+        } else {
+            consumer = null;
+        }
+    }
+
+    /**
+     * This method is used to get the event sink that prints to the console, shared by every machine that
+     * has not been given its own sink.
+     *
+     * @return The shared console event sink.
+     */
+    public static MachineEventSink console() {
+        MachineEventSink sink = console;
+        if (sink == null) {
+            synchronized (MachineEventSink.class) {
+                sink = console;
+                if (sink == null) {
+                    sink = new MachineEventSink(new ConsoleEventListener(), DEFAULT_CAPACITY);
+                    console = sink;
+                }
+            }
+        }
+        return sink;
+    }
+
+    /**
+     * @return True if the sink delivers events to a listener, false if published events are dropped.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return The number of events the listener has thrown an exception for.
+     */
+    public long getListenerErrors() {
+        return listenerErrors.get();
+    }
+
+    /**
+     * @param type The type of event to publish.
+     */
+    void publish(MachineEventType type) {
+        publish(type, null, 0, null, null);
+    }
+
+    /**
+     * @param type The type of event to publish.
+     * @param text The text of the event.
+     */
+    void publish(MachineEventType type, String text) {
+        publish(type, null, 0, null, text);
+    }
+
+    /**
+     * @param type The type of event to publish.
+     * @param amount The amount of money the event is about.
+     */
+    void publish(MachineEventType type, Money amount) {
+        publish(type, null, 0, amount, null);
+    }
+
+    /**
+     * @param type The type of event to publish.
+     * @param item The coin or product the event is about.
+     */
+    void publish(MachineEventType type, Item item) {
+        publish(type, item, 0, null, null);
+    }
+
+    /**
+     * @param type The type of event to publish.
+     * @param item The coin or product the event is about.
+     * @param count The number of coins or products the event is about.
+     */
+    void publish(MachineEventType type, Item item, int count) {
+        publish(type, item, count, null, null);
+    }
+
+    /**
+     * @param type The type of event to publish.
+     * @param item The coin or product the event is about.
+     * @param amount The amount of money the event is about.
+     */
+    void publish(MachineEventType type, Item item, Money amount) {
+        publish(type, item, 0, amount, null);
+    }
+
+    /**
+     * This method is used to publish an event to the sink. Claims the next slot of the ring buffer, waiting
+     * for the consumer if the buffer is full, and fills it in with the event's values.
+     *
+     * @param type The type of event to publish.
+     * @param item The coin or product the event is about, or null.
+     * @param count The number of coins or products the event is about.
+     * @param amount The amount of money the event is about, or null.
+     * @param text The text of the event, or null.
+     */
+    void publish(MachineEventType type, Item item, int count, Money amount, String text) {
+        if (!enabled) {
+            return;
+        }
+        long position;
+        int spins = 0;
+        while (true) {
+            position = tail.get();
+            long available = sequences.get((int) position & mask) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (available < 0) {
+                if (!running) {
+                    return;
+                }
+                spins = backOff(spins);
+            }
+        }
+        int index = (int) position & mask;
+        slots[index].set(type, item, count, amount, text);
+        sequences.set(index, position + 1);
+    }
+
+    /**
+     * This method is used to wait until every event published before the call has been delivered to the listener.
+     */
+    public void flush() {
+        if (!enabled || Thread.currentThread() == consumer) {
+            return;
+        }
+        long published = tail.get();
+        int spins = 0;
+        while (delivered.get() < published && consumer.isAlive()) {
+            spins = backOff(spins);
+        }
+    }
+
+    /**
+     * This method is used to deliver any remaining events and stop the consumer thread.
+     * Events published after the sink is closed are not delivered.
+     */
+    public void close() {
+        if (!enabled) {
+            return;
+        }
+        flush();
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This method is run by the consumer thread. Delivers each published slot to the listener in order, then
+     * hands the slot back to the publishers for the next pass around the ring buffer.
+     */
+    private void consume() {
+        long head = 0;
+        int spins = 0;
+        while (running || sequences.get((int) head & mask) == head + 1) {
+            int index = (int) head & mask;
+            if (sequences.get(index) == head + 1) {
+                MachineEvent event = slots[index];
+                try {
+                    listener.onEvent(event);
+                } catch (RuntimeException e) {
+                    listenerErrors.incrementAndGet();
+                }
+                event.clear();
+                sequences.set(index, head + slots.length);
+                head++;
+                delivered.set(head);
+                spins = 0;
+            } else {
+                spins = backOff(spins);
+            }
+        }
+    }
+
+    /**
+     * This method is used to wait while the ring buffer is full or empty. Spins for a short time before parking the thread.
+     *
+     * @param spins The number of times the thread has already waited.
+     * @return The updated number of times the thread has waited.
+     */
+    private static int backOff(int spins) {
+        if (spins < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return spins + 1;
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Enum containing the types of event the vending machine publishes, and how each type's message is built
+ * from the values of the event.
+ */
+public enum MachineEventType {
+
+    COIN_INSERTED {
+        @Override
+        String describe(MachineEvent event) {
+            return "You inserted " + event.getCount() + " " + event.getItem() + " coins";
+        }
+    },
+    COINS_INSERTED {
+        @Override
+        String describe(MachineEvent event) {
+            return "You inserted " + event.getCount() + " coins worth £" + event.getAmount();
+        }
+    },
+    ADMIN_COIN_INSERTED {
+        @Override
+        String describe(MachineEvent event) {
+            return "Admin inserted " + event.getCount() + " " + event.getItem() + " coins into the machine!";
+        }
+    },
+    BALANCE {
+        @Override
+        String describe(MachineEvent event) {
+            return "Total money inserted = £" + event.getAmount();
+        }
+    },
+    CHANGE_WARNING("WARNING: The machine cannot give change for this amount! Please insert the exact amount or request a refund!"),
+    ITEM_SELECTED {
+        @Override
+        String describe(MachineEvent event) {
+            return "You Selected: " + event.getItem();
+        }
+    },
+    CURRENT_ITEM {
+        @Override
+        String describe(MachineEvent event) {
+            return "The currently selected item is: " + event.getItem();
+        }
+    },
+    ITEM_PRICE {
+        @Override
+        String describe(MachineEvent event) {
+            return "The currently selected item: " + event.getItem() + "'s price is £" + event.getAmount();
+        }
+    },
+    INSUFFICIENT_MONEY {
+        @Override
+        String describe(MachineEvent event) {
+            return "You have not inserted enough money to purchase this item. You have inserted £" + event.getAmount();
+        }
+    },
+    PRODUCT_VENDED {
+        @Override
+        String describe(MachineEvent event) {
+            return event.getItem() + " was purchased!";
+        }
+    },
+    PRODUCT_IN_BUCKET {
+        @Override
+        String describe(MachineEvent event) {
+            return "Your purchased " + event.getItem() + " dropped into the bucket. Please collect your purchased item!";
+        }
+    },
+    ADMIN_RETRIEVED {
+        @Override
+        String describe(MachineEvent event) {
+            return "Admin retrieved one " + event.getItem() + "! The item dropped into the bucket.";
+        }
+    },
+    PRODUCT_COLLECTED {
+        @Override
+        String describe(MachineEvent event) {
+            return "You collected your " + event.getItem() + " from the bucket!";
+        }
+    },
+    CHANGE_DISPENSED {
+        @Override
+        String describe(MachineEvent event) {
+            return event.getCount() + " " + event.getItem() + " coin was placed in the bucket";
+        }
+    },
+    CHANGE_PLACED {
+        @Override
+        String describe(MachineEvent event) {
+            return "Your total change £" + event.getAmount() + " Total has been placed into the bucket. Please collect your change!";
+        }
+    },
+    COINS_WITHDRAWN {
+        @Override
+        String describe(MachineEvent event) {
+            return "Your total change £" + event.getAmount() + " Total has been placed into the bucket. Please collect your withdrawn coins!";
+        }
+    },
+    CHANGE_COLLECTED {
+        @Override
+        String describe(MachineEvent event) {
+            return "You collected your £" + event.getAmount() + " total change from the bucket!";
+        }
+    },
+    WITHDRAWN_COLLECTED {
+        @Override
+        String describe(MachineEvent event) {
+            return "You collected your £" + event.getAmount() + " total withdrawn money from the bucket!";
+        }
+    },
+    DEPOSIT_REMAINING {
+        @Override
+        String describe(MachineEvent event) {
+            return "You have £" + event.getAmount() + " still remaining deposited in the machine!";
+        }
+    },
+    ORDER_CANCELLED("Your order has been cancelled. Please select an item to proceed!"),
+    STOCK_EMPTY("The machine is empty! All stock has been sold!"),
+    STOCK_LEVEL {
+        @Override
+        String describe(MachineEvent event) {
+            return "Their are " + event.getCount() + " remaining " + event.getItem() + " in the machine!";
+        }
+    },
+    LOW_STOCK {
+        @Override
+        String describe(MachineEvent event) {
+            return "WARNING: The machine is running low on " + event.getItem() + ". Only " + event.getCount() + " remaining!";
+        }
+    },
+    PRODUCT_REFILLED {
+        @Override
+        String describe(MachineEvent event) {
+            return "The Vending Machine was fully refilled of " + event.getItem() + "!";
+        }
+    },
+    PRODUCT_FULL {
+        @Override
+        String describe(MachineEvent event) {
+            return "The Vending Machine's max stock size is: " + event.getCount() + ". The Vending Machine is already full of " + event.getItem() + ".";
+        }
+    },
+    MACHINE_REFILLED("The Vending Machine was fully refilled!"),
+    ADMIN_LOGIN("Logged in to Admin!"),
+    ADMIN_LOGOUT("Logged out of Admin!"),
+    ADMIN_REPORT,
+    MESSAGE,
+    ERROR;
+
+    private final String message;
+
+    MachineEventType() {
+        this(null);
+    }
+
+    MachineEventType(String message) {
+        this.message = message;
+    }
+
+    /**
+     * This method is used to build the message for an event of this type. Types without a fixed message
+     * use the event's text.
+     *
+     * @param event The event to build the message for.
+     * @return The message for the event, as shown to the user.
+     */
+    String describe(MachineEvent event) {
+        return message != null ? message : event.getText();
+    }
+}
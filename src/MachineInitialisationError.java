@@ -2,17 +2,41 @@
  * Class for machine setup errors. Catches errors when the machine is not setup with valid values.
  */
 public class MachineInitialisationError extends RuntimeException {
+    private final String errorType;
+
     public MachineInitialisationError(String errorType) {
+        super(message(errorType));
+        this.errorType = errorType;
+    }
+
+    /**
+     * @return The type of setup error.
+     */
+    public String getErrorType() {
+        return errorType;
+    }
+
+    /**
+     * @param errorType The type of setup error.
+     * @return The error message shown to the user for the type of error.
+     */
+    private static String message(String errorType) {
         if (errorType.equals("Size")) {
-            System.out.println("ERROR: Vending Machine MAX_SIZE must be greater than 0!");
+            return "ERROR: Vending Machine MAX_SIZE must be greater than 0!";
         } else if (errorType.equals("Product")) {
-            System.out.println("ERROR: Vending Machine Product Level must be a positive number!");
+            return "ERROR: Vending Machine Product Level must be a positive number!";
         } else if (errorType.equals("Change")) {
-            System.out.println("ERROR: Vending Machine Change Level must be a positive number!");
+            return "ERROR: Vending Machine Change Level must be a positive number!";
         } else if (errorType.equals("ProductMax")) {
-            System.out.println("ERROR: Vending Machine Product Level must be less than the max size of the Vending Machine!");
+            return "ERROR: Vending Machine Product Level must be less than the max size of the Vending Machine!";
+        } else if (errorType.equals("Inventory")) {
+            return "ERROR: Vending Machine inventory file could not be opened, or does not match the machine's coins and products!";
+        } else if (errorType.equals("TransactionLog")) {
+            return "ERROR: Vending Machine transaction log could not be read, or does not match the machine's coins and products!";
+        } else if (errorType.equals("Layout")) {
+            return "ERROR: Vending Machine slot layout is not for the machine's catalog of products!";
         }  else {
-            System.out.println("ERROR: Vending Machine could not be initialised!");
+            return "ERROR: Vending Machine could not be initialised!";
         }
     }
 
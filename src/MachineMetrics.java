@@ -0,0 +1,176 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class for the metrics of a vending machine: a latency histogram for each of its operations, and counters of the
+ * products it sells, the coins it accepts and the errors its operations throw.
+ *
+ * Metrics are recorded by every session of the machine at the same time, without locking. Each latency is one atomic
+ * increment of a histogram bucket, and the counters are striped so threads counting at the same time do not contend,
+ * so recording stays cheap enough to leave on. An operation's histogram is only created the first time its latency is
+ * recorded, as most machines of a fleet never use most of the admin operations. Errors are counted in a small table for
+ * each class of error, keyed by the error's type, so counting an error does not build its name; the names are only built
+ * when a snapshot is taken. A {@link MetricsSnapshot} can be taken at any time without pausing the machine.
+ */
+public class MachineMetrics {
+
+    /**
+     * The operations of a session whose latency is recorded.
+     */
+    public enum Operation {
+        INSERT_COIN,
+        INSERT_COINS,
+        AMOUNT_DEPOSITED,
+        REQUEST_REFUND,
+        SELECT_ITEM,
+        CURRENT_ITEM,
+        PURCHASE_ITEM,
+        PURCHASE_BASKET,
+        GET_BUCKET_PRODUCTS,
+        GET_BUCKET_COINS,
+        LOGIN,
+        LOGOUT,
+        PRINT_ADMIN_COIN_INFO,
+        PRINT_ADMIN_PRODUCT_INFO,
+        PRINT_ADMIN_INFO,
+        WITHDRAW_COINS,
+        DEPOSIT_COINS,
+        ADMIN_REFILL_PRODUCT,
+        ADMIN_REFILL_ALL_PRODUCT,
+        CLOSE_SESSION
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final String NO_ERROR_TYPE = "";
+
+    private final AtomicReferenceArray<LatencyHistogram> latencies = new AtomicReferenceArray<>(OPERATIONS.length);
+    private final LongAdder[] sales;
+    private final LongAdder[] coinsAccepted = new LongAdder[Coin.values().length];
+    private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, LongAdder>> errors = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for the metrics of a machine.
+     *
+     * @param catalog The catalog of products the machine sells.
+     */
+    MachineMetrics(ProductCatalog catalog) {
+        sales = new LongAdder[catalog.size()];
+        for (int i = 0; i < sales.length; i++) {
+            sales[i] = new LongAdder();
+        }
+        for (int i = 0; i < coinsAccepted.length; i++) {
+            coinsAccepted[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param operation The operation.
+     * @param nanos How long the operation took, in nanoseconds.
+     */
+    void recordLatency(Operation operation, long nanos) {
+        LatencyHistogram histogram = latencies.get(operation.ordinal());
+        if (histogram == null) {
+            latencies.compareAndSet(operation.ordinal(), null, new LatencyHistogram());
+            histogram = latencies.get(operation.ordinal());
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * @param product The product sold.
+     * @param quantity The number of the product sold.
+     */
+    void recordSale(Product product, int quantity) {
+        sales[product.getId()].add(quantity);
+    }
+
+    /**
+     * @param coin The coin accepted.
+     * @param count The number of the coin accepted.
+     */
+    void recordCoinsAccepted(Coin coin, int count) {
+        coinsAccepted[coin.getId()].add(count);
+    }
+
+    /**
+     * @param error The error thrown by an operation.
+     */
+    void recordError(RuntimeException error) {
+        String errorType = errorType(error);
+        errors.computeIfAbsent(error.getClass(), errorClass -> new ConcurrentHashMap<>())
+                .computeIfAbsent(errorType == null ? NO_ERROR_TYPE : errorType, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * This method is used to read one product's sales without taking a whole snapshot, such as to plan a restock.
+     *
+     * @param product A product of the machine's catalog.
+     * @return The number of the product sold since the machine started.
+     */
+    public long getSales(Product product) {
+        return sales[product.getId()].sum();
+    }
+
+    /**
+     * @param error An error.
+     * @return The error's type if it is one of the machine's errors, such as money, or null.
+     */
+    static String errorType(RuntimeException error) {
+        String errorType = null;
+        if (error instanceof MachinePurchaseException) {
+            errorType = ((MachinePurchaseException) error).getErrorType();
+        } else if (error instanceof MachineStockException) {
+            errorType = ((MachineStockException) error).getErrorType();
+        } else if (error instanceof MachineSelectionException) {
+            errorType = ((MachineSelectionException) error).getErrorType();
+        } else if (error instanceof AdminPrivilegeException) {
+            errorType = ((AdminPrivilegeException) error).getErrorType();
+        } else if (error instanceof MachineInitialisationError) {
+            errorType = ((MachineInitialisationError) error).getErrorType();
+        }
+        return errorType;
+    }
+
+    /**
+     * @param errorClass The class of an error.
+     * @param errorType The error's type, or an empty string if it has none.
+     * @return The name of the error's class, followed by its type in brackets if it has one,
+     * such as MachinePurchaseException(money).
+     */
+    static String errorKey(Class<?> errorClass, String errorType) {
+        String name = errorClass.getSimpleName();
+        return errorType.isEmpty() ? name : name + "(" + errorType + ")";
+    }
+
+    /**
+     * This method is used to read the metrics while the machine keeps running. Each histogram and counter is read
+     * on its own, so operations finishing while the snapshot is taken may be counted in some metrics and not others.
+     *
+     * @return A copy of the metrics.
+     */
+    public MetricsSnapshot snapshot() {
+        long[][] latencyCounts = new long[latencies.length()][];
+        for (int i = 0; i < latencyCounts.length; i++) {
+            LatencyHistogram histogram = latencies.get(i);
+            latencyCounts[i] = histogram == null ? new long[LatencyHistogram.BUCKETS] : histogram.snapshot();
+        }
+        long[] productSales = new long[sales.length];
+        for (int i = 0; i < sales.length; i++) {
+            productSales[i] = sales[i].sum();
+        }
+        long[] coins = new long[coinsAccepted.length];
+        for (int i = 0; i < coinsAccepted.length; i++) {
+            coins[i] = coinsAccepted[i].sum();
+        }
+        Map<String, Long> errorCounts = new HashMap<>();
+        for (Map.Entry<Class<?>, ConcurrentHashMap<String, LongAdder>> errorClass : errors.entrySet()) {
+            for (Map.Entry<String, LongAdder> entry : errorClass.getValue().entrySet()) {
+                errorCounts.put(errorKey(errorClass.getKey(), entry.getKey()), entry.getValue().sum());
+            }
+        }
+        return new MetricsSnapshot(latencyCounts, productSales, coins, errorCounts);
+    }
+}
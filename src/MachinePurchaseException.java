@@ -2,15 +2,41 @@
  * Class for Machine purchase errors. Catches errors when the user attempts to perform invalid purchase actions.
  */
 public class MachinePurchaseException extends RuntimeException {
+    private final String errorType;
+
     public MachinePurchaseException(String errorType) {
+        super(message(errorType));
+        this.errorType = errorType;
+    }
+
+    /**
+     * @return The type of purchase error.
+     */
+    public String getErrorType() {
+        return errorType;
+    }
+
+    /**
+     * @param errorType The type of purchase error.
+     * @return The error message shown to the user for the type of error.
+     */
+    private static String message(String errorType) {
         if (errorType.equals("stock")) {
-            System.out.println("ERROR: The item you attempted to purchase is out of stock!");
+            return "ERROR: The item you attempted to purchase is out of stock!";
         } else if(errorType.equals("money")) {
-            System.out.println("ERROR: You do not have the required funds!");
+            return "ERROR: You do not have the required funds!";
+        } else if(errorType.equals("change")){
+            return "ERROR: The machine cannot give change for this amount! Please insert the exact amount or request a refund!";
         } else if(errorType.equals("refund")){
-            System.out.println("ERROR: You have not entered any money to be refunded!");
+            return "ERROR: You have not entered any money to be refunded!";
+        } else if(errorType.equals("basket")){
+            return "ERROR: A basket must hold products of this machine, in quantities greater than 0!";
+        } else if(errorType.equals("order")){
+            return "ERROR: Please finish or cancel your current order before buying a basket!";
+        } else if(errorType.equals("close")){
+            return "ERROR: Please finish your order and collect your items before closing the session!";
         } else {
-            System.out.println("ERROR!");
+            return "ERROR!";
         }
     }
-}
\ No newline at end of file
+}
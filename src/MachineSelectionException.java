@@ -4,13 +4,31 @@
  */
 public class MachineSelectionException extends RuntimeException {
 
+    private final String errorType;
+
     public MachineSelectionException(String errorType) {
+        super(message(errorType));
+        this.errorType = errorType;
+    }
+
+    /**
+     * @return The type of selection error.
+     */
+    public String getErrorType() {
+        return errorType;
+    }
+
+    /**
+     * @param errorType The type of selection error.
+     * @return The error message shown to the user for the type of error.
+     */
+    private static String message(String errorType) {
         if(errorType.equals("InvalidCode")){
-            System.out.println("ERROR: Code entered is invalid!");
+            return "ERROR: Code entered is invalid!";
         } else if(errorType.equals("noItemSelected")){
-            System.out.println("ERROR: No item has been selected! Please select an item you wish purchase!");
+            return "ERROR: No item has been selected! Please select an item you wish purchase!";
         } else {
-            System.out.println("ERROR: Selection error!");
+            return "ERROR: Selection error!";
         }
     }
 }
@@ -0,0 +1,102 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable class for the state of a vending machine at one point in its transaction log: the stock level of every
+ * coin and product, and the state each of its sessions was in.
+ *
+ * Snapshots are rebuilt from a machine's log with {@link TransactionLog#rebuild(java.nio.file.Path)}, for auditing
+ * or settling disputes, and are also checkpointed alongside the log so recovery only replays the records after them.
+ */
+public final class MachineSnapshot {
+
+    private final long sequence;
+    private final long fingerprint;
+    private final int[] coinLevels;
+    private final int[] productLevels;
+    private final Map<Integer, MachineStateType> sessionStates;
+
+    /**
+     * Constructor for the machine snapshot. The arrays and map are copied.
+     *
+     * @param sequence The sequence number of the last log record the snapshot includes.
+     * @param fingerprint The fingerprint of the machine's product catalog.
+     * @param coinLevels The stock level of each coin, by id.
+     * @param productLevels The stock level of each product, by id.
+     * @param sessionStates The state of each session, by session id.
+     */
+    MachineSnapshot(long sequence, long fingerprint, int[] coinLevels, int[] productLevels, Map<Integer, MachineStateType> sessionStates) {
+        this.sequence = sequence;
+        this.fingerprint = fingerprint;
+        this.coinLevels = coinLevels.clone();
+        this.productLevels = productLevels.clone();
+        this.sessionStates = Collections.unmodifiableMap(new HashMap<>(sessionStates));
+    }
+
+    /**
+     * @return The sequence number of the last log record the snapshot includes.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return The fingerprint of the machine's product catalog.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @param coin The coin.
+     * @return The stock level of the coin.
+     */
+    public int getCoinLevel(Coin coin) {
+        return coinLevels[coin.getId()];
+    }
+
+    /**
+     * @param product A product of the machine's catalog.
+     * @return The stock level of the product.
+     */
+    public int getProductLevel(Product product) {
+        return productLevels[product.getId()];
+    }
+
+    /**
+     * @return The stock level of each coin, by id.
+     */
+    public int[] getCoinLevels() {
+        return coinLevels.clone();
+    }
+
+    /**
+     * @return The stock level of each product, by id.
+     */
+    public int[] getProductLevels() {
+        return productLevels.clone();
+    }
+
+    /**
+     * @param sessionId The id of a session of the machine; the machine's front panel is session 0.
+     * @return The state the session was in, or null if the session had not been opened.
+     */
+    public MachineStateType getSessionState(int sessionId) {
+        return sessionStates.get(sessionId);
+    }
+
+    /**
+     * @return The state of each session, by session id.
+     */
+    public Map<Integer, MachineStateType> getSessionStates() {
+        return sessionStates;
+    }
+
+    @Override
+    public String toString() {
+        return "MachineSnapshot{sequence=" + sequence + ", coins=" + Arrays.toString(coinLevels)
+                + ", products=" + Arrays.toString(productLevels) + ", sessions=" + sessionStates + "}";
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * Enum containing the states a session of the vending machine can be in, as written to the transaction log
+ * and held in machine snapshots.
+ */
+public enum MachineStateType {
+    NOT_SELECTED,
+    ITEM_SELECTED,
+    COIN_INSERTED,
+    ITEM_PURCHASED,
+    PRODUCT_EMPTY,
+    ADMIN_MODE
+}
@@ -3,13 +3,31 @@
  * inserted coin amount, or when the machine does not contain enough change to provide the user with a refund.
  */
 public class MachineStockException extends RuntimeException {
+    private final String errorType;
+
     public MachineStockException(String errorType) {
+        super(message(errorType));
+        this.errorType = errorType;
+    }
+
+    /**
+     * @return The type of stock error.
+     */
+    public String getErrorType() {
+        return errorType;
+    }
+
+    /**
+     * @param errorType The type of stock error.
+     * @return The error message shown to the user for the type of error.
+     */
+    private static String message(String errorType) {
         if (errorType.equals("Coin amount")) {
-            System.out.println("ERROR: You cannot enter negative amounts of coins, please enter a positive value!");
+            return "ERROR: You cannot enter negative amounts of coins, please enter a positive value!";
         } else if (errorType.equals("CoinStock")) {
-            System.out.println("ERROR: The machine does not contain enough change to provide the refunded amount!");
+            return "ERROR: The machine does not contain enough change to provide the refunded amount!";
         } else {
-            System.out.println("ERROR!");
+            return "ERROR!";
         }
     }
 }
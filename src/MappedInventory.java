@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class for keeping a machine's coin stock and product stock in a memory-mapped file, so the machine's inventory
+ * survives a restart without being saved or loaded.
+ *
+ * The file has a fixed layout: a header recording the number of coins and products and a fingerprint of the
+ * product codes, then one int slot per coin and one per product. The inventory listens to both stocks and writes
+ * each changed stock level straight into its slot of the mapped buffer. Writing the buffer out to the disk with
+ * {@link MappedByteBuffer#force()} is batched; a background thread forces the buffer once per interval, and only
+ * if a stock level has changed. When a machine is created with a file that already holds an inventory, its stock
+ * levels are read back from the slots instead of starting at the machine's product and change levels.
+ */
+public class MappedInventory implements AutoCloseable {
+
+    public static final long DEFAULT_FORCE_INTERVAL_MILLIS = 100;
+
+    private static final int MAGIC = 0x564D494E;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int SLOT_BYTES = Integer.BYTES;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long forceIntervalNanos;
+    private MappedByteBuffer buffer;
+    private int productOffset;
+    private Thread forcer;
+    private volatile boolean dirty;
+    private volatile boolean open = true;
+
+    /**
+     * Constructor for the mapped inventory. The file is mapped once the inventory is attached to a machine.
+     *
+     * @param file The inventory file, created if it does not exist.
+     * @param forceIntervalMillis How often changed stock levels are forced out to the disk, in milliseconds.
+     * @throws IOException Throws error if the file cannot be opened.
+     */
+    public MappedInventory(Path file, long forceIntervalMillis) throws IOException {
+        if (forceIntervalMillis < 1) {
+            throw new IllegalArgumentException("Inventory force interval must be greater than 0");
+        }
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.forceIntervalNanos = forceIntervalMillis * 1_000_000;
+    }
+
+    /**
+     * Constructor for the mapped inventory, forcing changed stock levels out every {@link #DEFAULT_FORCE_INTERVAL_MILLIS}.
+     *
+     * @param file The inventory file, created if it does not exist.
+     * @throws IOException Throws error if the file cannot be opened.
+     */
+    public MappedInventory(Path file) throws IOException {
+        this(file, DEFAULT_FORCE_INTERVAL_MILLIS);
+    }
+
+    /**
+     * This method is used to attach the inventory to a machine's stock. If the file already holds an inventory for
+     * the same coins and products, the stock levels are restored from it; otherwise the stock's current levels are
+     * written to the file. From then on each change to the stock is written to the file.
+     *
+     * @param coinStock The machine's coin stock.
+     * @param productStock The machine's product stock.
+     * @return True if the stock levels were restored from the file.
+     * @throws MachineInitialisationError Throws error if the file cannot be mapped, holds an inventory for different
+     * coins or products, or is already attached to a machine.
+     */
+    boolean attach(CoinStock coinStock, ProductStock productStock) {
+        if (buffer != null || !open) {
+            throw new MachineInitialisationError("Inventory");
+        }
+        long fingerprint = productStock.getCatalog().fingerprint();
+        productOffset = HEADER_BYTES + coinStock.size() * SLOT_BYTES;
+        int size = productOffset + productStock.size() * SLOT_BYTES;
+        boolean restore;
+        try {
+            restore = channel.size() > 0;
+            if (restore && channel.size() != size) {
+                throw new MachineInitialisationError("Inventory");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new MachineInitialisationError("Inventory");
+        }
+
+        if (restore) {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != coinStock.size()
+                    || buffer.getInt(12) != productStock.size() || buffer.getLong(16) != fingerprint) {
+                throw new MachineInitialisationError("Inventory");
+            }
+            for (int i = 0; i < coinStock.size(); i++) {
+                coinStock.put(coinStock.getKey(i), buffer.getInt(HEADER_BYTES + i * SLOT_BYTES));
+            }
+            for (int i = 0; i < productStock.size(); i++) {
+                productStock.put(productStock.getKey(i), buffer.getInt(productOffset + i * SLOT_BYTES));
+            }
+        } else {
+            buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, coinStock.size()).putInt(12, productStock.size());
+            buffer.putLong(16, fingerprint);
+            for (int i = 0; i < coinStock.size(); i++) {
+                buffer.putInt(HEADER_BYTES + i * SLOT_BYTES, coinStock.getInt(coinStock.getKey(i)));
+            }
+            for (int i = 0; i < productStock.size(); i++) {
+                buffer.putInt(productOffset + i * SLOT_BYTES, productStock.getInt(productStock.getKey(i)));
+            }
+            dirty = true;
+        }
+
+        coinStock.addListener((item, oldLevel, newLevel) -> write(HEADER_BYTES + item.getId() * SLOT_BYTES, newLevel));
+        productStock.addListener((item, oldLevel, newLevel) -> write(productOffset + item.getId() * SLOT_BYTES, newLevel));
+        forcer = new Thread(this::forceChanges, "vending-machine-inventory");
+        forcer.setDaemon(true);
+        forcer.start();
+        return restore;
+    }
+
+    /**
+     * @return The inventory file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * This method is used to write a stock level into its slot of the mapped buffer.
+     *
+     * @param offset The position of the slot in the file.
+     * @param level The new stock level.
+     */
+    private void write(int offset, int level) {
+        if (open) {
+            buffer.putInt(offset, level);
+            dirty = true;
+        }
+    }
+
+    /**
+     * This method is used to force any changed stock levels out to the disk straight away.
+     */
+    public void force() {
+        MappedByteBuffer mapped = buffer;
+        if (mapped != null && dirty) {
+            dirty = false;
+            mapped.force();
+        }
+    }
+
+    /**
+     * This method is run by the background thread. Forces the changed stock levels out to the disk once per interval.
+     */
+    private void forceChanges() {
+        while (open) {
+            LockSupport.parkNanos(forceIntervalNanos);
+            if (open) {
+                force();
+            }
+        }
+    }
+
+    /**
+     * This method is used to force the remaining changes out to the disk and close the file.
+     * Changes to the machine's stock after the inventory is closed are not written to the file.
+     *
+     * @throws IOException Throws error if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        force();
+        open = false;
+        if (forcer != null) {
+            LockSupport.unpark(forcer);
+            try {
+                forcer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,100 @@
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable class for a copy of a vending machine's metrics, taken with {@link MachineMetrics#snapshot()}.
+ */
+public final class MetricsSnapshot {
+
+    private final long[][] latencies;
+    private final long[] sales;
+    private final long[] coinsAccepted;
+    private final Map<String, Long> errors;
+
+    /**
+     * Constructor for the metrics snapshot. Takes ownership of the arrays and map.
+     *
+     * @param latencies The buckets of each operation's latency histogram, by operation.
+     * @param sales The number of each product sold, by product id.
+     * @param coinsAccepted The number of each coin accepted, by coin id.
+     * @param errors The number of each error thrown, by error.
+     */
+    MetricsSnapshot(long[][] latencies, long[] sales, long[] coinsAccepted, Map<String, Long> errors) {
+        this.latencies = latencies;
+        this.sales = sales;
+        this.coinsAccepted = coinsAccepted;
+        this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * @param operation The operation.
+     * @return The number of times the operation was called.
+     */
+    public long getCount(MachineMetrics.Operation operation) {
+        return LatencyHistogram.count(latencies[operation.ordinal()]);
+    }
+
+    /**
+     * @param operation The operation.
+     * @param fraction The fraction of calls, from 0 to 1, such as 0.99 for the 99th percentile.
+     * @return The latency that the fraction of the operation's calls took at most, in nanoseconds.
+     */
+    public long getLatency(MachineMetrics.Operation operation, double fraction) {
+        return LatencyHistogram.percentile(latencies[operation.ordinal()], fraction);
+    }
+
+    /**
+     * @param operation The operation.
+     * @return The longest latency of the operation, in nanoseconds.
+     */
+    public long getMaxLatency(MachineMetrics.Operation operation) {
+        return LatencyHistogram.max(latencies[operation.ordinal()]);
+    }
+
+    /**
+     * @param product A product of the machine's catalog.
+     * @return The number of the product sold.
+     */
+    public long getSales(Product product) {
+        return sales[product.getId()];
+    }
+
+    /**
+     * @param coin The coin.
+     * @return The number of the coin accepted from customers.
+     */
+    public long getCoinsAccepted(Coin coin) {
+        return coinsAccepted[coin.getId()];
+    }
+
+    /**
+     * @param errorKey The name of the error's class, followed by its type in brackets, such as MachinePurchaseException(money).
+     * @return The number of times the error was thrown.
+     */
+    public long getErrors(String errorKey) {
+        Long count = errors.get(errorKey);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @return The number of times each error was thrown, by error.
+     */
+    public Map<String, Long> getErrors() {
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        for (MachineMetrics.Operation operation : MachineMetrics.Operation.values()) {
+            long count = getCount(operation);
+            if (count > 0) {
+                str.append(operation).append(": count=").append(count)
+                        .append(", p50=").append(getLatency(operation, 0.5)).append("ns")
+                        .append(", p99=").append(getLatency(operation, 0.99)).append("ns\n");
+            }
+        }
+        str.append("errors=").append(errors);
+        return str.toString();
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Immutable value class for an amount of money, stored as an exact whole number of pence.
+ * Used for all the machine's money calculations, so no floating point arithmetic or rounding is needed.
+ */
+public final class Money implements Comparable<Money> {
+
+    private static final int CACHE_SIZE = 1001;
+    private static final Money[] CACHE = new Money[CACHE_SIZE];
+
+    static {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            CACHE[i] = new Money(i);
+        }
+    }
+
+    public static final Money ZERO = CACHE[0];
+
+    private final long pence;
+
+    private Money(long pence) {
+        this.pence = pence;
+    }
+
+    /**
+     * This method is used to get the money value of the inputted amount of pence.
+     * Values up to £10 are cached, so common amounts do not allocate a new object.
+     *
+     * @param pence The amount of pence.
+     * @return The money value of the amount of pence.
+     */
+    public static Money ofPence(long pence) {
+        if (pence >= 0 && pence < CACHE_SIZE) {
+            return CACHE[(int) pence];
+        }
+        return new Money(pence);
+    }
+
+    /**
+     * @return The amount of money in pence.
+     */
+    public long getPence() {
+        return pence;
+    }
+
+    /**
+     * @param other The money to add.
+     * @return The sum of this money and the other money.
+     */
+    public Money plus(Money other) {
+        return ofPence(pence + other.pence);
+    }
+
+    /**
+     * @param other The money to subtract.
+     * @return The difference between this money and the other money.
+     */
+    public Money minus(Money other) {
+        return ofPence(pence - other.pence);
+    }
+
+    /**
+     * @param multiplier The amount to multiply the money by.
+     * @return This money multiplied by the multiplier.
+     */
+    public Money times(long multiplier) {
+        return ofPence(pence * multiplier);
+    }
+
+    /**
+     * @return True if the amount of money is zero.
+     */
+    public boolean isZero() {
+        return pence == 0;
+    }
+
+    /**
+     * @param other The money to compare against.
+     * @return True if this money is greater than the other money.
+     */
+    public boolean isGreaterThan(Money other) {
+        return pence > other.pence;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(pence, other.pence);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Money)) {
+            return false;
+        }
+        return pence == ((Money) o).pence;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(pence);
+    }
+
+    /**
+     * @return The money in pounds to two decimal places, for example 4.08.
+     */
+    @Override
+    public String toString() {
+        long absolute = Math.abs(pence);
+        long pounds = absolute / 100;
+        long remainder = absolute % 100;
+        StringBuilder str = new StringBuilder(8);
+        if (pence < 0) {
+            str.append('-');
+        }
+        str.append(pounds).append('.');
+        if (remainder < 10) {
+            str.append('0');
+        }
+        return str.append(remainder).toString();
+    }
+}
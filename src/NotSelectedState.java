@@ -5,16 +5,16 @@ import java.util.List;
  * empty of products. To progress the user must select an item to purchase.
  */
 public class NotSelectedState implements State{
-    private final VendingMachine vendingMachine;
+    private final Session session;
 
     /**
      * The constructor for the not selected state.
      *
-     * @param vendingMachine passes the current vending machine into the constructor.
+     * @param session passes the current session into the constructor.
      */
-    public NotSelectedState(VendingMachine vendingMachine) {
-        this.vendingMachine = vendingMachine;
-        vendingMachine.setSelectedItem(null);
+    public NotSelectedState(Session session) {
+        this.session = session;
+        session.setSelectedItem(null);
     }
 
     /**
@@ -28,7 +28,28 @@ public class NotSelectedState implements State{
      */
     @Override
     public void insertCoin(Coin coin, Integer coinAmount) throws MachineStockException {
-        System.out.println("Please Select an item before inserting coins!");
+        session.getEventSink().publish(MachineEventType.MESSAGE, "Please Select an item before inserting coins!");
+    }
+
+    /**
+     * Method used to tell the user the amount of coins currently deposited by them.
+     * In this state no money has been inserted, so it prints to the user and returns zero.
+     *
+     * @return The current amount of coins deposited by the user.
+     */
+    @Override
+    public Money amountDeposited() {
+        session.getEventSink().publish(MachineEventType.MESSAGE, "You have not inserted any money!");
+        return Money.ZERO;
+    }
+
+    /**
+     * This method is used to request a refund of the total inserted coins by the user.
+     * In this state no money has been inserted, so it prints to the user there is nothing to refund.
+     */
+    @Override
+    public void requestRefund() {
+        session.getEventSink().publish(MachineEventType.MESSAGE, "You have not entered any money to be refunded!");
     }
 
 
@@ -43,18 +64,18 @@ public class NotSelectedState implements State{
     @Override
     public void selectItem(String code) throws MachineSelectionException {
         try {
-            vendingMachine.getKeypad().enterItemCode(code);
+            session.getKeypad().enterItemCode(code);
         } catch (Exception e) {
             throw new MachineSelectionException("InvalidCode");
         }
-        vendingMachine.setCurrentState(vendingMachine.getItemSelectedState());
+        session.setCurrentState(session.getItemSelectedState());
     }
 
     /**
      * This method prints to the user that no item has been selected.
      */
     private void printNotSelectedMessage(){
-        System.out.println("No item has been selected! Please select an item you wish purchase!");
+        session.getEventSink().publish(MachineEventType.MESSAGE, "No item has been selected! Please select an item you wish purchase!");
     }
 
     /**
@@ -89,7 +110,7 @@ public class NotSelectedState implements State{
      */
     @Override
     public List<Product> getBucketProducts() {
-        System.out.println("No item has been purchased! Please select an item you wish purchase!");
+        session.getEventSink().publish(MachineEventType.MESSAGE, "No item has been purchased! Please select an item you wish purchase!");
         return null;
     }
 
@@ -97,11 +118,11 @@ public class NotSelectedState implements State{
      * This method is used to collect the refunded coins from the bucket.
      * In this state no item has been purchased, so it prints to the user to please select an item.
      *
-     * @return A list containing all the coins collected from the bucket.
+     * @return The number of each coin collected from the bucket, which can also be read as a list of the coins.
      */
     @Override
-    public List<Coin> getBucketCoins() {
-        System.out.println("No coins are in the bucket! To proceed, please select an item you wish purchase!");
+    public CoinCollection getBucketCoins() {
+        session.getEventSink().publish(MachineEventType.MESSAGE, "No coins are in the bucket! To proceed, please select an item you wish purchase!");
         return null;
     }
 
@@ -116,9 +137,9 @@ public class NotSelectedState implements State{
     @Override
     public void login(String username, String password) throws AdminPrivilegeException{
         if(username.equals("OwnerUsername") && password.equals("P4ssw0rd")){
-            System.out.println("Logged in to Admin!");
-            vendingMachine.setCurrentState(vendingMachine.getAdminModeState());
-            vendingMachine.printAdminInfo();
+            session.getEventSink().publish(MachineEventType.ADMIN_LOGIN);
+            session.setCurrentState(session.getAdminModeState());
+            session.printAdminInfo();
         } else {
             throw new AdminPrivilegeException("Login");
         }
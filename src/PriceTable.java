@@ -0,0 +1,264 @@
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable class for the prices a vending machine charges at one time, compiled from its pricing rules by a
+ * {@link PricingEngine}. Each product's price, with the time windows active when the table was compiled, is held in an
+ * array indexed by product id. Each product with low stock surcharges also has a short sorted array of the distinct
+ * levels its surcharges apply below, with its price at the stock levels under each, so the table's size does not depend
+ * on the levels. Finding the price of a product takes an array read, and a binary search of its few surcharge levels if it has any.
+ */
+public final class PriceTable {
+
+    private static final int[] NO_SURCHARGE_LEVELS = new int[0];
+    private static final long[] NO_SURCHARGE_PRICES = new long[0];
+
+    private final ProductCatalog catalog;
+    private final List<PricingRule> rules;
+    private final long validUntilMillis;
+    private final long[] prices;
+    private final int[][] surchargeLevels;
+    private final long[][] surchargePrices;
+    private final int[][] bundleProducts;
+    private final int[][] bundleQuantities;
+    private final long[] bundleDiscounts;
+
+    /**
+     * Constructor for the price table, compiling the rules into the prices of the catalog's products.
+     *
+     * @param catalog The catalog of the products priced.
+     * @param rules The pricing rules, which the table keeps so it can be compiled again when it runs out.
+     * @param time The time of day the table is compiled for.
+     * @param validUntilMillis The time the next time window starts or ends, in milliseconds since the epoch.
+     * @throws IllegalArgumentException Throws error if a rule is for a product that is not in the catalog.
+     */
+    PriceTable(ProductCatalog catalog, List<PricingRule> rules, LocalTime time, long validUntilMillis) {
+        this.catalog = catalog;
+        this.rules = rules;
+        this.validUntilMillis = validUntilMillis;
+        int products = catalog.size();
+        int[] percents = new int[products];
+        int[] surcharges = new int[products];
+        int bundles = 0;
+        for (PricingRule rule : rules) {
+            if (rule.getKind() == PricingRule.Kind.BUNDLE) {
+                bundles++;
+                continue;
+            } else if (rule.getProduct() != null) {
+                idOf(rule.getProduct());
+            }
+            for (int id = 0; id < products; id++) {
+                if (!rule.appliesTo(catalog.get(id))) {
+                    continue;
+                }
+                if (rule.getKind() == PricingRule.Kind.TIME_WINDOW && rule.isActiveAt(time)) {
+                    percents[id] = percents[id] + rule.getPercent();
+                } else if (rule.getKind() == PricingRule.Kind.LOW_STOCK_SURCHARGE) {
+                    surcharges[id]++;
+                }
+            }
+        }
+
+        this.prices = new long[products];
+        this.surchargeLevels = new int[products][];
+        this.surchargePrices = new long[products][];
+        for (int id = 0; id < products; id++) {
+            long base = catalog.get(id).getPrice().getPence();
+            prices[id] = Math.max(0, (base * (100 + percents[id]) + 50) / 100);
+            surchargeLevels[id] = surcharges[id] == 0 ? NO_SURCHARGE_LEVELS : new int[surcharges[id]];
+            surchargePrices[id] = surcharges[id] == 0 ? NO_SURCHARGE_PRICES : new long[surcharges[id]];
+            surcharges[id] = 0;
+        }
+        for (PricingRule rule : rules) {
+            if (rule.getKind() != PricingRule.Kind.LOW_STOCK_SURCHARGE) {
+                continue;
+            }
+            for (int id = 0; id < products; id++) {
+                if (rule.appliesTo(catalog.get(id))) {
+                    surchargeLevels[id][surcharges[id]] = rule.getBelowLevel();
+                    surchargePrices[id][surcharges[id]] = rule.getPence();
+                    surcharges[id]++;
+                }
+            }
+        }
+        for (int id = 0; id < products; id++) {
+            if (surcharges[id] > 0) {
+                compileSurcharges(id);
+            }
+        }
+
+        this.bundleProducts = new int[bundles][];
+        this.bundleQuantities = new int[bundles][];
+        this.bundleDiscounts = new long[bundles];
+        int bundle = 0;
+        for (PricingRule rule : rules) {
+            if (rule.getKind() != PricingRule.Kind.BUNDLE) {
+                continue;
+            }
+            Product[] bundled = rule.getBundleProducts();
+            bundleProducts[bundle] = new int[bundled.length];
+            for (int i = 0; i < bundled.length; i++) {
+                bundleProducts[bundle][i] = idOf(bundled[i]);
+            }
+            bundleQuantities[bundle] = rule.getBundleQuantities();
+            bundleDiscounts[bundle] = rule.getPence();
+            bundle++;
+        }
+    }
+
+    /**
+     * This method is used to turn a product's surcharges, each a level and an amount, into its distinct surcharge levels
+     * in ascending order, each with the product's price at the stock levels below it and at or above the level before it.
+     *
+     * @param id The id of the product.
+     */
+    private void compileSurcharges(int id) {
+        int[] levels = surchargeLevels[id];
+        long[] amounts = surchargePrices[id];
+        for (int i = 1; i < levels.length; i++) {
+            int level = levels[i];
+            long amount = amounts[i];
+            int j = i - 1;
+            while (j >= 0 && levels[j] > level) {
+                levels[j + 1] = levels[j];
+                amounts[j + 1] = amounts[j];
+                j--;
+            }
+            levels[j + 1] = level;
+            amounts[j + 1] = amount;
+        }
+        int steps = 0;
+        for (int i = 0; i < levels.length; i++) {
+            if (steps > 0 && levels[steps - 1] == levels[i]) {
+                amounts[steps - 1] = amounts[steps - 1] + amounts[i];
+            } else {
+                levels[steps] = levels[i];
+                amounts[steps] = amounts[i];
+                steps++;
+            }
+        }
+        //Below a level, the surcharges of that level and every higher level apply.
+        long price = prices[id];
+        for (int i = steps - 1; i >= 0; i--) {
+            price = price + amounts[i];
+            amounts[i] = price;
+        }
+        if (steps < levels.length) {
+            surchargeLevels[id] = Arrays.copyOf(levels, steps);
+            surchargePrices[id] = Arrays.copyOf(amounts, steps);
+        }
+    }
+
+    /**
+     * @param product A product.
+     * @return The id of the product in the table's catalog.
+     * @throws IllegalArgumentException Throws error if the product is not in the catalog.
+     */
+    private int idOf(Product product) {
+        int id = product.getId();
+        if (id >= catalog.size() || catalog.get(id) != product) {
+            throw new IllegalArgumentException("A pricing rule is for a product that is not in the catalog");
+        }
+        return id;
+    }
+
+    /**
+     * @return The pricing rules compiled into the table.
+     */
+    List<PricingRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * @return The time the table must be compiled again, in milliseconds since the epoch.
+     */
+    long getValidUntilMillis() {
+        return validUntilMillis;
+    }
+
+    /**
+     * @param product A product of the machine's catalog.
+     * @param stockLevel The product's stock level.
+     * @return The price of the product at the stock level.
+     */
+    public Money getPrice(Product product, int stockLevel) {
+        return Money.ofPence(getPricePence(product, stockLevel));
+    }
+
+    /**
+     * @param product A product of the machine's catalog.
+     * @param stockLevel The product's stock level.
+     * @return The price of the product at the stock level, in pence.
+     */
+    long getPricePence(Product product, int stockLevel) {
+        int id = product.getId();
+        int[] levels = surchargeLevels[id];
+        if (stockLevel < 0 || levels.length == 0 || stockLevel >= levels[levels.length - 1]) {
+            return prices[id];
+        }
+        //The first surcharge level above the stock level.
+        int step = Arrays.binarySearch(levels, stockLevel + 1);
+        return surchargePrices[id][step >= 0 ? step : -step - 1];
+    }
+
+    /**
+     * This method is used to price a basket, with each product at its price for its stock level before the sale,
+     * less the discount of each bundle the basket holds, taking the bundles in the order of their rules.
+     *
+     * @param basket The number of each product in the basket.
+     * @param productStock The machine's product stock, locked by the caller until the basket is sold, so the
+     * surcharges are those of the levels it is sold at.
+     * @return The price of the basket, in pence.
+     */
+    long getBasketPence(Map<Product, Integer> basket, ProductStock productStock) {
+        long total = 0;
+        for (Map.Entry<Product, Integer> entry : basket.entrySet()) {
+            Product product = entry.getKey();
+            total = total + getPricePence(product, productStock.getInt(product)) * entry.getValue();
+        }
+        if (bundleDiscounts.length == 0) {
+            return total;
+        }
+        int[] basketIds = new int[basket.size()];
+        int[] remaining = new int[basket.size()];
+        int products = 0;
+        for (Map.Entry<Product, Integer> entry : basket.entrySet()) {
+            basketIds[products] = entry.getKey().getId();
+            remaining[products] = entry.getValue();
+            products++;
+        }
+        for (int bundle = 0; bundle < bundleDiscounts.length; bundle++) {
+            int[] ids = bundleProducts[bundle];
+            int[] quantities = bundleQuantities[bundle];
+            int times = Integer.MAX_VALUE;
+            for (int i = 0; i < ids.length && times > 0; i++) {
+                int index = indexOf(basketIds, ids[i]);
+                times = index < 0 ? 0 : Math.min(times, remaining[index] / quantities[i]);
+            }
+            if (times > 0) {
+                for (int i = 0; i < ids.length; i++) {
+                    int index = indexOf(basketIds, ids[i]);
+                    remaining[index] = remaining[index] - times * quantities[i];
+                }
+                total = total - times * bundleDiscounts[bundle];
+            }
+        }
+        return Math.max(0, total);
+    }
+
+    /**
+     * @param ids The ids of the products of a basket.
+     * @param id The id of a product.
+     * @return The position of the product in the basket, or -1 if it is not in the basket.
+     */
+    private static int indexOf(int[] ids, int id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,114 @@
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Class for the pricing of a vending machine. Holds the machine's current {@link PriceTable}, which is immutable and
+ * replaced as a whole, so sessions read prices without locking and never see a table that is half changed.
+ *
+ * Setting new rules compiles them into a new table, which is then published in one step. A table with time windows is
+ * only valid until the next window starts or ends; the first read after that compiles the rules again for the new
+ * time of day, and publishes the table unless the rules were changed in the meantime.
+ *
+ * A session keeps the price of its selected item from the table current when the item was selected, so the price a
+ * customer is shown is the price they are charged, even if the table is replaced before they pay.
+ */
+public class PricingEngine {
+
+    private final ProductCatalog catalog;
+    private final Clock clock;
+    private final AtomicReference<PriceTable> table = new AtomicReference<>();
+
+    /**
+     * Constructor for the pricing of a machine, charging the catalog's prices until rules are set.
+     *
+     * @param catalog The catalog of products the machine sells.
+     */
+    PricingEngine(ProductCatalog catalog) {
+        this(catalog, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Constructor for the pricing of a machine, charging the catalog's prices until rules are set.
+     *
+     * @param catalog The catalog of products the machine sells.
+     * @param clock The clock giving the time of day for time windows.
+     */
+    PricingEngine(ProductCatalog catalog, Clock clock) {
+        this.catalog = catalog;
+        this.clock = clock;
+        this.table.set(compile(Collections.emptyList()));
+    }
+
+    /**
+     * This method is used to replace the machine's pricing rules. The rules are compiled into a new price table before it is
+     * published, so sessions keep reading the old table until the new one is complete.
+     *
+     * @param rules The pricing rules, applied in order. An empty list charges the catalog's prices.
+     * @throws IllegalArgumentException Throws error if a rule is for a product that is not in the machine's catalog.
+     */
+    public void setRules(List<PricingRule> rules) {
+        table.set(compile(Collections.unmodifiableList(new ArrayList<>(rules))));
+    }
+
+    /**
+     * @return The machine's pricing rules.
+     */
+    public List<PricingRule> getRules() {
+        return table.get().getRules();
+    }
+
+    /**
+     * This method is used to read the current price table, compiling the rules again first if a time window has started
+     * or ended since the table was compiled.
+     *
+     * @return The current price table.
+     */
+    public PriceTable getPriceTable() {
+        PriceTable current = table.get();
+        if (clock.millis() >= current.getValidUntilMillis()) {
+            PriceTable compiled = compile(current.getRules());
+            if (table.compareAndSet(current, compiled)) {
+                return compiled;
+            }
+            return table.get();
+        }
+        return current;
+    }
+
+    /**
+     * This method is used to compile the rules for the current time of day.
+     *
+     * @param rules The pricing rules.
+     * @return The price table, valid until the next time window starts or ends.
+     */
+    private PriceTable compile(List<PricingRule> rules) {
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        long validUntil = Long.MAX_VALUE;
+        for (PricingRule rule : rules) {
+            if (rule.getKind() == PricingRule.Kind.TIME_WINDOW) {
+                validUntil = Math.min(validUntil, nextMillis(now, rule.getFrom()));
+                validUntil = Math.min(validUntil, nextMillis(now, rule.getTo()));
+            }
+        }
+        return new PriceTable(catalog, rules, now.toLocalTime(), validUntil);
+    }
+
+    /**
+     * @param now The current time.
+     * @param time A time of day.
+     * @return The next time the time of day is reached after now, in milliseconds since the epoch.
+     */
+    private static long nextMillis(ZonedDateTime now, LocalTime time) {
+        ZonedDateTime next = LocalDateTime.of(now.toLocalDate(), time).atZone(now.getZone());
+        if (!next.isAfter(now)) {
+            next = LocalDateTime.of(now.toLocalDate().plusDays(1), time).atZone(now.getZone());
+        }
+        return next.toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,187 @@
+import java.time.LocalTime;
+import java.util.Map;
+
+/**
+ * Immutable class for a rule that changes the prices a vending machine charges, made with one of the static methods below.
+ * Rules are not evaluated when a product is sold; a {@link PricingEngine} compiles all of a machine's rules into a
+ * {@link PriceTable} once, and again only when a time window starts or ends.
+ */
+public final class PricingRule {
+
+    /**
+     * The kinds of pricing rule.
+     */
+    enum Kind {
+        TIME_WINDOW,
+        LOW_STOCK_SURCHARGE,
+        BUNDLE
+    }
+
+    private final Kind kind;
+    private final Product product;
+    private final LocalTime from;
+    private final LocalTime to;
+    private final int percent;
+    private final int belowLevel;
+    private final long pence;
+    private final Product[] bundleProducts;
+    private final int[] bundleQuantities;
+
+    private PricingRule(Kind kind, Product product, LocalTime from, LocalTime to, int percent, int belowLevel, long pence,
+                        Product[] bundleProducts, int[] bundleQuantities) {
+        this.kind = kind;
+        this.product = product;
+        this.from = from;
+        this.to = to;
+        this.percent = percent;
+        this.belowLevel = belowLevel;
+        this.pence = pence;
+        this.bundleProducts = bundleProducts;
+        this.bundleQuantities = bundleQuantities;
+    }
+
+    /**
+     * This method is used to make a rule changing a price by a percentage for part of every day, such as a happy hour.
+     * A window whose end is before its start runs over midnight.
+     *
+     * @param product The product whose price changes, or null for every product.
+     * @param from The time of day the window starts.
+     * @param to The time of day the window ends.
+     * @param percent The percentage to change the price by, such as -20 for 20% off or 10 for 10% more.
+     * @return The rule.
+     * @throws IllegalArgumentException Throws error if the window is empty, or the price would fall below zero.
+     */
+    public static PricingRule timeWindow(Product product, LocalTime from, LocalTime to, int percent) {
+        if (from.equals(to)) {
+            throw new IllegalArgumentException("A time window must not start and end at the same time");
+        }
+        if (percent < -100) {
+            throw new IllegalArgumentException("A time window cannot take more than 100% off a price");
+        }
+        return new PricingRule(Kind.TIME_WINDOW, product, from, to, percent, 0, 0, null, null);
+    }
+
+    /**
+     * This method is used to make a rule adding a surcharge to a product while its stock is low.
+     *
+     * @param product The product whose price changes, or null for every product.
+     * @param belowLevel The stock level the surcharge applies below.
+     * @param surcharge The amount added to the price.
+     * @return The rule.
+     * @throws IllegalArgumentException Throws error if the level is less than one or the surcharge is negative.
+     */
+    public static PricingRule lowStockSurcharge(Product product, int belowLevel, Money surcharge) {
+        if (belowLevel < 1 || surcharge.getPence() < 0) {
+            throw new IllegalArgumentException("A low stock surcharge needs a level of 1 or more and a surcharge of 0 or more");
+        }
+        return new PricingRule(Kind.LOW_STOCK_SURCHARGE, product, null, null, 0, belowLevel, surcharge.getPence(), null, null);
+    }
+
+    /**
+     * This method is used to make a rule taking an amount off a basket for each time it holds all the products of a bundle.
+     *
+     * @param bundle The number of each product in the bundle.
+     * @param discount The amount taken off for each bundle.
+     * @return The rule.
+     * @throws IllegalArgumentException Throws error if the bundle is empty, has a quantity less than one, or the discount is negative.
+     */
+    public static PricingRule bundle(Map<Product, Integer> bundle, Money discount) {
+        if (bundle.isEmpty() || discount.getPence() < 0) {
+            throw new IllegalArgumentException("A bundle needs at least one product and a discount of 0 or more");
+        }
+        Product[] products = new Product[bundle.size()];
+        int[] quantities = new int[bundle.size()];
+        int i = 0;
+        for (Map.Entry<Product, Integer> entry : bundle.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null || entry.getValue() < 1) {
+                throw new IllegalArgumentException("Each product of a bundle needs a quantity of 1 or more");
+            }
+            products[i] = entry.getKey();
+            quantities[i] = entry.getValue();
+            i++;
+        }
+        return new PricingRule(Kind.BUNDLE, null, null, null, 0, 0, discount.getPence(), products, quantities);
+    }
+
+    /**
+     * @return The kind of rule.
+     */
+    Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return The product whose price the rule changes, or null if it changes every product's price.
+     */
+    Product getProduct() {
+        return product;
+    }
+
+    /**
+     * @param candidate A product.
+     * @return True if the rule changes the product's price.
+     */
+    boolean appliesTo(Product candidate) {
+        return product == null || product == candidate;
+    }
+
+    /**
+     * @param time A time of day.
+     * @return True if the time is within the rule's time window.
+     */
+    boolean isActiveAt(LocalTime time) {
+        if (from.isBefore(to)) {
+            return !time.isBefore(from) && time.isBefore(to);
+        }
+        return !time.isBefore(from) || time.isBefore(to);
+    }
+
+    /**
+     * @return The time of day the rule's time window starts.
+     */
+    LocalTime getFrom() {
+        return from;
+    }
+
+    /**
+     * @return The time of day the rule's time window ends.
+     */
+    LocalTime getTo() {
+        return to;
+    }
+
+    /**
+     * @return The percentage a time window changes prices by.
+     */
+    int getPercent() {
+        return percent;
+    }
+
+    /**
+     * @return The stock level a surcharge applies below.
+     */
+    int getBelowLevel() {
+        return belowLevel;
+    }
+
+    /**
+     * @return The surcharge, or the bundle discount, in pence.
+     */
+    long getPence() {
+        return pence;
+    }
+
+    /**
+     * @return The products of the bundle. The array is shared and must not be changed.
+     */
+    Product[] getBundleProducts() {
+        return bundleProducts;
+    }
+
+    /**
+     * @return The number of each product of the bundle. The array is shared and must not be changed.
+     */
+    int[] getBundleQuantities() {
+        return bundleQuantities;
+    }
+}
@@ -1,24 +1,59 @@
 /**
- * Enum product containing a range of products and their associated price
- * and code.
+ * Class for a product sold by the vending machine, with its code, name, price and slot capacity.
+ * Each product belongs to a product catalog, which numbers its products with dense ids from zero so
+ * the stock of a product can be stored at its id in an array.
+ *
+ * The products of the machine's built-in catalog are available as constants.
  */
-enum Product implements Item {
+final class Product implements Item {
 
-    COKE("0001",2.00),
-    SPRITE("0002",2.00),
-    WATER("0003",1.50),
-    LEMONADE("0004",1.75),
-    CRISPS("1001",1.75),
-    PEANUTS("1002",1.75),
-    CHOCOLATE("1003",1.75),
-    CANDY("1004",1.75);
+    public static final Product COKE = new Product(0, "0001", "Coke", Money.ofPence(200), 0);
+    public static final Product SPRITE = new Product(1, "0002", "Sprite", Money.ofPence(200), 0);
+    public static final Product WATER = new Product(2, "0003", "Water", Money.ofPence(150), 0);
+    public static final Product LEMONADE = new Product(3, "0004", "Lemonade", Money.ofPence(175), 0);
+    public static final Product CRISPS = new Product(4, "1001", "Crisps", Money.ofPence(150), 0);
+    public static final Product PEANUTS = new Product(5, "1002", "Peanuts", Money.ofPence(150), 0);
+    public static final Product CHOCOLATE = new Product(6, "1003", "Chocolate", Money.ofPence(250), 0);
+    public static final Product CANDY = new Product(7, "1004", "Candy", Money.ofPence(200), 0);
 
+    private static final Product[] BUILT_IN = {COKE, SPRITE, WATER, LEMONADE, CRISPS, PEANUTS, CHOCOLATE, CANDY};
+
+    private final int id;
     private final String code;
-    private final double price;
+    private final String name;
+    private final Money price;
+    private final int capacity;
 
-    Product(String code, Double price){
+    /**
+     * Constructor for a product of a catalog.
+     *
+     * @param id The product's position in its catalog.
+     * @param code The code entered on the keypad to select the product.
+     * @param name The name of the product, as shown to the user.
+     * @param price The price of the product.
+     * @param capacity The most units of the product a machine holds, or zero to use the machine's max size.
+     */
+    Product(int id, String code, String name, Money price, int capacity) {
+        this.id = id;
         this.code = code;
+        this.name = name;
         this.price = price;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return The products of the built-in catalog, in id order.
+     */
+    public static Product[] values() {
+        return BUILT_IN.clone();
+    }
+
+    /**
+     * @return The product's position in its catalog.
+     */
+    @Override
+    public int getId() {
+        return id;
     }
 
     /**
@@ -29,65 +64,40 @@ enum Product implements Item {
     }
 
     /**
-     * @return The product in a string format in lower case, and the _ replaced with a space.
+     * @return The price of the product.
+     */
+    public Money getPrice(){
+        return price;
+    }
+
+    /**
+     * @return The most units of the product a machine holds, or zero if the machine's max size applies.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The name of the product.
      */
     @Override
     public String toString() {
-        String string = super.toString();
-        string = string.toLowerCase();
-        string = string.replace('_', ' ');
-        String outputString = string.substring(0, 1).toUpperCase() + string.substring(1);
-        return outputString;
+        return name;
     }
 
     /**
      * @param code The code of the product.
-     * @return The price of the specified product based on the code.
+     * @return The price of the specified product of the built-in catalog, or zero if the code is not the code of a product.
      */
-    public static double getPrice(String code) {
-        switch (code) {
-            case "0001":
-            case "1004":
-            case "0002":
-                return 2.00;
-            case "0003":
-            case "1002":
-            case "1001":
-                return 1.50;
-            case "0004":
-                return 1.75;
-            case "1003":
-                return 2.50;
-            default:
-                return 0;
-        }
+    public static Money getPrice(String code) {
+        return ProductCatalog.DEFAULT.getPrice(code);
     }
 
     /**
      * @param code The code of the product.
-     * @return The product associated with the inputted code.
+     * @return The product of the built-in catalog associated with the inputted code, or null if no product has the code.
      */
     public static Product getProducts(String code) {
-        switch(code) {
-            case "0001":
-                return COKE;
-            case "0002":
-                return SPRITE;
-            case "0003":
-                return WATER;
-            case "0004":
-                return LEMONADE;
-            case "1001":
-                return CRISPS;
-            case "1002":
-                return PEANUTS;
-            case "1003":
-                return CHOCOLATE;
-            case "1004":
-                return CANDY;
-            default:
-                return null;
-        }
+        return ProductCatalog.DEFAULT.getProduct(code);
     }
 }
-
@@ -0,0 +1,214 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Class for the catalog of products a vending machine sells, so the products can be changed without a rebuild.
+ * Holds the products in an array indexed by their id, and an open addressing hash table from each product's code
+ * to the product, so finding a product by its id or code takes constant time and does not allocate.
+ *
+ * A catalog is loaded from a CSV file with one product per line, in a single streaming pass:
+ * <pre>
+ * code,name,price,capacity
+ * 0001,Coke,200,20
+ * </pre>
+ * The price is in pence, and the capacity is optional; a capacity of zero, or none, uses the machine's max size.
+ * Blank lines, lines starting with # and a header line starting with "code" are skipped.
+ */
+public final class ProductCatalog {
+
+    public static final ProductCatalog DEFAULT = new ProductCatalog(Product.values());
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Product[] products;
+    private final Product[] codeTable;
+    private final int mask;
+
+    /**
+     * Constructor for the product catalog.
+     *
+     * @param products The products of the catalog, each at the position of its id.
+     * @throws IllegalArgumentException Throws error if a product is not at the position of its id, or two products have the same code.
+     */
+    ProductCatalog(Product[] products) {
+        this.products = products;
+        int tableSize = Integer.highestOneBit(Math.max(1, products.length) * 2 - 1) << 1;
+        this.codeTable = new Product[tableSize];
+        this.mask = tableSize - 1;
+        for (int id = 0; id < products.length; id++) {
+            Product product = products[id];
+            if (product.getId() != id) {
+                throw new IllegalArgumentException("Product " + product.getCode() + " is not at the position of its id");
+            }
+            int slot = product.getCode().hashCode() & mask;
+            while (codeTable[slot] != null) {
+                if (codeTable[slot].getCode().equals(product.getCode())) {
+                    throw new IllegalArgumentException("Product code " + product.getCode() + " is used more than once");
+                }
+                slot = (slot + 1) & mask;
+            }
+            codeTable[slot] = product;
+        }
+    }
+
+    /**
+     * This method is used to load a product catalog from a CSV file.
+     *
+     * @param file The catalog file.
+     * @return The loaded catalog.
+     * @throws IOException Throws error if the file cannot be read.
+     * @throws IllegalArgumentException Throws error if a line of the file is not a valid product.
+     */
+    public static ProductCatalog load(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * This method is used to read a product catalog in CSV format, giving each product the next id in the order they are read.
+     *
+     * @param reader The reader of the catalog.
+     * @return The read catalog.
+     * @throws IOException Throws error if the reader fails.
+     * @throws IllegalArgumentException Throws error if a line is not a valid product.
+     */
+    public static ProductCatalog read(Reader reader) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        Product[] products = new Product[INITIAL_CAPACITY];
+        int count = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#") || (count == 0 && line.regionMatches(true, 0, "code", 0, 4))) {
+                continue;
+            }
+            if (count == products.length) {
+                products = Arrays.copyOf(products, count * 2);
+            }
+            products[count] = parseProduct(count, line, lineNumber);
+            count++;
+        }
+        return new ProductCatalog(Arrays.copyOf(products, count));
+    }
+
+    /**
+     * This method is used to parse one line of a CSV catalog into a product.
+     *
+     * @param id The id to give the product.
+     * @param line The line to parse.
+     * @param lineNumber The number of the line, for error messages.
+     * @return The product on the line.
+     */
+    private static Product parseProduct(int id, String line, int lineNumber) {
+        String[] fields = line.split(",", -1);
+        if (fields.length < 3 || fields.length > 4) {
+            throw new IllegalArgumentException("Catalog line " + lineNumber + " must have a code, name, price and optional capacity");
+        }
+        String code = fields[0].trim();
+        String name = fields[1].trim();
+        if (code.isEmpty() || name.isEmpty()) {
+            throw new IllegalArgumentException("Catalog line " + lineNumber + " must have a code and a name");
+        }
+        long price = parseNumber(fields[2], "price", lineNumber);
+        long capacity = fields.length == 4 && !fields[3].trim().isEmpty() ? parseNumber(fields[3], "capacity", lineNumber) : 0;
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Catalog line " + lineNumber + " has too large a capacity");
+        }
+        return new Product(id, code, name, Money.ofPence(price), (int) capacity);
+    }
+
+    /**
+     * @param field The field to parse.
+     * @param fieldName The name of the field, for error messages.
+     * @param lineNumber The number of the line, for error messages.
+     * @return The field as a whole number that is not negative.
+     */
+    private static long parseNumber(String field, String fieldName, int lineNumber) {
+        try {
+            long value = Long.parseLong(field.trim());
+            if (value >= 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("Catalog line " + lineNumber + " must have a " + fieldName + " that is a whole number of 0 or more");
+    }
+
+    /**
+     * @return The number of products in the catalog.
+     */
+    public int size() {
+        return products.length;
+    }
+
+    /**
+     * @param id The id of the product.
+     * @return The product with the id.
+     */
+    public Product get(int id) {
+        return products[id];
+    }
+
+    /**
+     * @return The products of the catalog, in id order.
+     */
+    public Product[] getProducts() {
+        return products.clone();
+    }
+
+    /**
+     * This method is used to look up the product with the code.
+     *
+     * @param code The code of the product.
+     * @return The product associated with the code, or null if no product has the code.
+     */
+    public Product getProduct(String code) {
+        if (code == null) {
+            return null;
+        }
+        int slot = code.hashCode() & mask;
+        Product product;
+        while ((product = codeTable[slot]) != null) {
+            if (product.getCode().equals(code)) {
+                return product;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * This method is used to check that a file written for a machine's stock belongs to the same products.
+     *
+     * @return A hash of the catalog's product codes, in id order.
+     */
+    public long fingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        for (Product product : products) {
+            String code = product.getCode();
+            for (int c = 0; c < code.length(); c++) {
+                hash = (hash ^ code.charAt(c)) * 0x100000001b3L;
+            }
+            hash = (hash ^ ',') * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @param code The code of the product.
+     * @return The price of the product with the code, or zero if no product has the code.
+     */
+    public Money getPrice(String code) {
+        Product product = getProduct(code);
+        return product == null ? Money.ZERO : product.getPrice();
+    }
+}
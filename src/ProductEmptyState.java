@@ -5,9 +5,9 @@ import java.util.List;
  * To leave this state the admin must log in and refill the machine.
  */
 public class ProductEmptyState implements State{
-    private final VendingMachine vendingMachine;
-    public ProductEmptyState(VendingMachine vendingMachine) {
-        this.vendingMachine = vendingMachine;
+    private final Session session;
+    public ProductEmptyState(Session session) {
+        this.session = session;
     }
 
 
@@ -15,7 +15,7 @@ public class ProductEmptyState implements State{
      * This method prints to the user that the machine is empty, and needs to be restocked by an administrator.
      */
     private void printMachineEmptyMessage(){
-        System.out.println("Machine is out of all stock. Please contact the Administrator of the machine!");
+        session.getEventSink().publish(MachineEventType.MESSAGE, "Machine is out of all stock. Please contact the Administrator of the machine!");
     }
 
     /**
@@ -38,9 +38,9 @@ public class ProductEmptyState implements State{
      * @return The current amount of coins deposited by the user.
      */
     @Override
-    public double amountDeposited() {
+    public Money amountDeposited() {
         printMachineEmptyMessage();
-        return 0;
+        return Money.ZERO;
     }
 
     @Override
@@ -103,10 +103,10 @@ public class ProductEmptyState implements State{
      * This method is used to collect the refunded coins from the bucket.
      * In this state the method prints to the user the machine is empty of all stock.
      *
-     * @return A list containing all the coins collected from the bucket.
+     * @return The number of each coin collected from the bucket, which can also be read as a list of the coins.
      */
     @Override
-    public List<Coin> getBucketCoins() {
+    public CoinCollection getBucketCoins() {
         printMachineEmptyMessage();
         return null;
     }
@@ -122,9 +122,9 @@ public class ProductEmptyState implements State{
     @Override
     public void login(String username, String password) throws AdminPrivilegeException{
         if("OwnerUsername".equals(username) && "P4ssw0rd".equals(password)){
-            System.out.println("Logged in to Admin!");
-            vendingMachine.setCurrentState(vendingMachine.getAdminModeState());
-            vendingMachine.printAdminInfo();
+            session.getEventSink().publish(MachineEventType.ADMIN_LOGIN);
+            session.setCurrentState(session.getAdminModeState());
+            session.printAdminInfo();
         } else {
             throw new AdminPrivilegeException("Login");
         }
@@ -0,0 +1,322 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class for holding units of the machine's product stock for customers who have selected a product but not yet
+ * bought it, so two customers cannot both be sold the last unit. A unit is reserved when a product is selected,
+ * and either sold when the customer purchases it, released when they change their selection or cancel, or expired
+ * once the customer has been idle for longer than the reservation timeout.
+ *
+ * The number of unreserved units of each product is kept in an atomic array, which follows the product stock
+ * through its listener. Reserving and releasing a unit is a single compare and set on this array, so it takes
+ * constant time and never locks.
+ *
+ * Expired reservations are found with a hashed timer wheel. Each reservation is pushed, without locking, onto the
+ * bucket for the tick of its deadline. The wheel is advanced whenever a unit is reserved, by one thread at a time,
+ * which expires the reservations in the buckets it passes. A reservation whose customer was active since it was
+ * scheduled has its deadline moved on, and is pushed onto a later bucket instead. Reservations therefore expire
+ * at least the timeout after the customer's last operation, and at most one turn of the wheel later.
+ */
+public class ProductReservations implements StockListener {
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60_000;
+
+    private static final long TICK_NANOS = 10_000_000;
+    private static final int WHEEL_SIZE = 256;
+
+    private static final int HELD = 0;
+    private static final int CLAIMED = 1;
+    private static final int RELEASED = 2;
+    private static final int EXPIRED = 3;
+
+    private final ProductStock productStock;
+    private final AtomicIntegerArray unreserved;
+    private final AtomicReferenceArray<Reservation> wheel = new AtomicReferenceArray<>(WHEEL_SIZE);
+    private final AtomicBoolean advancing = new AtomicBoolean();
+    private final long startNanos = System.nanoTime();
+    private volatile long processedTick;
+    private volatile long timeoutNanos = DEFAULT_TIMEOUT_MILLIS * 1_000_000;
+
+    /**
+     * Constructor for the product reservations. Starts with every unit of the product stock unreserved.
+     *
+     * @param productStock The machine's product stock.
+     */
+    public ProductReservations(ProductStock productStock) {
+        this.productStock = productStock;
+        this.unreserved = new AtomicIntegerArray(productStock.size());
+        for (int i = 0; i < productStock.size(); i++) {
+            unreserved.set(i, productStock.getInt(productStock.getKey(i)));
+        }
+        productStock.addListener(this);
+    }
+
+    /**
+     * This method is used to set how long a customer can be idle before the product they selected is released.
+     *
+     * @param timeoutMillis The idle time in milliseconds.
+     */
+    public void setTimeout(long timeoutMillis) {
+        if (timeoutMillis < 1) {
+            throw new IllegalArgumentException("Reservation timeout must be greater than 0");
+        }
+        this.timeoutNanos = timeoutMillis * 1_000_000;
+    }
+
+    /**
+     * @return The idle time in milliseconds before a reservation expires.
+     */
+    public long getTimeout() {
+        return timeoutNanos / 1_000_000;
+    }
+
+    /**
+     * This method is used to get the number of units of the product that are in stock and not reserved.
+     *
+     * @param product The product.
+     * @return The number of units that can still be reserved.
+     */
+    public int getUnreserved(Product product) {
+        return Math.max(0, unreserved.get(product.getId()));
+    }
+
+    /**
+     * Keeps the unreserved units in step with the product stock, when it is refilled or a product is sold.
+     */
+    @Override
+    public void stockChanged(Item item, int oldLevel, int newLevel) {
+        unreserved.addAndGet(item.getId(), newLevel - oldLevel);
+    }
+
+    /**
+     * This method is used to reserve one unit of the product, after expiring any reservations that are past their deadline.
+     *
+     * @param product The product to reserve.
+     * @return The reservation, or null if every unit of the product in stock is already reserved.
+     */
+    Reservation reserve(Product product) {
+        long now = System.nanoTime();
+        expire(now);
+        if (!takeUnit(product)) {
+            return null;
+        }
+        Reservation reservation = new Reservation(product, now + timeoutNanos);
+        schedule(reservation, tick(reservation.deadline));
+        return reservation;
+    }
+
+    /**
+     * This method is used to move the reservation's deadline on, when its customer performs an operation.
+     *
+     * @param reservation The reservation, or null.
+     */
+    void touch(Reservation reservation) {
+        if (reservation != null) {
+            reservation.deadline = System.nanoTime() + timeoutNanos;
+        }
+    }
+
+    /**
+     * This method is used to give the reserved unit back, when its customer changes their selection or cancels.
+     * Does nothing if the reservation has already expired.
+     *
+     * @param reservation The reservation, or null.
+     */
+    void release(Reservation reservation) {
+        if (reservation != null && reservation.changeState(HELD, RELEASED)) {
+            unreserved.incrementAndGet(reservation.product.getId());
+        }
+    }
+
+    /**
+     * This method is used to claim a unit of the product for a purchase, while the machine's stock is locked.
+     * Uses the customer's reservation if it is still held, and otherwise reserves a new unit. A claimed unit no
+     * longer expires, and must be either sold with {@link #sell(Product)} or given back with {@link #unclaim(Product)}.
+     *
+     * @param reservation The customer's reservation, or null.
+     * @param product The product to claim.
+     * @return True if a unit was claimed, false if every unit of the product in stock is reserved by other customers.
+     */
+    boolean claim(Reservation reservation, Product product) {
+        if (reservation != null && reservation.product == product && reservation.changeState(HELD, CLAIMED)) {
+            return true;
+        }
+        release(reservation);
+        expire(System.nanoTime());
+        return takeUnit(product);
+    }
+
+    /**
+     * This method is used to claim several unreserved units of the product at once for a basket purchase, while the
+     * machine's stock is locked. Either every unit is claimed or none are.
+     *
+     * @param product The product to claim.
+     * @param quantity The number of units to claim.
+     * @return True if the units were claimed, false if fewer units of the product in stock are unreserved.
+     */
+    boolean claim(Product product, int quantity) {
+        expire(System.nanoTime());
+        int index = product.getId();
+        int available;
+        do {
+            available = unreserved.get(index);
+            if (available < quantity) {
+                return false;
+            }
+        } while (!unreserved.compareAndSet(index, available, available - quantity));
+        return true;
+    }
+
+    /**
+     * This method is used to give back claimed units, when the basket purchase they were claimed for fails.
+     *
+     * @param product The claimed product.
+     * @param quantity The number of claimed units.
+     */
+    void unclaim(Product product, int quantity) {
+        unreserved.addAndGet(product.getId(), quantity);
+    }
+
+    /**
+     * This method is used to take claimed units out of the product stock, once a basket holding them has been sold.
+     *
+     * @param product The claimed product.
+     * @param quantity The number of claimed units.
+     */
+    void sell(Product product, int quantity) {
+        productStock.subtract(product, quantity);
+        unreserved.addAndGet(product.getId(), quantity);
+    }
+
+    /**
+     * This method is used to give back a claimed unit, when the purchase it was claimed for fails.
+     *
+     * @param product The claimed product.
+     */
+    void unclaim(Product product) {
+        unreserved.incrementAndGet(product.getId());
+    }
+
+    /**
+     * This method is used to take a claimed unit out of the product stock, once it has been sold.
+     *
+     * @param product The claimed product.
+     */
+    void sell(Product product) {
+        productStock.reduce(product);
+        unreserved.incrementAndGet(product.getId());
+    }
+
+    /**
+     * This method is used to take one unreserved unit of the product.
+     *
+     * @param product The product.
+     * @return True if a unit was taken.
+     */
+    private boolean takeUnit(Product product) {
+        int index = product.getId();
+        int available;
+        do {
+            available = unreserved.get(index);
+            if (available <= 0) {
+                return false;
+            }
+        } while (!unreserved.compareAndSet(index, available, available - 1));
+        return true;
+    }
+
+    /**
+     * This method is used to advance the timer wheel to the current time, expiring the reservations that are past
+     * their deadline. Only one thread advances the wheel at a time; other threads return straight away.
+     *
+     * @param now The current time in nanoseconds.
+     */
+    private void expire(long now) {
+        long currentTick = tick(now);
+        if (currentTick <= processedTick || !advancing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long first = Math.max(processedTick + 1, currentTick - WHEEL_SIZE + 1);
+            for (long tick = first; tick <= currentTick; tick++) {
+                processedTick = tick;
+                Reservation reservation = wheel.getAndSet((int) (tick & (WHEEL_SIZE - 1)), null);
+                while (reservation != null) {
+                    Reservation next = reservation.next;
+                    if (reservation.state == HELD) {
+                        if (reservation.deadline - now > 0) {
+                            schedule(reservation, tick(reservation.deadline));
+                        } else if (reservation.changeState(HELD, EXPIRED)) {
+                            unreserved.incrementAndGet(reservation.product.getId());
+                        }
+                    }
+                    reservation = next;
+                }
+            }
+        } finally {
+            advancing.set(false);
+        }
+    }
+
+    /**
+     * This method is used to push the reservation onto the bucket of the wheel for the tick, or the next tick the
+     * wheel will process if the tick has already passed.
+     *
+     * @param reservation The reservation to schedule.
+     * @param tick The tick of the reservation's deadline.
+     */
+    private void schedule(Reservation reservation, long tick) {
+        int index = (int) (Math.max(tick, processedTick + 1) & (WHEEL_SIZE - 1));
+        Reservation head;
+        do {
+            head = wheel.get(index);
+            reservation.next = head;
+        } while (!wheel.compareAndSet(index, head, reservation));
+    }
+
+    /**
+     * @param nanos A time in nanoseconds.
+     * @return The tick of the wheel the time falls in.
+     */
+    private long tick(long nanos) {
+        return (nanos - startNanos) / TICK_NANOS;
+    }
+
+    /**
+     * A unit of a product held for one customer.
+     */
+    static final class Reservation {
+        private static final AtomicIntegerFieldUpdater<Reservation> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Reservation.class, "state");
+
+        private final Product product;
+        private volatile long deadline;
+        private volatile int state = HELD;
+        private Reservation next;
+
+        private Reservation(Product product, long deadline) {
+            this.product = product;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return The reserved product.
+         */
+        Product getProduct() {
+            return product;
+        }
+
+        /**
+         * @return True if the unit is still held for the customer.
+         */
+        boolean isHeld() {
+            return state == HELD;
+        }
+
+        private boolean changeState(int expected, int updated) {
+            return STATE.compareAndSet(this, expected, updated);
+        }
+    }
+}
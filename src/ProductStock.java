@@ -1,101 +1,293 @@
-import java.util.EnumMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * Class for the machine's different product inventories.
  *
- * @param <K> An enum Product Key value in the map.
- * @param <V> The integer value mapped to the enum key.
+ * The machine's own product stock is spread across the slots of its slot layout. The stock level of each product is the
+ * total across its slots, kept up to date as the slots change, so reading it takes constant time however many slots there are.
+ * Each unit taken from a product is taken from the slot picked by the layout's policy, and each unit added fills the
+ * product's slots in slot order. The slots holding units of each product are kept in rings, one per product for
+ * round robin, or one per product and level for fullest first, so picking the slot to vend from takes constant time.
+ *
+ * Every inventory also keeps a count of the products it has in stock and a bitmap with one bit per product in stock,
+ * updated as each stock level changes, so checking if it is empty takes constant time and listing the products in stock
+ * takes time in the number of products listed, however large the catalog is.
  */
-public class ProductStock<K extends Enum<K>,V> implements Stock {
+public class ProductStock extends ArrayStock<Product> {
 
-    private final EnumMap<Product, Integer> productStock = new EnumMap<>(Product.class);
+    private final ProductCatalog catalog;
+    private final SlotLayout layout;
+    private final int[] slotLevels;
+    private final int[] next;
+    private final int[] prev;
+    private final int[] ringHeads;
+    private final int[] ringBase;
+    private final int[] fullestLevel;
+    private final int[] lastSlot;
+    private final BitSet inStock;
+    private int inStockCount;
 
     public ProductStock() {
-        productStock.put(Product.COKE, 0);
-        productStock.put(Product.SPRITE, 0);
-        productStock.put(Product.WATER, 0);
-        productStock.put(Product.LEMONADE, 0);
-        productStock.put(Product.CRISPS, 0);
-        productStock.put(Product.PEANUTS, 0);
-        productStock.put(Product.CHOCOLATE, 0);
-        productStock.put(Product.CANDY, 0);
+        this(ProductCatalog.DEFAULT);
     }
 
     /**
-     * This method is Used to set the inventory's stock to the inputted level.
+     * Constructor for a product inventory holding each product of the catalog, without slots, such as a bucket.
      *
-     * @param stockLevel The integer to set the stock inventory level to.
+     * @param catalog The catalog of products the inventory holds.
      */
-    @Override
-    public void setStock(Integer stockLevel){
-        for (Map.Entry<Product, Integer> entry : productStock.entrySet()) {
-            productStock.put(entry.getKey(), stockLevel);
-        }
+    public ProductStock(ProductCatalog catalog) {
+        this(catalog, null);
     }
 
     /**
-     * This method is used to change the chosen key's value within the map.
+     * Constructor for a product inventory holding each product of the catalog in the slots of a layout.
      *
-     * @param keyValue The enum key.
-     * @param value The value being assigned within the map to the provided key.
+     * @param catalog The catalog of products the inventory holds.
+     * @param layout The layout of the slots holding the products, or null for an inventory without slots.
      */
-    @Override
-    public void put(Item keyValue, Integer value) {
-        productStock.put((Product) keyValue, value);
+    public ProductStock(ProductCatalog catalog, SlotLayout layout) {
+        super(catalog.getProducts());
+        if (layout != null && layout.getCatalog() != catalog) {
+            throw new IllegalArgumentException("The slot layout is not for the inventory's catalog");
+        }
+        this.catalog = catalog;
+        this.layout = layout;
+        this.inStock = new BitSet(catalog.size());
+        int slots = layout == null ? 0 : layout.size();
+        this.slotLevels = new int[slots];
+        this.next = new int[slots];
+        this.prev = new int[slots];
+        this.lastSlot = new int[catalog.size()];
+        Arrays.fill(lastSlot, -1);
+        this.ringBase = new int[catalog.size()];
+        int rings = 0;
+        for (int id = 0; id < ringBase.length; id++) {
+            ringBase[id] = rings;
+            rings = rings + (isFullestFirst() ? layout.maxSlotCapacity(id) + 1 : 1);
+        }
+        this.ringHeads = new int[layout == null ? 0 : rings];
+        Arrays.fill(ringHeads, -1);
+        this.fullestLevel = new int[isFullestFirst() ? catalog.size() : 0];
+    }
+
+    /**
+     * @return The catalog of products the inventory holds.
+     */
+    public ProductCatalog getCatalog() {
+        return catalog;
     }
 
+    /**
+     * @return The layout of the slots holding the products, or null if the inventory has no slots.
+     */
+    public SlotLayout getLayout() {
+        return layout;
+    }
 
     /**
-     * This method is used to increase the chosen key's value by one.
+     * @param slot The slot number.
+     * @return The number of units in the slot.
+     */
+    public int getSlotLevel(int slot) {
+        return slotLevels[slot];
+    }
+
+    /**
+     * @param product The product.
+     * @return The slot the last unit of the product was taken from, or -1 if none has been taken.
+     */
+    public int getLastSlot(Product product) {
+        return lastSlot[product.getId()];
+    }
+
+    /**
+     * @return True if no product is in stock.
+     */
+    public boolean isEmpty() {
+        return inStockCount == 0;
+    }
+
+    /**
+     * @return The number of products in stock.
+     */
+    public int getInStockCount() {
+        return inStockCount;
+    }
+
+    /**
+     * This method is used to step through the products in stock, in id order.
      *
-     * @param productStockItem The enum key.
+     * @param fromId The id to start looking from.
+     * @return The id of the first product in stock with an id of at least fromId, or -1 if there is none.
      */
-    @Override
-    public void insert(Item productStockItem) {
-        int stockLevel = productStock.get(productStockItem);
-        productStock.put((Product) productStockItem, stockLevel+1);
+    public int nextInStock(int fromId) {
+        return inStock.nextSetBit(fromId);
+    }
+
+    /**
+     * @return The products in stock, in id order.
+     */
+    public List<Product> getInStockProducts() {
+        List<Product> products = new ArrayList<>(inStockCount);
+        for (int id = inStock.nextSetBit(0); id >= 0; id = inStock.nextSetBit(id + 1)) {
+            products.add(getKey(id));
+        }
+        return products;
     }
 
     /**
-     * This method is used to decrease the chosen key's value by one.
+     * This method is used to set the stock level of every product in stock to zero, such as when a bucket is collected,
+     * without visiting the products that are already out of stock.
+     */
+    public void clear() {
+        for (int id = inStock.nextSetBit(0); id >= 0; id = inStock.nextSetBit(id + 1)) {
+            put(getKey(id), 0);
+        }
+    }
+
+    /**
+     * This method is used to keep the count and bitmap of products in stock up to date, and to keep the product's slots
+     * in step with its stock level, taking units from the slots picked by the layout's policy when the level falls and
+     * filling the slots in slot order when it rises.
      *
-     * @param reducedItem The enum key.
+     * @param key The product whose stock level changed.
+     * @param oldLevel The previous stock level.
+     * @param newLevel The new stock level.
      */
     @Override
-    public void reduce(Item reducedItem) {
-        int stockLevel = productStock.get(reducedItem);
-        productStock.put((Product) reducedItem, stockLevel-1);
+    protected void levelChanged(Product key, int oldLevel, int newLevel) {
+        int id = key.getId();
+        if (oldLevel <= 0 && newLevel > 0) {
+            inStock.set(id);
+            inStockCount++;
+        } else if (oldLevel > 0 && newLevel <= 0) {
+            inStock.clear(id);
+            inStockCount--;
+        }
+        if (layout == null) {
+            return;
+        }
+        for (int level = oldLevel; level > newLevel; level--) {
+            takeUnit(id);
+        }
+        if (newLevel > oldLevel) {
+            addUnits(id, newLevel - oldLevel);
+        }
     }
 
     /**
-     * This method is used to return the value of the specified key from the map.
+     * This method is used to take one unit of the product from the slot picked by the layout's policy.
+     * Units counted above the capacity of the product's slots are kept in its last slot.
      *
-     * @param product The key of the enum map.
-     * @return The value of the associated key in the enum map.
+     * @param id The id of the product.
      */
-    @Override
-    public Integer get(Item product) {
-        return productStock.get(product);
+    private void takeUnit(int id) {
+        int ring = isFullestFirst() ? ringBase[id] + fullestLevel[id] : ringBase[id];
+        int slot = ringHeads[ring];
+        if (slot >= 0) {
+            setSlotLevel(id, slot, slotLevels[slot] - 1);
+            lastSlot[id] = slot;
+        }
     }
 
     /**
-     * This method is used to return the set view of the enum map.
+     * This method is used to add units of the product to its slots, filling each slot in slot order before the next.
+     * If the units do not fit, the rest are put in the product's last slot.
      *
-     * @return The set view of the enum map.
+     * @param id The id of the product.
+     * @param amount The number of units to add.
      */
-    @Override
-    public Iterable<? extends Map.Entry<Product, Integer>> entrySet() {
-        return productStock.entrySet();
+    private void addUnits(int id, int amount) {
+        int[] slots = layout.slotsOf(id);
+        for (int i = 0; i < slots.length && amount > 0; i++) {
+            int slot = slots[i];
+            int room = i == slots.length - 1 ? amount : Math.min(amount, Math.max(0, layout.getCapacity(slot) - slotLevels[slot]));
+            if (room > 0) {
+                setSlotLevel(id, slot, slotLevels[slot] + room);
+                amount = amount - room;
+            }
+        }
     }
 
     /**
-     * This method is used to return the number of key-value mappings in this map.
+     * This method is used to change the level of a slot, moving it to the ring it now belongs in. A slot is put at the
+     * back of its ring, so after a unit is taken from it every other slot in the ring is picked before it again.
      *
-     * @return The size of the specified enum map.
+     * @param id The id of the slot's product.
+     * @param slot The slot number.
+     * @param newLevel The new number of units in the slot.
      */
-    @Override
-    public int size() {
-        return productStock.size();
+    private void setSlotLevel(int id, int slot, int newLevel) {
+        int oldLevel = slotLevels[slot];
+        slotLevels[slot] = newLevel;
+        if (oldLevel > 0) {
+            unlink(slot, ringOf(id, oldLevel));
+        }
+        if (newLevel > 0) {
+            int ring = ringOf(id, newLevel);
+            link(slot, ring);
+            if (isFullestFirst() && ring - ringBase[id] > fullestLevel[id]) {
+                fullestLevel[id] = ring - ringBase[id];
+            }
+        }
+        if (isFullestFirst()) {
+            while (fullestLevel[id] > 0 && ringHeads[ringBase[id] + fullestLevel[id]] < 0) {
+                fullestLevel[id]--;
+            }
+        }
+    }
+
+    /**
+     * @param id The id of the slot's product.
+     * @param level The number of units in the slot, above zero.
+     * @return The ring a slot of the product with the level belongs in. Slots above the capacity of the product's largest slot share its ring.
+     */
+    private int ringOf(int id, int level) {
+        return isFullestFirst() ? ringBase[id] + Math.min(level, layout.maxSlotCapacity(id)) : ringBase[id];
+    }
+
+    /**
+     * @param slot The slot number.
+     * @param ring The ring to add the slot to, at the back.
+     */
+    private void link(int slot, int ring) {
+        int head = ringHeads[ring];
+        if (head < 0) {
+            ringHeads[ring] = slot;
+            next[slot] = slot;
+            prev[slot] = slot;
+        } else {
+            prev[slot] = prev[head];
+            next[slot] = head;
+            next[prev[head]] = slot;
+            prev[head] = slot;
+        }
+    }
+
+    /**
+     * @param slot The slot number.
+     * @param ring The ring to remove the slot from.
+     */
+    private void unlink(int slot, int ring) {
+        if (next[slot] == slot) {
+            ringHeads[ring] = -1;
+        } else {
+            next[prev[slot]] = next[slot];
+            prev[next[slot]] = prev[slot];
+            if (ringHeads[ring] == slot) {
+                ringHeads[ring] = next[slot];
+            }
+        }
+    }
+
+    /**
+     * @return True if units are taken from the fullest slot of a product.
+     */
+    private boolean isFullestFirst() {
+        return layout != null && layout.getPolicy() == SlotLayout.Policy.FULLEST_FIRST;
     }
-}
\ No newline at end of file
+}
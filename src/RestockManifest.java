@@ -0,0 +1,150 @@
+/**
+ * Immutable class for the restock of a vending machine, or of a whole route of machines: the units of each product
+ * to load, and the rolls of each coin to top up the change with. Made by a {@link RestockPlanner}.
+ */
+public final class RestockManifest {
+
+    private final ProductCatalog catalog;
+    private final int[] units;
+    private final int[] rolls;
+
+    /**
+     * Constructor for the restock manifest. Takes ownership of the arrays.
+     *
+     * @param catalog The catalog of the products to load.
+     * @param units The units of each product to load, by product id.
+     * @param rolls The rolls of each coin to load, by coin id.
+     */
+    RestockManifest(ProductCatalog catalog, int[] units, int[] rolls) {
+        this.catalog = catalog;
+        this.units = units;
+        this.rolls = rolls;
+    }
+
+    /**
+     * This method is used to add up the manifests of the machines on a route, giving everything to load for the route.
+     *
+     * @param manifests The manifests of the route's machines, which must all sell the products of the same catalog.
+     * @return The total of the manifests.
+     * @throws IllegalArgumentException Throws error if there are no manifests, or they are for different catalogs.
+     */
+    public static RestockManifest total(RestockManifest[] manifests) {
+        if (manifests.length == 0) {
+            throw new IllegalArgumentException("A route needs at least one manifest");
+        }
+        ProductCatalog catalog = manifests[0].catalog;
+        long[] units = new long[catalog.size()];
+        long[] rolls = new long[Coin.values().length];
+        for (RestockManifest manifest : manifests) {
+            if (manifest.catalog != catalog) {
+                throw new IllegalArgumentException("The manifests of a route must all be for the same catalog");
+            }
+            for (int i = 0; i < units.length; i++) {
+                units[i] = units[i] + manifest.units[i];
+            }
+            for (int i = 0; i < rolls.length; i++) {
+                rolls[i] = rolls[i] + manifest.rolls[i];
+            }
+        }
+        return new RestockManifest(catalog, toInts(units), toInts(rolls));
+    }
+
+    /**
+     * @param values Whole numbers of 0 or more.
+     * @return The numbers, each capped at the largest int.
+     */
+    private static int[] toInts(long[] values) {
+        int[] ints = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ints[i] = (int) Math.min(Integer.MAX_VALUE, values[i]);
+        }
+        return ints;
+    }
+
+    /**
+     * @return The catalog of the products to load.
+     */
+    public ProductCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * @param product A product of the manifest's catalog.
+     * @return The units of the product to load.
+     */
+    public int getUnits(Product product) {
+        return units[product.getId()];
+    }
+
+    /**
+     * @param coin The coin.
+     * @return The rolls of the coin to load.
+     */
+    public int getRolls(Coin coin) {
+        return rolls[coin.getId()];
+    }
+
+    /**
+     * @param coin The coin.
+     * @return The number of the coin to load, in whole rolls.
+     */
+    public int getCoins(Coin coin) {
+        return rolls[coin.getId()] * RestockPlanner.rollSize(coin);
+    }
+
+    /**
+     * @return The units of every product to load.
+     */
+    public long getTotalUnits() {
+        long total = 0;
+        for (int count : units) {
+            total = total + count;
+        }
+        return total;
+    }
+
+    /**
+     * @return The value of the coin rolls to load.
+     */
+    public Money getTotalChange() {
+        long pence = 0;
+        for (int i = 0; i < rolls.length; i++) {
+            pence = pence + (long) getCoins(Coin.get(i)) * Coin.get(i).getPence();
+        }
+        return Money.ofPence(pence);
+    }
+
+    /**
+     * @return True if nothing needs loading.
+     */
+    public boolean isEmpty() {
+        for (int count : units) {
+            if (count > 0) {
+                return false;
+            }
+        }
+        for (int count : rolls) {
+            if (count > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < units.length; i++) {
+            if (units[i] > 0) {
+                str.append(catalog.get(i)).append(": ").append(units[i]).append(" units\n");
+            }
+        }
+        for (int i = 0; i < rolls.length; i++) {
+            if (rolls[i] > 0) {
+                str.append(Coin.get(i)).append(": ").append(rolls[i]).append(" rolls\n");
+            }
+        }
+        str.append("change=£").append(getTotalChange());
+        return str.toString();
+    }
+}
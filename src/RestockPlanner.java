@@ -0,0 +1,122 @@
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class for planning the restock of vending machines, instead of refilling every product to the machine's capacity.
+ *
+ * Each product is planned to last until the next visit at its rate of sales over the last day, and still be at its low watermark,
+ * as the watermark is the stock kept back for a busier than usual day. The plan never fills a product past its capacity.
+ * Each coin is topped up in whole bank rolls to the machine's starting change level, or the coin's low watermark if it is higher.
+ *
+ * A route of machines is planned in parallel on a fork join pool, with each machine only locked while its levels are read,
+ * so the machines keep serving customers while the route is planned.
+ */
+public class RestockPlanner {
+
+    private static final int PLAN_BATCH = 64;
+
+    //The number of each coin in a bank roll, by coin id.
+    private static final int[] ROLL_SIZES = {10, 20, 20, 50, 50, 100, 50, 100};
+
+    private final long horizonMillis;
+
+    /**
+     * Constructor for the restock planner.
+     *
+     * @param horizonMillis The time until the machines are next restocked, in milliseconds.
+     */
+    public RestockPlanner(long horizonMillis) {
+        if (horizonMillis < 0) {
+            throw new IllegalArgumentException("The time until the next restock must be 0 or more");
+        }
+        this.horizonMillis = horizonMillis;
+    }
+
+    /**
+     * @param coin The coin.
+     * @return The number of the coin in a bank roll.
+     */
+    static int rollSize(Coin coin) {
+        return ROLL_SIZES[coin.getId()];
+    }
+
+    /**
+     * This method is used to plan the restock of one machine from its current stock levels and rate of sales.
+     *
+     * @param machine The machine.
+     * @return The units of each product and rolls of each coin to load into the machine.
+     */
+    public RestockManifest plan(VendingMachine machine) {
+        ProductCatalog catalog = machine.getCatalog();
+        SalesVelocity velocity = machine.getSalesVelocity();
+        double horizonHours = horizonMillis / 3_600_000.0;
+        int[] units = new int[catalog.size()];
+        int[] rolls = new int[ROLL_SIZES.length];
+        machine.beginTransaction();
+        try {
+            ProductStock productStock = machine.getProductStock();
+            for (int i = 0; i < units.length; i++) {
+                Product product = catalog.get(i);
+                double demand = Math.ceil(velocity.getSalesPerHour(product, SalesVelocity.Window.DAY) * horizonHours);
+                long target = (long) Math.min(machine.getCapacity(product), demand + productStock.getLowWatermark(product));
+                units[i] = (int) Math.max(0, target - productStock.getInt(product));
+            }
+            CoinStock coinStock = machine.getCoinStock();
+            for (int i = 0; i < rolls.length; i++) {
+                Coin coin = Coin.get(i);
+                int target = Math.max(machine.getChangeLevel(), coinStock.getLowWatermark(coin));
+                int missing = target - coinStock.getInt(coin);
+                rolls[i] = missing <= 0 ? 0 : (missing + ROLL_SIZES[i] - 1) / ROLL_SIZES[i];
+            }
+        } finally {
+            machine.endTransaction();
+        }
+        return new RestockManifest(catalog, units, rolls);
+    }
+
+    /**
+     * This method is used to plan the restock of every machine on a route in parallel.
+     * Use {@link RestockManifest#total(RestockManifest[])} for everything to load for the route.
+     *
+     * @param route The machines on the route.
+     * @param pool The pool to plan the machines on.
+     * @return The manifest of each machine, in the order of the route.
+     */
+    public RestockManifest[] planRoute(List<VendingMachine> route, ForkJoinPool pool) {
+        RestockManifest[] manifests = new RestockManifest[route.size()];
+        pool.invoke(new PlanTask(route, manifests, 0, route.size()));
+        return manifests;
+    }
+
+    /**
+     * Task planning a range of machines, split in half until each task has only a few machines to plan.
+     */
+    private final class PlanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<VendingMachine> route;
+        private final RestockManifest[] manifests;
+        private final int from;
+        private final int to;
+
+        private PlanTask(List<VendingMachine> route, RestockManifest[] manifests, int from, int to) {
+            this.route = route;
+            this.manifests = manifests;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PLAN_BATCH) {
+                for (int i = from; i < to; i++) {
+                    manifests[i] = plan(route.get(i));
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PlanTask(route, manifests, from, middle), new PlanTask(route, manifests, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class for how fast each product of a vending machine sells, over a sliding window of the last minute, hour and day.
+ *
+ * Each window is a ring of fixed width time buckets, so the memory used does not grow with the number of sales. Each
+ * bucket is a single long holding the number of the time bucket it counts and its count, so a bucket that has come
+ * round again is reset by the same compare and set that counts the sale. Sales are recorded by every session of the
+ * machine at the same time without locking, and reading a rate only sums the buckets of one window. A product's rings
+ * are only created when it is first sold, so products that never sell take no more than an empty reference.
+ */
+public class SalesVelocity {
+
+    /**
+     * The sliding windows sales are counted over.
+     */
+    public enum Window {
+        MINUTE(5_000_000_000L, 12),
+        HOUR(300_000_000_000L, 12),
+        DAY(3_600_000_000_000L, 24);
+
+        private final long bucketNanos;
+        private final int buckets;
+
+        Window(long bucketNanos, int buckets) {
+            this.bucketNanos = bucketNanos;
+            this.buckets = buckets;
+        }
+
+        /**
+         * @return The length of the window, in nanoseconds.
+         */
+        public long getNanos() {
+            return bucketNanos * buckets;
+        }
+    }
+
+    private static final Window[] WINDOWS = Window.values();
+    private static final int[] WINDOW_OFFSETS = new int[WINDOWS.length];
+    private static final int BUCKETS_PER_PRODUCT;
+    private static final int COUNT_BITS = 24;
+    private static final long MAX_COUNT = (1L << COUNT_BITS) - 1;
+    private static final double NANOS_PER_HOUR = 3_600_000_000_000.0;
+
+    static {
+        int offset = 0;
+        for (Window window : WINDOWS) {
+            WINDOW_OFFSETS[window.ordinal()] = offset;
+            offset = offset + window.buckets;
+        }
+        BUCKETS_PER_PRODUCT = offset;
+    }
+
+    private final AtomicReferenceArray<AtomicLongArray> rings;
+    private final long startNanos;
+
+    /**
+     * Constructor for the sales velocity of a machine, starting now.
+     *
+     * @param catalog The catalog of products the machine sells.
+     */
+    SalesVelocity(ProductCatalog catalog) {
+        this(catalog, System.nanoTime());
+    }
+
+    /**
+     * Constructor for the sales velocity of a machine.
+     *
+     * @param catalog The catalog of products the machine sells.
+     * @param startNanos The time the machine started, from {@link System#nanoTime()}.
+     */
+    SalesVelocity(ProductCatalog catalog, long startNanos) {
+        this.rings = new AtomicReferenceArray<>(catalog.size());
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * @param product The product sold.
+     * @param quantity The number of the product sold.
+     */
+    void recordSale(Product product, int quantity) {
+        recordSale(product, quantity, System.nanoTime());
+    }
+
+    /**
+     * This method is used to count a sale in the current bucket of each window, resetting the bucket first if it last
+     * counted an earlier round of the ring.
+     *
+     * @param product The product sold.
+     * @param quantity The number of the product sold.
+     * @param nanos The time of the sale, from {@link System#nanoTime()}.
+     */
+    void recordSale(Product product, int quantity, long nanos) {
+        long elapsed = Math.max(0, nanos - startNanos);
+        AtomicLongArray buckets = rings.get(product.getId());
+        if (buckets == null) {
+            rings.compareAndSet(product.getId(), null, new AtomicLongArray(BUCKETS_PER_PRODUCT));
+            buckets = rings.get(product.getId());
+        }
+        for (Window window : WINDOWS) {
+            long stamp = elapsed / window.bucketNanos;
+            int index = WINDOW_OFFSETS[window.ordinal()] + (int) (stamp % window.buckets);
+            long bucket;
+            long updated;
+            do {
+                bucket = buckets.get(index);
+                long bucketStamp = bucket >>> COUNT_BITS;
+                if (bucketStamp > stamp) {
+                    //A later round has already taken the bucket, so the sale has left the window.
+                    break;
+                }
+                long count = bucketStamp == stamp ? bucket & MAX_COUNT : 0;
+                updated = (stamp << COUNT_BITS) | Math.min(MAX_COUNT, count + quantity);
+            } while (!buckets.compareAndSet(index, bucket, updated));
+        }
+    }
+
+    /**
+     * @param product A product of the machine's catalog.
+     * @param window The window.
+     * @return The number of the product sold within the window, up to now.
+     */
+    public long getSales(Product product, Window window) {
+        return getSales(product, window, System.nanoTime());
+    }
+
+    /**
+     * @param product A product of the machine's catalog.
+     * @param window The window.
+     * @return The number of the product sold per hour within the window, over the part of the window the machine has been running.
+     */
+    public double getSalesPerHour(Product product, Window window) {
+        return getSalesPerHour(product, window, System.nanoTime());
+    }
+
+    /**
+     * @param product A product of the machine's catalog.
+     * @param window The window.
+     * @param nanos The end of the window, from {@link System#nanoTime()}.
+     * @return The number of the product sold within the window.
+     */
+    long getSales(Product product, Window window, long nanos) {
+        AtomicLongArray buckets = rings.get(product.getId());
+        if (buckets == null) {
+            return 0;
+        }
+        long current = Math.max(0, nanos - startNanos) / window.bucketNanos;
+        int base = WINDOW_OFFSETS[window.ordinal()];
+        long total = 0;
+        for (int i = 0; i < window.buckets; i++) {
+            long bucket = buckets.get(base + i);
+            long stamp = bucket >>> COUNT_BITS;
+            if (stamp <= current && stamp > current - window.buckets) {
+                total = total + (bucket & MAX_COUNT);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * The window's buckets cover from the start of its oldest bucket up to now, which is shorter than the window while
+     * the oldest bucket has not been reached yet, or while the machine has been running for less than the window.
+     *
+     * @param product A product of the machine's catalog.
+     * @param window The window.
+     * @param nanos The end of the window, from {@link System#nanoTime()}.
+     * @return The number of the product sold per hour within the window.
+     */
+    double getSalesPerHour(Product product, Window window, long nanos) {
+        long elapsed = Math.max(0, nanos - startNanos);
+        long oldest = Math.max(0, elapsed / window.bucketNanos - window.buckets + 1);
+        long covered = Math.max(1, elapsed - oldest * window.bucketNanos);
+        return getSales(product, window, nanos) * NANOS_PER_HOUR / covered;
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.BitSet;
+
+/**
+ * Class for tracking which products the machine can currently sell for an inserted amount of money.
+ * A product can be sold if it has a unit in stock that no other customer has reserved, the inserted amount covers
+ * its price, and the machine can give the change from its coin stock.
+ *
+ * The result is kept as a bitmap with one bit per product, for the last amount and price table asked about, and is
+ * updated only for the products a stock change can affect. A change to a product's stock level only affects that
+ * product. Coins added to the coin stock can only let the machine give change it could not give before, so only
+ * the products held back by change are checked again, and coins taken out only affect the products that were
+ * sellable. A new amount or price table changes the change owed for every product, so the whole bitmap is worked
+ * out again. Reservations change without the stock lock, so they are checked against the bitmap when it is read.
+ */
+public class SellableProducts implements StockListener {
+
+    private final ProductStock productStock;
+    private final ChangeMaker changeMaker;
+    private final PricingEngine pricing;
+    private final ProductReservations reservations;
+    private final BitSet sellable;
+    private final BitSet waitingForChange;
+    private final BitSet changedProducts;
+    private final BitSet unreserved;
+    private long sellableForPence = -1;
+    private PriceTable sellableForPrices;
+    private boolean coinsAdded;
+    private boolean coinsRemoved;
+
+    /**
+     * Constructor for the sellable products. Registers with the coin and product stocks so the bitmap is
+     * updated whenever either stock changes.
+     *
+     * @param productStock The machine's product stock.
+     * @param coinStock The machine's coin stock.
+     * @param changeMaker The change maker for the machine's coin stock.
+     */
+    public SellableProducts(ProductStock productStock, CoinStock coinStock,
+                            ChangeMaker changeMaker) {
+        this(productStock, coinStock, changeMaker, new PricingEngine(productStock.getCatalog()),
+                new ProductReservations(productStock));
+    }
+
+    /**
+     * Constructor for the sellable products, at the prices of a machine's pricing engine and leaving out the units
+     * reserved for its customers.
+     *
+     * @param productStock The machine's product stock.
+     * @param coinStock The machine's coin stock.
+     * @param changeMaker The change maker for the machine's coin stock.
+     * @param pricing The machine's pricing engine.
+     * @param reservations The reservations holding the products selected by the machine's customers.
+     */
+    public SellableProducts(ProductStock productStock, CoinStock coinStock,
+                            ChangeMaker changeMaker, PricingEngine pricing, ProductReservations reservations) {
+        this.productStock = productStock;
+        this.changeMaker = changeMaker;
+        this.pricing = pricing;
+        this.reservations = reservations;
+        this.sellable = new BitSet(productStock.size());
+        this.waitingForChange = new BitSet(productStock.size());
+        this.changedProducts = new BitSet(productStock.size());
+        this.unreserved = new BitSet(productStock.size());
+        productStock.addListener(this);
+        coinStock.addListener(this);
+    }
+
+    /**
+     * This method is called when the coin or product stock changes, and notes which products the change affects.
+     *
+     * @param item The coin or product whose stock level changed.
+     * @param oldLevel The previous stock level.
+     * @param newLevel The new stock level.
+     */
+    @Override
+    public void stockChanged(Item item, int oldLevel, int newLevel) {
+        if (item instanceof Coin) {
+            if (newLevel > oldLevel) {
+                coinsAdded = true;
+            } else {
+                coinsRemoved = true;
+            }
+        } else {
+            changedProducts.set(item.getId());
+        }
+    }
+
+    /**
+     * This method is used to return the bitmap of products that can be sold for the inserted amount, indexed
+     * by the product's id. The bitmap is updated for the products affected by stock changes since it was last
+     * asked for, or worked out again if the amount or price table has changed. The returned bitmap is reused,
+     * so callers must not change it.
+     *
+     * @param insertedPence The amount of money inserted, in pence.
+     * @return The bitmap of products that can currently be sold for the amount.
+     */
+    BitSet sellableFor(long insertedPence) {
+        PriceTable prices = pricing.getPriceTable();
+        if (insertedPence != sellableForPence || prices != sellableForPrices) {
+            for (int i = 0; i < productStock.size(); i++) {
+                update(i, insertedPence, prices);
+            }
+            sellableForPence = insertedPence;
+            sellableForPrices = prices;
+        } else {
+            if (coinsRemoved) {
+                for (int i = sellable.nextSetBit(0); i >= 0; i = sellable.nextSetBit(i + 1)) {
+                    update(i, insertedPence, prices);
+                }
+            }
+            if (coinsAdded) {
+                for (int i = waitingForChange.nextSetBit(0); i >= 0; i = waitingForChange.nextSetBit(i + 1)) {
+                    update(i, insertedPence, prices);
+                }
+            }
+            for (int i = changedProducts.nextSetBit(0); i >= 0; i = changedProducts.nextSetBit(i + 1)) {
+                update(i, insertedPence, prices);
+            }
+        }
+        changedProducts.clear();
+        coinsAdded = false;
+        coinsRemoved = false;
+        unreserved.clear();
+        for (int i = sellable.nextSetBit(0); i >= 0; i = sellable.nextSetBit(i + 1)) {
+            if (reservations.getUnreserved(productStock.getKey(i)) > 0) {
+                unreserved.set(i);
+            }
+        }
+        return unreserved;
+    }
+
+    /**
+     * This method is used to work out again whether one product can be sold for the amount, and whether it is only
+     * held back by the machine being unable to give the change.
+     *
+     * @param index The product's id.
+     * @param insertedPence The amount of money inserted, in pence.
+     * @param prices The price table to sell the product at.
+     */
+    private void update(int index, long insertedPence, PriceTable prices) {
+        Product product = productStock.getKey(index);
+        int level = productStock.getInt(product);
+        long change = insertedPence - prices.getPricePence(product, level);
+        boolean affordable = level > 0 && change >= 0;
+        boolean changeGiven = affordable && changeMaker.canMakeChange(change);
+        sellable.set(index, changeGiven);
+        waitingForChange.set(index, affordable && !changeGiven);
+    }
+
+    /**
+     * This method is used to check whether the product can be sold for the inserted amount at its current price, without
+     * running out of change.
+     *
+     * @param product The product to check.
+     * @param insertedPence The amount of money inserted, in pence.
+     * @return True if an unreserved unit is in stock, the amount covers its price, and the change can be given.
+     */
+    boolean canSell(Product product, long insertedPence) {
+        return canSell(product, insertedPence,
+                pricing.getPriceTable().getPricePence(product, productStock.getInt(product)), false);
+    }
+
+    /**
+     * This method is used to check whether the product can be sold for the inserted amount at a price the customer was
+     * quoted, without running out of change.
+     *
+     * @param product The product to check.
+     * @param insertedPence The amount of money inserted, in pence.
+     * @param pricePence The price of the product, in pence.
+     * @param reserved Whether the customer already holds a reserved unit of the product.
+     * @return True if a unit is in stock for the customer, the amount covers the price, and the change can be given.
+     */
+    boolean canSell(Product product, long insertedPence, long pricePence, boolean reserved) {
+        long change = insertedPence - pricePence;
+        boolean inStock = reserved ? productStock.getInt(product) > 0 : reservations.getUnreserved(product) > 0;
+        return change >= 0 && inStock && changeMaker.canMakeChange(change);
+    }
+}
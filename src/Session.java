@@ -0,0 +1,1059 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This is the Context class for the state design pattern, for one customer of the vending machine.
+ * Class for a customer session containing all the different State objects, the customer's selection,
+ * inserted coins and bucket, and its own current state. The product stock and coin stock are shared with
+ * every other session of the machine.
+ *
+ * The machine's own front panel is its default session. Further sessions are opened with
+ * {@link VendingMachine#openSession()}, so remote orders can be served at the same time. In a concurrent machine
+ * each session's operations are serialised by the session's own lock, and the shared stock is only locked while
+ * coins are added to it and while a purchase or refund takes its product and change from it.
+ */
+public class Session {
+
+    private final VendingMachine vendingMachine;
+    private final int id;
+    private final ReentrantLock operationLock;
+    private final CoinSlot coinSlot;
+    private final Keypad keypad;
+    private final State itemPurchasedState;
+    private final State itemSelectedState;
+    private final State notSelectedState;
+    private final State coinInsertedState;
+    private final State productEmptyState;
+    private final AdminState adminModeState;
+    private final AtomicReference<State> currentState = new AtomicReference<>();
+    private Product selectedItem;
+    private String selectedItemCode;
+    private Money selectedItemPrice;
+    private ProductReservations.Reservation reservation;
+
+    private final CoinStock insertedCoinStock = new CoinStock();
+    private final CoinStock refundCoinStock = new CoinStock();
+    private final ProductStock productBucket;
+    private final CoinStock coinBucket = new CoinStock();
+    private List<Product> collectedProducts = new ArrayList<>();
+    private CoinCollection collectedCoins = CoinCollection.EMPTY;
+    private RuntimeException lastReportedError;
+    private int operationDepth;
+
+    /**
+     * Constructor for a session of the vending machine. The session starts in the machine's base state.
+     *
+     * @param vendingMachine The vending machine whose stock the session shares.
+     * @param id The id of the session in the machine's transaction log.
+     * @param operationLock The lock held for each of the session's operations, or null if the session is only used by one thread.
+     */
+    Session(VendingMachine vendingMachine, int id, ReentrantLock operationLock) {
+        this.vendingMachine = vendingMachine;
+        this.id = id;
+        this.operationLock = operationLock;
+        this.productBucket = new ProductStock(vendingMachine.getCatalog());
+        this.coinSlot = new CoinSlot(this);
+        this.keypad = new Keypad(this);
+
+        itemPurchasedState = new ItemPurchasedState(this);
+        coinInsertedState = new CoinInsertedState(this);
+        itemSelectedState = new ItemSelectedState(this);
+        notSelectedState = new NotSelectedState(this);
+        productEmptyState = new ProductEmptyState(this);
+        adminModeState = new AdminModeState(this);
+
+        if(vendingMachine.isMachineEmptyCheck()){
+            setCurrentState(productEmptyState);
+        } else {
+            setCurrentState(notSelectedState);
+        }
+    }
+
+    /**
+     * @return The id of the session in the machine's transaction log. The machine's front panel is session 0.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return The vending machine the session belongs to.
+     */
+    public VendingMachine getVendingMachine() {
+        return vendingMachine;
+    }
+
+    /**
+     * Takes a state parameter and sets the current state to this state.
+     * Used to progress the session between states.
+     *
+     * @param state The state to set the current state to.
+     */
+    void setCurrentState(State state) {
+        this.currentState.set(state);
+        TransactionLog transactionLog = vendingMachine.getTransactionLog();
+        if (transactionLog != null) {
+            transactionLog.logState(id, getStateType(state));
+        }
+    }
+
+    /**
+     * @param state One of the session's states.
+     * @return The type of the state, as written to the transaction log.
+     */
+    private MachineStateType getStateType(State state) {
+        if (state == itemSelectedState) {
+            return MachineStateType.ITEM_SELECTED;
+        } else if (state == coinInsertedState) {
+            return MachineStateType.COIN_INSERTED;
+        } else if (state == itemPurchasedState) {
+            return MachineStateType.ITEM_PURCHASED;
+        } else if (state == productEmptyState) {
+            return MachineStateType.PRODUCT_EMPTY;
+        } else if (state == adminModeState) {
+            return MachineStateType.ADMIN_MODE;
+        }
+        return MachineStateType.NOT_SELECTED;
+    }
+
+    /**
+     * @return The type of the session's current state.
+     */
+    public MachineStateType getStateType() {
+        return getStateType(currentState.get());
+    }
+
+    /**
+     * @return Returns the current state the session is in. Can be read from any thread without the session's lock.
+     */
+    State getCurrentState() {
+        return currentState.get();
+    }
+
+    /**
+     * @return Returns the item purchased state.
+     */
+    State getItemPurchasedState() { return itemPurchasedState; }
+
+    /**
+     * @return Returns the coin inserted state.
+     */
+    State getCoinInsertedState() { return coinInsertedState; }
+
+    /**
+     * @return Returns the item selected state.
+     */
+    State getItemSelectedState() { return itemSelectedState; }
+
+    /**
+     * Sets the currently selected item to Null.
+     * Sets the currently selected item code to Null.
+     * This is the base state of the session; if the machine is not empty.
+     *
+     * @return Returns the not selected state. This being the base state of the session.
+     */
+    State getNotSelectedState() {
+        setSelectedItem(null);
+        setSelectedItemCode(null);
+        return notSelectedState;
+    }
+
+    /**
+     * This is the base state of the session, if the machine is empty.
+     * Requires Admin to refill machine to progress from this state.
+     *
+     * @return Returns the product empty state.
+     */
+    State getProductEmptyState() {
+        getEventSink().publish(MachineEventType.STOCK_EMPTY);
+        return productEmptyState;
+    }
+
+    /**
+     * This is the state authorised only for users upon entering the correct login parameters.
+     *
+     * @return Returns the admin mode state.
+     */
+    AdminState getAdminModeState() {
+        return adminModeState;
+    }
+
+    /**
+     * This method is used to get the session's coin slot object
+     *
+     * @return The object coin slot.
+     */
+    CoinSlot getCoinSlot() {
+        return this.coinSlot;
+    }
+
+    /**
+     * This method is used to get the session's keypad object
+     *
+     * @return The object keypad.
+     */
+    public Keypad getKeypad() {
+        return this.keypad;
+    }
+
+    /**
+     * @return The event sink of the machine the session belongs to.
+     */
+    MachineEventSink getEventSink() {
+        return vendingMachine.getEventSink();
+    }
+
+    /**
+     * @return The max size of the machine.
+     */
+    int getMAX_SIZE() {
+        return vendingMachine.getMAX_SIZE();
+    }
+
+    /**
+     * @param product A product of the machine's catalog.
+     * @return The most units of the product the machine holds.
+     */
+    int getCapacity(Product product) {
+        return vendingMachine.getCapacity(product);
+    }
+
+    /**
+     * @return The catalog of products the machine sells.
+     */
+    ProductCatalog getCatalog() {
+        return vendingMachine.getCatalog();
+    }
+
+    /**
+     * @return The collection CoinStock. This is the machines overall amount of contained coins, shared by every session.
+     */
+    CoinStock getCoinStock() { return vendingMachine.getCoinStock(); }
+
+    /**
+     * @return The collection InsertedCoinStock. This is the session's overall inserted coins.
+     */
+    CoinStock getInsertedCoinStock() {
+        return insertedCoinStock;
+    }
+
+    /**
+     * @return The collection Refund coin stock. This is the session's overall coins to be refunded to the user.
+     */
+    CoinStock getRefundCoinStock() {
+        return refundCoinStock;
+    }
+
+    /**
+     * @return The collection Product stock. This is the machines overall amount of products in stock, shared by every session.
+     */
+    ProductStock getProductStock() { return vendingMachine.getProductStock(); }
+
+    /**
+     * @return The collection product bucket. This is the session's current stock of products in the bucket.
+     */
+    ProductStock getProductBucket() { return productBucket; }
+
+    /**
+     * @return The collection coin bucket. This is the session's current stock of coins in the bucket.
+     */
+    CoinStock getCoinBucket() { return coinBucket; }
+
+    /**
+     * @return The total summed value of the coins in the collection coin Stock.
+     */
+    Money getCoinStockTotal() { return vendingMachine.getCoinStockTotal(); }
+
+    /**
+     * @return The total summed value of the coins in the collection inserted coin Stock.
+     */
+    Money getInsertedCoinStockTotal() { return insertedCoinStock.getMachineTotalMoneyValue(); }
+
+    /**
+     * @return The total summed value of the coins in the collection refund coin Stock.
+     */
+    Money getRefundCoinStockTotal() { return refundCoinStock.getMachineTotalMoneyValue(); }
+
+    /**
+     * @return The total summed value of the coins in the collection coin bucket.
+     */
+    Money getCoinBucketTotal() { return coinBucket.getMachineTotalMoneyValue(); }
+
+    /**
+     * Method used to copy the contents of the Refund coin stock collection to the coin bucket collection.
+     */
+    void setCoinBucket() {
+        for (int i = 0; i < refundCoinStock.size(); i++) {
+            Coin coin = refundCoinStock.getKey(i);
+            coinBucket.put(coin, refundCoinStock.getInt(coin));
+        }
+    }
+
+    /**
+     * This method sets the currently selected item's code.
+     *
+     * @param code The item code of the currently selected item.
+     */
+    void setSelectedItemCode(String code) {
+        this.selectedItemCode = code;
+    }
+
+    /**
+     * This method sets the currently selected item. When the selection changes, the unit of the previously
+     * selected item held for the customer is released, and a unit of the new item is reserved if one is free.
+     *
+     * @param selectedItem The currently selected item by the user.
+     */
+    void setSelectedItem(Product selectedItem) {
+        if (selectedItem != this.selectedItem) {
+            ProductReservations reservations = vendingMachine.getReservations();
+            reservations.release(reservation);
+            reservation = selectedItem == null ? null : reservations.reserve(selectedItem);
+        }
+        this.selectedItem = selectedItem;
+        this.selectedItemPrice = selectedItem == null ? null : vendingMachine.getPrice(selectedItem);
+    }
+
+    /**
+     * This method is used to claim a unit of the selected item for its purchase, while the shared stock is locked.
+     * Uses the unit reserved for the customer if their reservation has not expired.
+     *
+     * @return True if a unit was claimed, false if every unit in stock is reserved by other customers.
+     */
+    boolean claimSelectedItem() {
+        boolean claimed = vendingMachine.getReservations().claim(reservation, selectedItem);
+        reservation = null;
+        return claimed;
+    }
+
+    /**
+     * This method is used to give back the claimed unit of the selected item when its purchase fails,
+     * and reserve it for the customer again.
+     */
+    void unclaimSelectedItem() {
+        ProductReservations reservations = vendingMachine.getReservations();
+        reservations.unclaim(selectedItem);
+        reservation = reservations.reserve(selectedItem);
+    }
+
+    /**
+     * This method is used to take the claimed unit of the selected item out of the shared product stock, once it is sold.
+     */
+    void sellSelectedItem() {
+        vendingMachine.getReservations().sell(selectedItem);
+        vendingMachine.getMetrics().recordSale(selectedItem, 1);
+        vendingMachine.getSalesVelocity().recordSale(selectedItem, 1);
+    }
+
+    /**
+     * This method returns the currently selected item.
+     *
+     * @return The currently selected item.
+     */
+    Product getSelectedItem() {
+        return selectedItem;
+    }
+
+    /**
+     * This method is used to check if the machine is completely empty of all products.
+     *
+     * @return True if the machine is empty of all products. False if the machine is not empty of products.
+     */
+    boolean isMachineEmptyCheck() {
+        return vendingMachine.isMachineEmptyCheck();
+    }
+
+    /**
+     * This method is used to take the change for the amount from the machine's coin stock, and place it in the
+     * session's refund coin stock.
+     *
+     * @param amount The amount of money to break down into the fewest available coin denominations.
+     * @return refund coin stock containing coins to be returned to the user.
+     * @throws MachineStockException Throws an error if the coins in stock cannot make up the amount.
+     */
+    Stock<Coin,Integer> calculateChangeDenominations(Money amount) {
+        return vendingMachine.calculateChangeDenominations(amount, refundCoinStock);
+    }
+
+    /**
+     * This method is used to check whether the machine can give the amount as change from its current coin stock,
+     * without changing the coin stock.
+     *
+     * @param amount The amount of change.
+     * @return True if the coins in stock can make up the amount exactly.
+     */
+    boolean canMakeChange(Money amount) {
+        return vendingMachine.canMakeChange(amount);
+    }
+
+    /**
+     * This method is used to lock the machine's shared stock, while the session checks and takes its product or
+     * change from it. Each call must be followed by a call to {@link #unlockStock()}.
+     */
+    void lockStock() {
+        vendingMachine.beginTransaction();
+    }
+
+    /**
+     * This method is used to unlock the machine's shared stock.
+     */
+    void unlockStock() {
+        vendingMachine.endTransaction();
+    }
+
+    /**
+     * This method is used to start an operation of the session, taking the session's lock if it has one.
+     * Moves the deadline of the customer's reservation on, as they are still active.
+     *
+     * @return The time the operation started, from {@link System#nanoTime()}.
+     */
+    private long beginOperation() {
+        long start = System.nanoTime();
+        if (operationLock != null) {
+            operationLock.lock();
+        }
+        operationDepth++;
+        vendingMachine.getReservations().touch(reservation);
+        return start;
+    }
+
+    /**
+     * This method is used to finish an operation of the session, releasing the session's lock if it has one.
+     * If the machine has a transaction log, waits for the operation's records to be forced out to the disk once
+     * the outermost operation has released its lock, so other operations can share the force of the log.
+     * The latency of the outermost operation is then recorded in the machine's metrics.
+     *
+     * @param operation The operation.
+     * @param start The time the operation started, from {@link #beginOperation()}.
+     */
+    private void endOperation(MachineMetrics.Operation operation, long start) {
+        boolean outermost = --operationDepth == 0;
+        if (operationLock != null) {
+            operationLock.unlock();
+        }
+        if (outermost) {
+            TransactionLog transactionLog = vendingMachine.getTransactionLog();
+            if (transactionLog != null) {
+                transactionLog.commit();
+            }
+            vendingMachine.getMetrics().recordLatency(operation, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * This method is used to write an operation called by the user to the machine's transaction log, if it has one.
+     * Operations called by other operations are not written.
+     *
+     * @param operation The operation called.
+     * @param item The coin or product the operation is for, or null.
+     * @param count The number of coins the operation is for, or zero.
+     */
+    private void logOperation(TransactionLog.Operation operation, Item item, int count) {
+        TransactionLog transactionLog = vendingMachine.getTransactionLog();
+        if (transactionLog != null && operationDepth == 1) {
+            transactionLog.logOperation(id, operation, item, count);
+        }
+    }
+
+    /**
+     * This method is used to count and publish an error thrown by one of the session's operations, before it is
+     * thrown to the user. Errors passing through more than one operation are only counted and published once, and
+     * errors without a message are not published.
+     *
+     * @param error The error thrown by the operation.
+     * @return The error, to be thrown.
+     */
+    RuntimeException reportError(RuntimeException error) {
+        if (error != lastReportedError) {
+            lastReportedError = error;
+            vendingMachine.getMetrics().recordError(error);
+            if (error.getMessage() != null) {
+                getEventSink().publish(MachineEventType.ERROR, error.getMessage());
+            }
+        }
+        return error;
+    }
+
+    /**
+     * This method, changes implementation based on the session's current state.
+     * In its correct state. It inserts the chosen coin and chosen amount into the machine.
+     *
+     * @param coin Coin to be inserted.
+     * @param coinAmount Amount of the chosen coin to be inserted.
+     * @throws MachineStockException Throws exception if coin amount is not a number greater than 0.
+     */
+    public void insertCoin(Coin coin, Integer coinAmount) throws MachineStockException{
+        long start = beginOperation();
+        try {
+            logOperation(TransactionLog.Operation.INSERT_COIN, coin, coinAmount == null ? 0 : coinAmount);
+            currentState.get().insertCoin(coin, coinAmount);
+            publishBalance();
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            endOperation(MachineMetrics.Operation.INSERT_COIN, start);
+        }
+    }
+
+    /**
+     * This method, changes implementation based on the session's current state.
+     * In its correct state. It inserts a burst of coins from the coin acceptor into the machine in one pass,
+     * and tells the user their new balance once. No objects are created for the individual coins.
+     *
+     * @param coinCounts The number of each coin inserted, by coin id.
+     * @throws MachineStockException Throws exception if there is not one count for each coin, a count is negative, or there are no coins.
+     */
+    public void insertCoins(int[] coinCounts) throws MachineStockException {
+        long start = beginOperation();
+        try {
+            logOperation(TransactionLog.Operation.INSERT_COINS, null, CoinSlot.countCoins(coinCounts));
+            currentState.get().insertCoins(coinCounts);
+            publishBalance();
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            endOperation(MachineMetrics.Operation.INSERT_COINS, start);
+        }
+    }
+
+    /**
+     * This method is used to tell the user their balance after inserting coins, and to warn them if the machine
+     * cannot give the change for their selected item.
+     */
+    private void publishBalance() {
+        long insertedPence = insertedCoinStock.getTotalPence();
+        if(insertedPence > 0){
+            getEventSink().publish(MachineEventType.BALANCE, amountDeposited());
+            if(selectedItem != null && insertedPence >= getSelectedItemPrice().getPence()
+                    && !vendingMachine.canSell(selectedItem, Money.ofPence(insertedPence), getSelectedItemPrice(),
+                    reservation != null)){
+                getEventSink().publish(MachineEventType.CHANGE_WARNING);
+            }
+        }
+    }
+
+    /**
+     * Method used to tell the user the amount of coins currently deposited by them.
+     *
+     * @return The current amount of coins deposited by the user.
+     */
+    public Money amountDeposited() {
+        long start = beginOperation();
+        try {
+            return currentState.get().amountDeposited();
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            endOperation(MachineMetrics.Operation.AMOUNT_DEPOSITED, start);
+        }
+    }
+
+    /**
+     * This method is used to request a refund of the total inserted coins by the user.
+     * If in the item selected state, it cancels the current order and returns the user to the base state.
+     *
+     */
+    public void requestRefund() {
+        long start = beginOperation();
+        try {
+            logOperation(TransactionLog.Operation.REQUEST_REFUND, null, 0);
+            currentState.get().requestRefund();
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            endOperation(MachineMetrics.Operation.REQUEST_REFUND, start);
+        }
+    }
+
+    /**
+     * This method is used by the user to select the item they wish to purchase using the code of the item.
+     * Throws an error if the code entered does not match any codes of the products in the machine.
+     *
+     * @param code product code of item to be selected by the user.
+     * @throws MachineSelectionException Throws error if the code entered by the user is an incorrect code.
+     */
+    public void selectItem(String code) throws MachineSelectionException{
+        long start = beginOperation();
+        try {
+            currentState.get().selectItem(code);
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            endOperation(MachineMetrics.Operation.SELECT_ITEM, start);
+        }
+    }
+
+    /**
+     * This method is used to alert the user of what item they have currently selected.
+     * Provides information on the price of the currently selected item.
+     *
+     * @return The user's currently selected item.
+     * @throws MachineSelectionException Throws an error if the user has not currently selected an item.
+     */
+    public Product currentItem() throws MachineSelectionException {
+        long start = beginOperation();
+        try {
+            if(this.selectedItem == null){
+                throw new MachineSelectionException("noItemSelected");
+            }
+            return currentState.get().currentItem();
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            endOperation(MachineMetrics.Operation.CURRENT_ITEM, start);
+        }
+    }
+
+    /**
+     * This method is used to return the currently selected item's price. This is the price from the machine's price table
+     * when the item was selected, so the customer is charged the price they were shown even if the prices change.
+     *
+     * @return The currently selected item's price.
+     * @throws MachineSelectionException Throws an error if the user has not currently selected an item.
+     */
+    Money getSelectedItemPrice() throws MachineSelectionException {
+        if(this.selectedItem == null){
+            throw new MachineSelectionException("noItemSelected");
+        }else {
+            return selectedItemPrice;
+        }
+    }
+
+    /**
+     * This method is used to purchase the currently selected item.
+     * Throws an error if the user has not entered enough money to purchase the item, or if the currently selected item is out of stock.
+     *
+     * @throws MachinePurchaseException Throws an error if the user has not entered enough money to purchase the item, or the item is out of stock.
+     */
+    public void purchaseItem() throws MachinePurchaseException {
+        long start = beginOperation();
+        try {
+            logOperation(TransactionLog.Operation.PURCHASE_ITEM, selectedItem, 0);
+            currentState.get().purchaseItem();
+            if(getCurrentState() == getItemPurchasedState()){
+                requestRefund();
+            }
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            endOperation(MachineMetrics.Operation.PURCHASE_ITEM, start);
+        }
+    }
+
+    /**
+     * This method is used to buy a basket of products in one transaction, paid for with one batch of coins.
+     * The basket is checked in one pass. Then, while the machine's shared stock is locked, it is priced from one price table with any
+     * bundle discounts, at the stock levels it is sold at, and every product and the change are taken from the stock together, so
+     * either the whole basket is sold at that price or nothing changes. The products are placed in the product bucket, and the change in the coin bucket.
+     * Can only be used when the customer has no other order in progress.
+     *
+     * @param basket The number of each product to buy.
+     * @param payment The number of each coin paid.
+     * @throws MachinePurchaseException Throws an error if the basket is empty, holds a product of another machine or
+     * a quantity below 1, or holds more units than can be counted, another order is in progress, the payment does not
+     * cover the basket, a product does not have enough unreserved units in stock, or the machine cannot give the change.
+     * @throws MachineStockException Throws exception if a coin is null or a coin count is not a number greater than 0.
+     */
+    public void purchaseBasket(Map<Product, Integer> basket, Map<Coin, Integer> payment) throws MachinePurchaseException {
+        long start = beginOperation();
+        try {
+            State state = currentState.get();
+            if (state == productEmptyState) {
+                throw new MachinePurchaseException("stock");
+            } else if (state != notSelectedState && state != itemSelectedState) {
+                throw new MachinePurchaseException("order");
+            }
+            ProductCatalog catalog = getCatalog();
+            long units = 0;
+            for (Map.Entry<Product, Integer> entry : basket.entrySet()) {
+                Product product = entry.getKey();
+                Integer quantity = entry.getValue();
+                if (product == null || product.getId() >= catalog.size() || catalog.get(product.getId()) != product
+                        || quantity == null || quantity < 1) {
+                    throw new MachinePurchaseException("basket");
+                }
+                units = units + quantity;
+            }
+            if (units == 0 || units > Integer.MAX_VALUE) {
+                throw new MachinePurchaseException("basket");
+            }
+            long paidPence = 0;
+            for (Map.Entry<Coin, Integer> entry : payment.entrySet()) {
+                Integer count = entry.getValue();
+                if (entry.getKey() == null || count == null || count < 1) {
+                    throw new MachineStockException("Coin amount");
+                }
+                paidPence = paidPence + (long) entry.getKey().getPence() * count;
+            }
+            logOperation(TransactionLog.Operation.PURCHASE_BASKET, null, (int) units);
+
+            PriceTable prices = vendingMachine.getPricingEngine().getPriceTable();
+            ProductReservations reservations = vendingMachine.getReservations();
+            CoinStock coinStock = getCoinStock();
+            Money change;
+            lockStock();
+            try {
+                long pricePence = prices.getBasketPence(basket, vendingMachine.getProductStock());
+                if (pricePence > paidPence) {
+                    getEventSink().publish(MachineEventType.INSUFFICIENT_MONEY, Money.ofPence(paidPence));
+                    throw new MachinePurchaseException("money");
+                }
+                change = Money.ofPence(paidPence - pricePence);
+                setSelectedItem(null);
+                setSelectedItemCode(null);
+                for (Map.Entry<Product, Integer> entry : basket.entrySet()) {
+                    if (!reservations.claim(entry.getKey(), entry.getValue())) {
+                        for (Map.Entry<Product, Integer> claimed : basket.entrySet()) {
+                            if (claimed == entry) {
+                                break;
+                            }
+                            reservations.unclaim(claimed.getKey(), claimed.getValue());
+                        }
+                        throw new MachinePurchaseException("stock");
+                    }
+                }
+                for (Map.Entry<Coin, Integer> entry : payment.entrySet()) {
+                    coinStock.add(entry.getKey(), entry.getValue());
+                }
+                if (!canMakeChange(change)) {
+                    for (Map.Entry<Coin, Integer> entry : payment.entrySet()) {
+                        coinStock.subtract(entry.getKey(), entry.getValue());
+                    }
+                    for (Map.Entry<Product, Integer> entry : basket.entrySet()) {
+                        reservations.unclaim(entry.getKey(), entry.getValue());
+                    }
+                    throw new MachinePurchaseException("change");
+                }
+                calculateChangeDenominations(change);
+                for (Map.Entry<Product, Integer> entry : basket.entrySet()) {
+                    reservations.sell(entry.getKey(), entry.getValue());
+                }
+            } finally {
+                unlockStock();
+            }
+
+            MachineMetrics metrics = vendingMachine.getMetrics();
+            for (Map.Entry<Coin, Integer> entry : payment.entrySet()) {
+                metrics.recordCoinsAccepted(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<Product, Integer> entry : basket.entrySet()) {
+                Product product = entry.getKey();
+                productBucket.add(product, entry.getValue());
+                metrics.recordSale(product, entry.getValue());
+                vendingMachine.getSalesVelocity().recordSale(product, entry.getValue());
+                getEventSink().publish(MachineEventType.PRODUCT_VENDED, product);
+                getEventSink().publish(MachineEventType.PRODUCT_IN_BUCKET, product);
+            }
+            setCurrentState(itemPurchasedState);
+            if (!change.isZero()) {
+                requestRefund();
+            }
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            endOperation(MachineMetrics.Operation.PURCHASE_BASKET, start);
+        }
+    }
+
+    /**
+     * This method is used to collect the products purchased by the user from the bucket.
+     *
+     * @return A list containing all the products collected from the bucket.
+     */
+    public List<Product> getBucketProducts() {
+        long start = beginOperation();
+        try {
+            List<Product> products = currentState.get().getBucketProducts();
+            if(products != null) {
+                this.collectedProducts = products;
+            }
+            return this.collectedProducts;
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            endOperation(MachineMetrics.Operation.GET_BUCKET_PRODUCTS, start);
+        }
+    }
+
+    /**
+     * This method is used to check the machine is working as intended.
+     *
+     * @return A list containing all the products that have been collected from the bucket.
+     */
+    List<Product> getCollectedProducts() {
+        try{
+            return this.collectedProducts;
+        } catch (Exception e){
+            getEventSink().publish(MachineEventType.MESSAGE, "Collected Products is null");
+        }
+        return null;
+    }
+
+    /**
+     * This method is used to collect the refunded coins from the bucket.
+     *
+     * @return The number of each coin collected from the bucket, which can also be read as a list of the coins.
+     */
+    public CoinCollection getBucketCoins() {
+        long start = beginOperation();
+        try {
+            CoinCollection coins = currentState.get().getBucketCoins();
+            if(coins != null) {
+                this.collectedCoins = coins;
+            }
+            return this.collectedCoins;
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            endOperation(MachineMetrics.Operation.GET_BUCKET_COINS, start);
+        }
+    }
+
+    /**
+     * This method is used to check the machine is working as intended.
+     *
+     * @return The number of each coin that has been collected from the bucket.
+     */
+    CoinCollection getCollectedCoins() {
+        try{
+            return this.collectedCoins;
+        } catch (Exception e){
+            getEventSink().publish(MachineEventType.MESSAGE, "Collected Coins is null");
+        }
+        return null;
+    }
+
+    /**
+     * This method is used by the admin to log in to the admin mode of the machine to access admin methods.
+     * Requires the correct username and password to be entered.
+     *
+     * @param username The username entered by the user.
+     * @param password The password entered by the user.
+     * @throws AdminPrivilegeException Throws an error if the username or password are not correct.
+     */
+    public void login(String username, String password) throws AdminPrivilegeException{
+        long start = beginOperation();
+        try {
+            currentState.get().login(username,password);
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            endOperation(MachineMetrics.Operation.LOGIN, start);
+        }
+    }
+
+    /**
+     * This method is used by the admin to logout of the admin mode.
+     *
+     * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
+     */
+    public void logout() throws AdminPrivilegeException {
+        long start = beginOperation();
+        try {
+            if(getCurrentState() == getAdminModeState()) {
+                adminModeState.logout();
+            } else {
+                throw new AdminPrivilegeException("Must be logged in to Admin mode to Logout of Admin Mode!");
+            }
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            endOperation(MachineMetrics.Operation.LOGOUT, start);
+        }
+    }
+
+    /**
+     * This method is used to provide admins with a breakdown of the current coin stock levels in the machine
+     * and a total value of all these coins.
+     *
+     * @return A string output of the current coin stock levels of the machine and total value of the coins.
+     * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
+     */
+    public String printAdminCoinInfo() throws AdminPrivilegeException {
+        long start = beginOperation();
+        lockStock();
+        try {
+            if(getCurrentState() == getAdminModeState()){
+                return adminModeState.printAdminCoinInfo();
+            } else {
+                throw new AdminPrivilegeException("Must be logged in to Admin mode to print Vending Machine info!");
+            }
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            unlockStock();
+            endOperation(MachineMetrics.Operation.PRINT_ADMIN_COIN_INFO, start);
+        }
+    }
+
+    /**
+     * This method is used to provide the admins with a breakdown of the current product stock levels in the machine.
+     *
+     * @return A string output of the current product stock levels of the machine.
+     * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
+     */
+    public String printAdminProductInfo() throws AdminPrivilegeException {
+        long start = beginOperation();
+        lockStock();
+        try {
+            if(getCurrentState() == getAdminModeState()){
+                return adminModeState.printAdminProductInfo();
+            } else {
+                throw new AdminPrivilegeException("Must be logged in to Admin mode to print Vending Machine info!");
+            }
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            unlockStock();
+            endOperation(MachineMetrics.Operation.PRINT_ADMIN_PRODUCT_INFO, start);
+        }
+    }
+
+    /**
+     * This method is used to provide the admins with a breakdown of the current product and coin stock levels in the machine.
+     *
+     * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
+     */
+    public void printAdminInfo() throws AdminPrivilegeException {
+        long start = beginOperation();
+        lockStock();
+        try {
+            if(getCurrentState() == getAdminModeState()){
+                adminModeState.printAdminInfo();
+            } else {
+                throw new AdminPrivilegeException("Must be logged in to Admin mode to print Vending Machine info!");
+            }
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            unlockStock();
+            endOperation(MachineMetrics.Operation.PRINT_ADMIN_INFO, start);
+        }
+    }
+
+    /**
+     * This method is used by the admin to withdraw all coins from the machine.
+     * Throws an error if the user is not in admin mode.
+     *
+     * @return The number of each coin withdrawn from the machine, which can also be read as a list of the coins.
+     * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
+     */
+    public CoinCollection withdrawCoins() throws AdminPrivilegeException{
+        long start = beginOperation();
+        lockStock();
+        try {
+            logOperation(TransactionLog.Operation.WITHDRAW_COINS, null, 0);
+            if(getCurrentState() == getAdminModeState()) {
+                return adminModeState.withdrawCoins();
+            } else {
+                throw new AdminPrivilegeException("Must be logged in to Admin mode to withdraw coins from the machine!");
+            }
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            unlockStock();
+            endOperation(MachineMetrics.Operation.WITHDRAW_COINS, start);
+        }
+    }
+
+    /**
+     * This method is used by admins to deposit coins into the machine.
+     * Throws an error if the user is not in admin mode.
+     *
+     * @param amount The amount of coins to input for each coin type.
+     * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
+     */
+    public void depositCoins(Integer amount) throws AdminPrivilegeException{
+        long start = beginOperation();
+        lockStock();
+        try {
+            logOperation(TransactionLog.Operation.DEPOSIT_COINS, null, amount == null ? 0 : amount);
+            if(getCurrentState() == getAdminModeState()) {
+                adminModeState.depositCoins(amount);
+            } else {
+                throw new AdminPrivilegeException("Must be logged in to Admin mode to deposit coins into the machine!");
+            }
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            unlockStock();
+            endOperation(MachineMetrics.Operation.DEPOSIT_COINS, start);
+        }
+    }
+
+    /**
+     * This method is used by an admin to refill the entered product to the machine's maximum allowed stock level.
+     * Throws an error if the user is not in admin mode.
+     *
+     * @param product The product to refill the current machine's max stock level.
+     * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
+     */
+    public void adminRefillProduct(Product product) throws AdminPrivilegeException {
+        long start = beginOperation();
+        lockStock();
+        try {
+            if(getCurrentState() == getAdminModeState()) {
+                adminModeState.adminRefillProduct(product);
+            } else {
+                throw new AdminPrivilegeException("Must be logged in to Admin mode to refill the Vending Machine!");
+            }
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            unlockStock();
+            endOperation(MachineMetrics.Operation.ADMIN_REFILL_PRODUCT, start);
+        }
+    }
+
+    /**
+     * This method is used by the admin to completely refill the machine to its maximum allowed stock level for
+     * all products.
+     *
+     * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
+     */
+    public void adminRefillAllProduct() throws AdminPrivilegeException{
+        long start = beginOperation();
+        lockStock();
+        try {
+            if(getCurrentState() == getAdminModeState()) {
+                adminModeState.adminRefillAllProduct();
+            } else {
+                throw new AdminPrivilegeException("Must be logged in to Admin mode to refill the Vending Machine!");
+            }
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            unlockStock();
+            endOperation(MachineMetrics.Operation.ADMIN_REFILL_ALL_PRODUCT, start);
+        }
+    }
+
+    /**
+     * This method is used to close a session opened with {@link VendingMachine#openSession()} once its customer has gone,
+     * so the machine's transaction log stops keeping its state. The session must not be used after it is closed.
+     *
+     * @throws MachinePurchaseException Throws an error if the session is the machine's front panel, has an order in
+     * progress, or still has products or coins in its buckets.
+     */
+    public void close() throws MachinePurchaseException {
+        long start = beginOperation();
+        try {
+            State state = currentState.get();
+            if (this == vendingMachine.getSession() || (state != notSelectedState && state != productEmptyState)
+                    || !productBucket.isEmpty() || coinBucket.getCoinCount() > 0) {
+                throw new MachinePurchaseException("close");
+            }
+            TransactionLog transactionLog = vendingMachine.getTransactionLog();
+            if (transactionLog != null) {
+                transactionLog.logSessionClosed(id);
+            }
+        } catch (RuntimeException e) {
+            throw reportError(e);
+        } finally {
+            endOperation(MachineMetrics.Operation.CLOSE_SESSION, start);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Immutable class for the layout of a vending machine's slots, such as its spirals, drop lanes and lockers. Each slot
+ * holds one product, up to its own capacity, and a product can be held in more than one slot. The slots of each product
+ * and their total capacity are worked out once, so looking them up takes constant time.
+ *
+ * A layout is loaded from a CSV file with one slot per line, numbered from zero in the order they are read:
+ * <pre>
+ * code,capacity
+ * 0001,12
+ * 0001,8
+ * </pre>
+ * Blank lines, lines starting with # and a header line starting with "code" are skipped.
+ */
+public final class SlotLayout {
+
+    /**
+     * The ways a unit of a product held in more than one slot is picked to be vended.
+     */
+    public enum Policy {
+        /** Vend from each of the product's slots in turn, skipping empty slots. */
+        ROUND_ROBIN,
+        /** Vend from the product's fullest slot, taking turns between slots that are equally full. */
+        FULLEST_FIRST
+    }
+
+    private static final int[] NO_SLOTS = new int[0];
+
+    private final ProductCatalog catalog;
+    private final Product[] slotProducts;
+    private final int[] capacities;
+    private final Policy policy;
+    private final int[][] slotsOf;
+    private final int[] productCapacities;
+    private final int[] maxSlotCapacities;
+
+    /**
+     * Constructor for the slot layout.
+     *
+     * @param catalog The catalog of the products held in the slots.
+     * @param slotProducts The product held in each slot, by slot number.
+     * @param capacities The most units each slot holds, by slot number.
+     * @param policy The way a unit is picked from a product's slots.
+     * @throws IllegalArgumentException Throws error if a product is not in the catalog, or a capacity is less than one.
+     */
+    public SlotLayout(ProductCatalog catalog, Product[] slotProducts, int[] capacities, Policy policy) {
+        if (slotProducts.length != capacities.length) {
+            throw new IllegalArgumentException("Every slot must have a product and a capacity");
+        }
+        this.catalog = catalog;
+        this.slotProducts = slotProducts.clone();
+        this.capacities = capacities.clone();
+        this.policy = policy;
+        this.productCapacities = new int[catalog.size()];
+        this.maxSlotCapacities = new int[catalog.size()];
+        int[] slotCounts = new int[catalog.size()];
+        for (int slot = 0; slot < this.slotProducts.length; slot++) {
+            Product product = this.slotProducts[slot];
+            if (product == null || product.getId() >= catalog.size() || catalog.get(product.getId()) != product) {
+                throw new IllegalArgumentException("Slot " + slot + " holds a product that is not in the catalog");
+            }
+            if (this.capacities[slot] < 1) {
+                throw new IllegalArgumentException("Slot " + slot + " must have a capacity of 1 or more");
+            }
+            int id = product.getId();
+            slotCounts[id]++;
+            productCapacities[id] = (int) Math.min(Integer.MAX_VALUE, (long) productCapacities[id] + this.capacities[slot]);
+            maxSlotCapacities[id] = Math.max(maxSlotCapacities[id], this.capacities[slot]);
+        }
+        this.slotsOf = new int[catalog.size()][];
+        for (int id = 0; id < slotsOf.length; id++) {
+            slotsOf[id] = slotCounts[id] == 0 ? NO_SLOTS : new int[slotCounts[id]];
+            slotCounts[id] = 0;
+        }
+        for (int slot = 0; slot < this.slotProducts.length; slot++) {
+            int id = this.slotProducts[slot].getId();
+            slotsOf[id][slotCounts[id]++] = slot;
+        }
+    }
+
+    /**
+     * This method is used to make the layout of a machine with a single slot for each product of its catalog, holding
+     * the product's own capacity, or the machine's max size if it has none.
+     *
+     * @param catalog The catalog of the machine's products.
+     * @param maxSize The machine's max size.
+     * @return The layout with one slot per product, in id order.
+     */
+    public static SlotLayout perProduct(ProductCatalog catalog, int maxSize) {
+        Product[] products = catalog.getProducts();
+        int[] capacities = new int[products.length];
+        for (int i = 0; i < products.length; i++) {
+            capacities[i] = products[i].getCapacity() > 0 ? products[i].getCapacity() : maxSize;
+        }
+        return new SlotLayout(catalog, products, capacities, Policy.ROUND_ROBIN);
+    }
+
+    /**
+     * This method is used to load a slot layout from a CSV file.
+     *
+     * @param catalog The catalog of the products held in the slots.
+     * @param file The layout file.
+     * @param policy The way a unit is picked from a product's slots.
+     * @return The loaded layout.
+     * @throws IOException Throws error if the file cannot be read.
+     * @throws IllegalArgumentException Throws error if a line of the file is not a valid slot.
+     */
+    public static SlotLayout load(ProductCatalog catalog, Path file, Policy policy) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return read(catalog, reader, policy);
+        }
+    }
+
+    /**
+     * This method is used to read a slot layout in CSV format, numbering the slots in the order they are read.
+     *
+     * @param catalog The catalog of the products held in the slots.
+     * @param reader The reader of the layout.
+     * @param policy The way a unit is picked from a product's slots.
+     * @return The read layout.
+     * @throws IOException Throws error if the reader fails.
+     * @throws IllegalArgumentException Throws error if a line is not a valid slot.
+     */
+    public static SlotLayout read(ProductCatalog catalog, Reader reader, Policy policy) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        Product[] products = new Product[16];
+        int[] capacities = new int[16];
+        int count = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#") || (count == 0 && line.regionMatches(true, 0, "code", 0, 4))) {
+                continue;
+            }
+            String[] fields = line.split(",", -1);
+            if (fields.length != 2) {
+                throw new IllegalArgumentException("Layout line " + lineNumber + " must have a product code and a capacity");
+            }
+            Product product = catalog.getProduct(fields[0].trim());
+            if (product == null) {
+                throw new IllegalArgumentException("Layout line " + lineNumber + " has a product code that is not in the catalog");
+            }
+            int capacity;
+            try {
+                capacity = Integer.parseInt(fields[1].trim());
+            } catch (NumberFormatException e) {
+                capacity = 0;
+            }
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Layout line " + lineNumber + " must have a capacity that is a whole number of 1 or more");
+            }
+            if (count == products.length) {
+                products = Arrays.copyOf(products, count * 2);
+                capacities = Arrays.copyOf(capacities, count * 2);
+            }
+            products[count] = product;
+            capacities[count] = capacity;
+            count++;
+        }
+        return new SlotLayout(catalog, Arrays.copyOf(products, count), Arrays.copyOf(capacities, count), policy);
+    }
+
+    /**
+     * @return The catalog of the products held in the slots.
+     */
+    public ProductCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * @return The way a unit is picked from a product's slots.
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return The number of slots in the layout.
+     */
+    public int size() {
+        return slotProducts.length;
+    }
+
+    /**
+     * @param slot The slot number.
+     * @return The product held in the slot.
+     */
+    public Product getProduct(int slot) {
+        return slotProducts[slot];
+    }
+
+    /**
+     * @param slot The slot number.
+     * @return The most units the slot holds.
+     */
+    public int getCapacity(int slot) {
+        return capacities[slot];
+    }
+
+    /**
+     * @param product A product of the layout's catalog.
+     * @return The most units of the product held across all of its slots, or zero if it has no slots.
+     */
+    public int getCapacity(Product product) {
+        return productCapacities[product.getId()];
+    }
+
+    /**
+     * @param product A product of the layout's catalog.
+     * @return The numbers of the slots holding the product, in slot order.
+     */
+    public int[] getSlots(Product product) {
+        return slotsOf[product.getId()].clone();
+    }
+
+    /**
+     * @param productId The id of a product of the layout's catalog.
+     * @return The numbers of the slots holding the product, in slot order. The array is shared and must not be changed.
+     */
+    int[] slotsOf(int productId) {
+        return slotsOf[productId];
+    }
+
+    /**
+     * @param productId The id of a product of the layout's catalog.
+     * @return The capacity of the product's largest slot, or zero if it has no slots.
+     */
+    int maxSlotCapacity(int productId) {
+        return maxSlotCapacities[productId];
+    }
+}
@@ -10,19 +10,22 @@ public interface State {
     //Throws exception if coinAmount is negative
     void insertCoin(Coin coin, Integer coinAmount) throws MachineStockException;
 
-    // Returns current balance of inserted coins
-    // Before an item has been selected, the default method is called.
-    // This returns zero as no money can be inserted before an item has been selected.
-    default double amountDeposited() {
-        System.out.println("You have not inserted any money!");
-        return 0;
+    //User inserts a burst of coins, given as the number of each coin by coin id
+    //The burst has already been checked by the session
+    default void insertCoins(int[] coinCounts) throws MachineStockException {
+        for (int id = 0; id < coinCounts.length; id++) {
+            if (coinCounts[id] > 0) {
+                insertCoin(Coin.get(id), coinCounts[id]);
+            }
+        }
     }
 
+    // Returns current balance of inserted coins
+    // Before any money has been inserted, this returns zero.
+    Money amountDeposited();
+
     // User requests a refund, coins to be placed in return bucket
-    // Before any money has been inserted into the machine, the default method is called.
-    default void requestRefund(){
-        System.out.println("You have not entered any money to be refunded!");
-    }
+    void requestRefund();
 
     // User selects item
     void selectItem(String code) throws MachineSelectionException;
@@ -38,7 +41,7 @@ public interface State {
     List<Product> getBucketProducts();
 
     // User collects change from the bucket
-    List<Coin> getBucketCoins();
+    CoinCollection getBucketCoins();
 
     //User logs in to Admin mode if Username and Password are correct,
     //Throws exception if incorrect
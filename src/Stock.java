@@ -7,7 +7,7 @@ import java.util.Map;
  * @param <K> Key in the map.
  * @param <V> The value mapped to the key in the map.
  */
-public interface Stock<K extends Enum<K>,V> {
+public interface Stock<K extends Item,V> {
 
     //Sets the all the key's values to provided integer.
     void setStock(Integer stockLevel);
@@ -24,8 +24,20 @@ public interface Stock<K extends Enum<K>,V> {
     //Returns the value of the specified key from the map.
     Integer get(Item item);
 
-    //Returns the set view of the enum map.
-    Iterable<? extends Map.Entry<Enum, Integer>> entrySet();
+    //Returns the value of the specified key as a primitive int, without boxing.
+    int getInt(Item item);
+
+    //Increases the specified key's value by the provided amount
+    void add(Item item, int amount);
+
+    //Decreases the specified key's value by the provided amount
+    void subtract(Item item, int amount);
+
+    //Returns the key at the specified position, in id order.
+    K getKey(int index);
+
+    //Returns the set view of the keys and values.
+    Iterable<? extends Map.Entry<K, V>> entrySet();
 
     //Returns the number of key-value mappings in this map.
     int size();
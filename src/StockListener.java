@@ -0,0 +1,9 @@
+/**
+ * Interface for classes that need to be told when the stock level of an inventory changes.
+ */
+public interface StockListener {
+
+    //Called after the stock level of the item has changed from the old level to the new level.
+    void stockChanged(Item item, int oldLevel, int newLevel);
+
+}
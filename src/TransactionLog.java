@@ -0,0 +1,680 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Class for the machine's append only transaction log. The log is the machine's event stream: a durable audit trail of
+ * the operations customers and admins perform, every change they make to the machine's coin and product stock, and
+ * every state each session moves into.
+ *
+ * The log is a file of fixed size records. Every record has a sequence number and a checksum, so the end of the log
+ * can be found after a crash. An operation record with the id of the session performing it is written at the start
+ * of each logged operation, a stock record with the new level for every coin or product whose stock level changes,
+ * a state record each time a session changes state, and a close record when a session is closed. Records are never
+ * changed once written. When a log is reopened, anything after its last complete record is cut off before new
+ * records are written, so records left over from a batch that was only partly written before a crash can never
+ * follow the new records and be replayed as if they had been written after them.
+ *
+ * Records are appended to a buffer in memory. Once an operation finishes, it waits for the log to be written to the
+ * disk and forced, before it returns. One thread writes and forces the records of every operation that has finished
+ * by then, while the others wait for it, so operations finishing together share one force of the log. The file is
+ * preallocated in large chunks, so forcing the log does not also need to update the size of the file.
+ *
+ * Every snapshot interval records, the full state of the machine is checkpointed to a snapshot file next to the log.
+ * When a machine is created with an existing log, or a log is rebuilt for auditing, the latest snapshot is loaded and
+ * only the records after it are replayed.
+ */
+public class TransactionLog implements AutoCloseable {
+
+    /**
+     * The operations written to the log.
+     */
+    public enum Operation {
+        INSERT_COIN,
+        PURCHASE_ITEM,
+        REQUEST_REFUND,
+        DEPOSIT_COINS,
+        WITHDRAW_COINS,
+        PURCHASE_BASKET,
+        INSERT_COINS
+    }
+
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 10_000;
+
+    static final int RECORD_BYTES = 36;
+
+    private static final byte HEADER = 1;
+    private static final byte OPERATION = 2;
+    private static final byte COIN_LEVEL = 3;
+    private static final byte PRODUCT_LEVEL = 4;
+    private static final byte STATE = 5;
+    private static final byte SESSION_CLOSED = 6;
+
+    private static final MachineStateType[] STATES = MachineStateType.values();
+
+    private static final int SNAPSHOT_MAGIC = 0x564D534E;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final long PREALLOCATE_BYTES = 4 * 1024 * 1024;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int REBUILD_BATCH = 8;
+
+    private final Path file;
+    private final Path snapshotFile;
+    private final int snapshotInterval;
+    private final FileChannel channel;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final CRC32 appendChecksum = new CRC32();
+    private ByteBuffer pending = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private ByteBuffer writing = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private Image image;
+    private long fileSize;
+    private long writePosition;
+    private long appendedSequence;
+    private long snapshotSequence;
+    private volatile long lastSequence;
+    private volatile long durableSequence;
+    private boolean attached;
+    private volatile boolean open = true;
+
+    /**
+     * Constructor for the transaction log. The log is read and replayed once it is attached to a machine.
+     *
+     * @param file The log file, created if it does not exist.
+     * @param snapshotInterval The number of records between snapshots of the machine's state.
+     * @throws IOException Throws error if the file cannot be opened.
+     */
+    public TransactionLog(Path file, int snapshotInterval) throws IOException {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("Snapshot interval must be greater than 0");
+        }
+        this.file = file;
+        this.snapshotFile = snapshotFileOf(file);
+        this.snapshotInterval = snapshotInterval;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Constructor for the transaction log, taking a snapshot every {@link #DEFAULT_SNAPSHOT_INTERVAL} records.
+     *
+     * @param file The log file, created if it does not exist.
+     * @throws IOException Throws error if the file cannot be opened.
+     */
+    public TransactionLog(Path file) throws IOException {
+        this(file, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * @param file A log file.
+     * @return The snapshot file kept next to the log.
+     */
+    public static Path snapshotFileOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".snapshot");
+    }
+
+    /**
+     * This method is used to attach the log to a machine's stock. If the file already holds a log for the same coins and
+     * products, the machine's stock is rebuilt from its latest snapshot and the records after it. Otherwise a new log is
+     * started with the stock's current levels. From then on each change to the stock is appended to the log.
+     *
+     * @param coinStock The machine's coin stock.
+     * @param productStock The machine's product stock.
+     * @return True if the stock was rebuilt from the log.
+     * @throws MachineInitialisationError Throws error if the file cannot be read, holds a log for different coins or
+     * products, or is already attached to a machine.
+     */
+    boolean attach(CoinStock coinStock, ProductStock productStock) {
+        if (attached || !open) {
+            throw new MachineInitialisationError("TransactionLog");
+        }
+        attached = true;
+        long fingerprint = productStock.getCatalog().fingerprint();
+        Image recovered;
+        try {
+            fileSize = channel.size();
+            recovered = recover(channel, snapshotFile);
+        } catch (IOException e) {
+            throw new MachineInitialisationError("TransactionLog");
+        }
+
+        if (recovered != null) {
+            if (recovered.coinLevels.length != coinStock.size() || recovered.productLevels.length != productStock.size()
+                    || recovered.fingerprint != fingerprint) {
+                throw new MachineInitialisationError("TransactionLog");
+            }
+            for (int i = 0; i < coinStock.size(); i++) {
+                coinStock.put(coinStock.getKey(i), recovered.coinLevels[i]);
+            }
+            for (int i = 0; i < productStock.size(); i++) {
+                productStock.put(productStock.getKey(i), recovered.productLevels[i]);
+            }
+            image = recovered;
+            appendedSequence = recovered.sequence;
+            lastSequence = recovered.sequence;
+            durableSequence = recovered.sequence;
+            snapshotSequence = recovered.sequence;
+            writePosition = recovered.position;
+            try {
+                if (fileSize > writePosition) {
+                    channel.truncate(writePosition);
+                    channel.force(true);
+                    fileSize = writePosition;
+                }
+            } catch (IOException e) {
+                throw new MachineInitialisationError("TransactionLog");
+            }
+        } else {
+            image = new Image(fingerprint, coinStock.size(), productStock.size());
+            try {
+                Files.deleteIfExists(snapshotFile);
+            } catch (IOException e) {
+                throw new MachineInitialisationError("TransactionLog");
+            }
+            append(HEADER, (byte) 0, -1, coinStock.size(), productStock.size(), fingerprint);
+            for (int i = 0; i < coinStock.size(); i++) {
+                append(COIN_LEVEL, (byte) 0, -1, i, coinStock.getInt(coinStock.getKey(i)), 0);
+            }
+            for (int i = 0; i < productStock.size(); i++) {
+                append(PRODUCT_LEVEL, (byte) 0, -1, i, productStock.getInt(productStock.getKey(i)), 0);
+            }
+            try {
+                commit();
+            } catch (UncheckedIOException e) {
+                throw new MachineInitialisationError("TransactionLog");
+            }
+        }
+        coinStock.addListener((item, oldLevel, newLevel) -> append(COIN_LEVEL, (byte) 0, -1, item.getId(), newLevel, 0));
+        productStock.addListener((item, oldLevel, newLevel) -> append(PRODUCT_LEVEL, (byte) 0, -1, item.getId(), newLevel, 0));
+        return recovered != null;
+    }
+
+    /**
+     * This method is used to rebuild the state of a machine from its log, for auditing, without creating the machine.
+     * Loads the latest snapshot next to the log, then replays the records after it.
+     *
+     * @param file The log file.
+     * @return The state of the machine as of the last record of the log, or null if the log is empty.
+     * @throws IOException Throws error if the log cannot be read.
+     */
+    public static MachineSnapshot rebuild(Path file) throws IOException {
+        try (FileChannel logChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Image recovered = recover(logChannel, snapshotFileOf(file));
+            return recovered == null ? null : recovered.toSnapshot();
+        }
+    }
+
+    /**
+     * This method is used to rebuild the state of many machines from their logs in parallel, splitting the logs
+     * between the threads of the fork join pool.
+     *
+     * @param files The log files.
+     * @param pool The pool to rebuild the logs in.
+     * @return The state of each machine, in the same order as the files, with null for an empty log.
+     * @throws UncheckedIOException Throws error if a log cannot be read.
+     */
+    public static MachineSnapshot[] rebuildAll(List<Path> files, ForkJoinPool pool) {
+        MachineSnapshot[] snapshots = new MachineSnapshot[files.size()];
+        pool.invoke(new RebuildTask(files, snapshots, 0, files.size()));
+        return snapshots;
+    }
+
+    /**
+     * Task rebuilding a range of logs, split in half until each task has only a few logs to rebuild.
+     */
+    private static final class RebuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final MachineSnapshot[] snapshots;
+        private final int from;
+        private final int to;
+
+        private RebuildTask(List<Path> files, MachineSnapshot[] snapshots, int from, int to) {
+            this.files = files;
+            this.snapshots = snapshots;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= REBUILD_BATCH) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        snapshots[i] = rebuild(files.get(i));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RebuildTask(files, snapshots, from, middle), new RebuildTask(files, snapshots, middle, to));
+            }
+        }
+    }
+
+    /**
+     * This method is used to rebuild a machine's state from its latest snapshot, if it has one that matches the log,
+     * and the records after it. Stops at the first record that is empty, out of sequence or fails its checksum, which
+     * is the end of the log.
+     *
+     * @param logChannel The channel of the log file.
+     * @param snapshot The snapshot file.
+     * @return The machine's state, with the position after the last record; or null if the log is empty.
+     */
+    private static Image recover(FileChannel logChannel, Path snapshot) throws IOException {
+        Image recovered = readSnapshot(snapshot);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        CRC32 checksum = new CRC32();
+        long position = recovered == null ? 0 : recovered.position;
+        long sequence = recovered == null ? 0 : recovered.sequence;
+        reading:
+        while (true) {
+            buffer.clear();
+            int read = logChannel.read(buffer, position);
+            if (read < RECORD_BYTES) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_BYTES) {
+                int start = buffer.position();
+                long recordSequence = buffer.getLong(start);
+                byte type = buffer.get(start + 8);
+                int session = buffer.getInt(start + 12);
+                int id = buffer.getInt(start + 16);
+                int level = buffer.getInt(start + 20);
+                long value = buffer.getLong(start + 24);
+                checksum.reset();
+                buffer.limit(start + RECORD_BYTES - Integer.BYTES);
+                checksum.update(buffer);
+                buffer.limit(buffer.capacity());
+                if (recordSequence != sequence + 1 || (int) checksum.getValue() != buffer.getInt(start + RECORD_BYTES - Integer.BYTES)) {
+                    break reading;
+                }
+                buffer.position(start + RECORD_BYTES);
+                if (type == HEADER) {
+                    if (recovered != null) {
+                        throw new IOException("Transaction log has a second header");
+                    }
+                    recovered = new Image(value, id, level);
+                } else if (recovered == null) {
+                    throw new IOException("Transaction log does not start with a header");
+                } else {
+                    recovered.apply(type, session, id, level);
+                }
+                sequence = recordSequence;
+                position = position + RECORD_BYTES;
+            }
+        }
+        if (recovered != null) {
+            recovered.sequence = sequence;
+            recovered.position = position;
+        }
+        return recovered;
+    }
+
+    /**
+     * This method is used to read a snapshot file.
+     *
+     * @param snapshot The snapshot file.
+     * @return The machine's state in the snapshot, or null if there is no snapshot or it is not complete.
+     */
+    private static Image readSnapshot(Path snapshot) throws IOException {
+        if (!Files.exists(snapshot)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshot));
+        if (buffer.remaining() < 40 + Integer.BYTES) {
+            return null;
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), 0, buffer.limit() - Integer.BYTES);
+        if ((int) checksum.getValue() != buffer.getInt(buffer.limit() - Integer.BYTES)
+                || buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+            return null;
+        }
+        long fingerprint = buffer.getLong();
+        long sequence = buffer.getLong();
+        long position = buffer.getLong();
+        Image recovered = new Image(fingerprint, buffer.getInt(), buffer.getInt());
+        for (int i = 0; i < recovered.coinLevels.length; i++) {
+            recovered.coinLevels[i] = buffer.getInt();
+        }
+        for (int i = 0; i < recovered.productLevels.length; i++) {
+            recovered.productLevels[i] = buffer.getInt();
+        }
+        int sessions = buffer.getInt();
+        for (int i = 0; i < sessions; i++) {
+            recovered.putSessionState(buffer.getInt(), buffer.getInt());
+        }
+        recovered.sequence = sequence;
+        recovered.position = position;
+        return recovered;
+    }
+
+    /**
+     * This method is used to write a snapshot of the machine's state to a new file, then move it over the old
+     * snapshot, so a crash never leaves a half written snapshot in its place.
+     *
+     * @param snapshot The machine's state, as of the last record written to the log.
+     */
+    private void writeSnapshot(Image snapshot) throws IOException {
+        int size = 40 + (snapshot.coinLevels.length + snapshot.productLevels.length) * Integer.BYTES
+                + Integer.BYTES + snapshot.sessions * 2 * Integer.BYTES + Integer.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(snapshot.fingerprint)
+                .putLong(snapshot.sequence).putLong(snapshot.position)
+                .putInt(snapshot.coinLevels.length).putInt(snapshot.productLevels.length);
+        for (int level : snapshot.coinLevels) {
+            buffer.putInt(level);
+        }
+        for (int level : snapshot.productLevels) {
+            buffer.putInt(level);
+        }
+        buffer.putInt(snapshot.sessions);
+        for (int i = 0; i < snapshot.sessions; i++) {
+            buffer.putInt(snapshot.sessionIds[i]).putInt(snapshot.sessionStates[i]);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) checksum.getValue());
+        buffer.flip();
+
+        Path temporary = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel snapshotChannel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                snapshotChannel.write(buffer);
+            }
+            snapshotChannel.force(true);
+        }
+        Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return The log file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return The sequence number of the last record forced out to the disk.
+     */
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    /**
+     * @return The sequence number of the last record included in the snapshot file.
+     */
+    public long getSnapshotSequence() {
+        commitLock.lock();
+        try {
+            return snapshotSequence;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * This method is used to write an operation record, at the start of an operation.
+     *
+     * @param sessionId The id of the session performing the operation.
+     * @param operation The operation performed.
+     * @param item The coin or product the operation is for, or null.
+     * @param count The number of coins the operation is for, or zero.
+     */
+    void logOperation(int sessionId, Operation operation, Item item, int count) {
+        append(OPERATION, (byte) operation.ordinal(), sessionId, item == null ? -1 : item.getId(), count, System.currentTimeMillis());
+    }
+
+    /**
+     * This method is used to write a state record, when a session moves into a new state.
+     *
+     * @param sessionId The id of the session.
+     * @param state The state the session moved into.
+     */
+    void logState(int sessionId, MachineStateType state) {
+        append(STATE, (byte) 0, sessionId, -1, state.ordinal(), 0);
+    }
+
+    /**
+     * This method is used to write a close record, when a session is closed, so the session is dropped from the
+     * log's copy of the machine's state and from later snapshots.
+     *
+     * @param sessionId The id of the session.
+     */
+    void logSessionClosed(int sessionId) {
+        append(SESSION_CLOSED, (byte) 0, sessionId, -1, 0, 0);
+    }
+
+    /**
+     * This method is used to append a record to the buffer in memory, and apply it to the log's copy of the machine's state.
+     *
+     * @param type The type of record.
+     * @param operation The operation of an operation record.
+     * @param session The id of the session of an operation, state or close record, or -1.
+     * @param id The id of the coin or product of the record, or -1.
+     * @param level The stock level, count or state of the record.
+     * @param value The time of an operation record, or the fingerprint of a header record.
+     */
+    private void append(byte type, byte operation, int session, int id, int level, long value) {
+        if (!open) {
+            return;
+        }
+        appendLock.lock();
+        try {
+            if (pending.remaining() < RECORD_BYTES) {
+                ByteBuffer larger = ByteBuffer.allocateDirect(pending.capacity() * 2);
+                pending.flip();
+                larger.put(pending);
+                pending = larger;
+            }
+            long sequence = appendedSequence + 1;
+            int start = pending.position();
+            pending.putLong(sequence).put(type).put(operation).putShort((short) 0).putInt(session).putInt(id)
+                    .putInt(level).putLong(value);
+            ByteBuffer record = pending.duplicate();
+            record.position(start).limit(start + RECORD_BYTES - Integer.BYTES);
+            appendChecksum.reset();
+            appendChecksum.update(record);
+            pending.putInt((int) appendChecksum.getValue());
+            image.apply(type, session, id, level);
+            appendedSequence = sequence;
+            lastSequence = sequence;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * This method is used to wait until every record appended so far has been written to the disk and forced.
+     * If no other thread is writing the log, this thread writes the records of every waiting operation in one batch,
+     * and takes a snapshot of the machine's state if enough records have been written since the last one.
+     *
+     * @throws UncheckedIOException Throws error if the log cannot be written.
+     */
+    public void commit() {
+        long target = lastSequence;
+        if (durableSequence >= target || !open) {
+            return;
+        }
+        commitLock.lock();
+        try {
+            if (durableSequence >= target) {
+                return;
+            }
+            ByteBuffer batch;
+            long batchSequence;
+            Image snapshot = null;
+            appendLock.lock();
+            try {
+                batch = pending;
+                pending = writing;
+                writing = batch;
+                batchSequence = appendedSequence;
+                if (batchSequence - snapshotSequence >= snapshotInterval) {
+                    snapshot = image.copy();
+                }
+            } finally {
+                appendLock.unlock();
+            }
+            batch.flip();
+            long end = writePosition + batch.remaining();
+            if (end > fileSize) {
+                preallocate(end);
+            }
+            while (batch.hasRemaining()) {
+                writePosition = writePosition + channel.write(batch, writePosition);
+            }
+            batch.clear();
+            channel.force(false);
+            durableSequence = batchSequence;
+            if (snapshot != null) {
+                snapshot.sequence = batchSequence;
+                snapshot.position = writePosition;
+                writeSnapshot(snapshot);
+                snapshotSequence = batchSequence;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * This method is used to extend the file with zeroes, in whole chunks, so it is at least the size.
+     *
+     * @param size The size the file needs to be.
+     */
+    private void preallocate(long size) throws IOException {
+        long newSize = ((size / PREALLOCATE_BYTES) + 1) * PREALLOCATE_BYTES;
+        ByteBuffer zeroes = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        for (long position = fileSize; position < newSize; position = position + BUFFER_BYTES) {
+            zeroes.clear();
+            zeroes.limit((int) Math.min(BUFFER_BYTES, newSize - position));
+            while (zeroes.hasRemaining()) {
+                channel.write(zeroes, position + zeroes.position());
+            }
+        }
+        channel.force(true);
+        fileSize = newSize;
+    }
+
+    /**
+     * This method is used to write the remaining records to the disk and close the log.
+     * Changes to the machine's stock after the log is closed are not written to the log.
+     *
+     * @throws IOException Throws error if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        try {
+            commit();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            open = false;
+            channel.close();
+        }
+    }
+
+    /**
+     * The state of a machine as its log is written or replayed: the level of each coin and product, and the state
+     * of each open session, as of a sequence number and position in the log. The open sessions are kept in arrays
+     * sorted by session id, so applying a state record does not box or allocate.
+     */
+    private static final class Image {
+        private final long fingerprint;
+        private final int[] coinLevels;
+        private final int[] productLevels;
+        private int[] sessionIds;
+        private int[] sessionStates;
+        private int sessions;
+        private long sequence;
+        private long position;
+
+        private Image(long fingerprint, int coins, int products) {
+            this(fingerprint, new int[coins], new int[products], new int[4], new int[4], 0);
+        }
+
+        private Image(long fingerprint, int[] coinLevels, int[] productLevels, int[] sessionIds, int[] sessionStates, int sessions) {
+            this.fingerprint = fingerprint;
+            this.coinLevels = coinLevels;
+            this.productLevels = productLevels;
+            this.sessionIds = sessionIds;
+            this.sessionStates = sessionStates;
+            this.sessions = sessions;
+        }
+
+        /**
+         * This method is used to apply a record to the state.
+         */
+        private void apply(byte type, int session, int id, int level) {
+            if (type == COIN_LEVEL) {
+                coinLevels[id] = level;
+            } else if (type == PRODUCT_LEVEL) {
+                productLevels[id] = level;
+            } else if (type == STATE) {
+                putSessionState(session, level);
+            } else if (type == SESSION_CLOSED) {
+                int index = Arrays.binarySearch(sessionIds, 0, sessions, session);
+                if (index >= 0) {
+                    System.arraycopy(sessionIds, index + 1, sessionIds, index, sessions - index - 1);
+                    System.arraycopy(sessionStates, index + 1, sessionStates, index, sessions - index - 1);
+                    sessions--;
+                }
+            }
+        }
+
+        /**
+         * @param id The id of a session.
+         * @param state The ordinal of the state the session moved into.
+         */
+        private void putSessionState(int id, int state) {
+            int index = Arrays.binarySearch(sessionIds, 0, sessions, id);
+            if (index < 0) {
+                index = -index - 1;
+                if (sessions == sessionIds.length) {
+                    sessionIds = Arrays.copyOf(sessionIds, sessions * 2);
+                    sessionStates = Arrays.copyOf(sessionStates, sessions * 2);
+                }
+                System.arraycopy(sessionIds, index, sessionIds, index + 1, sessions - index);
+                System.arraycopy(sessionStates, index, sessionStates, index + 1, sessions - index);
+                sessionIds[index] = id;
+                sessions++;
+            }
+            sessionStates[index] = state;
+        }
+
+        private Image copy() {
+            return new Image(fingerprint, coinLevels.clone(), productLevels.clone(), sessionIds.clone(), sessionStates.clone(), sessions);
+        }
+
+        private MachineSnapshot toSnapshot() {
+            Map<Integer, MachineStateType> states = new HashMap<>();
+            for (int i = 0; i < sessions; i++) {
+                states.put(sessionIds[i], STATES[sessionStates[i]]);
+            }
+            return new MachineSnapshot(sequence, fingerprint, coinLevels, productLevels, states);
+        }
+    }
+}
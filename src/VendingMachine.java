@@ -1,42 +1,41 @@
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * This is the Context class for the state design pattern.
- * Class for the Vending Machine containing all the different State objects, and collections for
- * product and coin to share between states. Provides a range of method implementations to provide
- * user interaction with the Vending Machine.
+ * Class for the Vending Machine containing the product and coin stock shared by all of the machine's
+ * customer sessions. The machine's own front panel is its default session, which the user interaction
+ * methods of this class act on; further sessions for remote customers are opened with {@link #openSession()}.
+ * Each session is the context class for the state design pattern, for its own customer.
  *
  * @author Jamie White
  *
  */
 public class VendingMachine {
 
-    private final CoinSlot coinSlot;
-    private final Keypad keypad;
-    private final State itemPurchasedState;
-    private final State itemSelectedState;
-    private final State notSelectedState;
-    private final State coinInsertedState;
-    private final State productEmptyState;
-    private final AdminState adminModeState;
-    private State currentState;
+    private final ReentrantLock transactionLock;
     private final int MAX_SIZE;
     private final int productLevel;
     private final int changeLevel;
-    private Product selectedItem;
-    private String selectedItemCode;
-    private double selectedItemPrice;
 
-    private final CoinStock<Coin, Integer> coinStock = new CoinStock<>();
-    private final CoinStock<Coin, Integer> insertedCoinStock = new CoinStock<>();
-    private final CoinStock<Coin, Integer> refundCoinStock = new CoinStock<>();
-    private final Stock<Product, Integer> productStock = new ProductStock<>();
-    private final Stock<Product, Integer> productBucket = new ProductStock<>();
-    private final CoinStock<Coin, Integer> coinBucket = new CoinStock<>();
-    private List<Product> collectedProducts = new ArrayList<>();
-    private List<Coin> collectedCoins = new ArrayList<>();
+    private final ProductCatalog catalog;
+    private final SlotLayout layout;
+    private final CoinStock coinStock = new CoinStock();
+    private final ProductStock productStock;
+    private final ChangeMaker changeMaker = new ChangeMaker(coinStock);
+    private final int[] changeCoinCounts = new int[coinStock.size()];
+    private final SellableProducts sellableProducts;
+    private final ProductReservations reservations;
+    private final TransactionLog transactionLog;
+    private final MachineMetrics metrics;
+    private final SalesVelocity salesVelocity;
+    private final PricingEngine pricing;
+    private final AtomicInteger nextSessionId = new AtomicInteger();
+    private volatile MachineEventSink eventSink = MachineEventSink.console();
+    private final Session session;
 
     /**
      * Constructor for the Vending Machine. Initialises the Vending Machine based on three parameters
@@ -48,72 +47,225 @@ public class VendingMachine {
      * @throws MachineInitialisationError   Throws error if values are negative values or if the product level is greater than the max size of the machine.
      */
     public VendingMachine(int MAX_SIZE, int productLevel, int changeLevel) throws MachineInitialisationError {
+        this(MAX_SIZE, productLevel, changeLevel, false);
+    }
+
+    /**
+     * Constructor for the Vending Machine, which can be driven from more than one thread.
+     * In concurrent mode each operation of the machine's front panel, such as a whole purchase with its change and bucket,
+     * is committed under the machine's transaction lock, so it happens atomically or not at all and threads never
+     * see a half finished operation. Remote sessions only hold the transaction lock while they change the shared stock.
+     * A machine used by a single thread does not need the lock.
+     *
+     * @param MAX_SIZE  The max size of the Vending Machine, the maximum amount of Products it can store of one type.
+     * @param productLevel  The amount of each product the machine starts with.
+     * @param changeLevel   The amount of each coin the machine starts with.
+     * @param concurrent True if the machine's operations may be called from more than one thread.
+     * @throws MachineInitialisationError   Throws error if values are negative values or if the product level is greater than the max size of the machine.
+     */
+    public VendingMachine(int MAX_SIZE, int productLevel, int changeLevel, boolean concurrent) throws MachineInitialisationError {
+        this(ProductCatalog.DEFAULT, MAX_SIZE, productLevel, changeLevel, concurrent);
+    }
+
+    /**
+     * Constructor for a Vending Machine selling the products of a catalog, such as one loaded at startup with
+     * {@link ProductCatalog#load(java.nio.file.Path)}. Products with their own capacity in the catalog start
+     * with no more than that capacity.
+     *
+     * @param catalog The catalog of products the machine sells.
+     * @param MAX_SIZE  The max size of the Vending Machine, the maximum amount of Products it can store of one type.
+     * @param productLevel  The amount of each product the machine starts with.
+     * @param changeLevel   The amount of each coin the machine starts with.
+     * @param concurrent True if the machine's operations may be called from more than one thread.
+     * @throws MachineInitialisationError   Throws error if values are negative values or if the product level is greater than the max size of the machine.
+     */
+    public VendingMachine(ProductCatalog catalog, int MAX_SIZE, int productLevel, int changeLevel, boolean concurrent) throws MachineInitialisationError {
+        this(catalog, MAX_SIZE, productLevel, changeLevel, concurrent, null);
+    }
+
+    /**
+     * Constructor for a Vending Machine whose coin and product stock are kept in a memory-mapped inventory file, so they
+     * survive a restart. If the file already holds the machine's inventory, the stock is restored from it instead of
+     * starting at the product and change levels.
+     *
+     * @param catalog The catalog of products the machine sells.
+     * @param MAX_SIZE  The max size of the Vending Machine, the maximum amount of Products it can store of one type.
+     * @param productLevel  The amount of each product the machine starts with, if it is not restored.
+     * @param changeLevel   The amount of each coin the machine starts with, if it is not restored.
+     * @param concurrent True if the machine's operations may be called from more than one thread.
+     * @param inventory The inventory file to keep the stock in, or null to keep it only in memory.
+     * @throws MachineInitialisationError   Throws error if values are negative values, if the product level is greater than the max size of the machine,
+     * or if the inventory file does not match the machine.
+     */
+    public VendingMachine(ProductCatalog catalog, int MAX_SIZE, int productLevel, int changeLevel, boolean concurrent,
+                          MappedInventory inventory) throws MachineInitialisationError {
+        this(catalog, MAX_SIZE, productLevel, changeLevel, concurrent, inventory, null);
+    }
+
+    /**
+     * Constructor for a Vending Machine that writes its operations and stock changes to a transaction log. Each operation
+     * that changes the machine returns once its records are forced out to the disk. If the log already holds the
+     * machine's records, the stock is rebuilt by replaying them, after it is restored from the inventory file if there is one.
+     *
+     * @param catalog The catalog of products the machine sells.
+     * @param MAX_SIZE  The max size of the Vending Machine, the maximum amount of Products it can store of one type.
+     * @param productLevel  The amount of each product the machine starts with, if it is not restored.
+     * @param changeLevel   The amount of each coin the machine starts with, if it is not restored.
+     * @param concurrent True if the machine's operations may be called from more than one thread.
+     * @param inventory The inventory file to keep the stock in, or null to keep it only in memory.
+     * @param transactionLog The log to write the machine's transactions to, or null for no log.
+     * @throws MachineInitialisationError   Throws error if values are negative values, if the product level is greater than the max size of the machine,
+     * or if the inventory file or log does not match the machine.
+     */
+    public VendingMachine(ProductCatalog catalog, int MAX_SIZE, int productLevel, int changeLevel, boolean concurrent,
+                          MappedInventory inventory, TransactionLog transactionLog) throws MachineInitialisationError {
+        this(catalog, MAX_SIZE, productLevel, changeLevel, concurrent, inventory, transactionLog, null);
+    }
+
+    /**
+     * Constructor for a Vending Machine whose products are held in the slots of a slot layout, such as one loaded at startup
+     * with {@link SlotLayout#load(ProductCatalog, java.nio.file.Path, SlotLayout.Policy)}. Each product holds no more than the
+     * total capacity of its slots, and each unit sold is vended from the slot picked by the layout's policy.
+     *
+     * @param catalog The catalog of products the machine sells.
+     * @param MAX_SIZE  The max size of the Vending Machine, the maximum amount of Products it can store of one type.
+     * @param productLevel  The amount of each product the machine starts with, if it is not restored.
+     * @param changeLevel   The amount of each coin the machine starts with, if it is not restored.
+     * @param concurrent True if the machine's operations may be called from more than one thread.
+     * @param inventory The inventory file to keep the stock in, or null to keep it only in memory.
+     * @param transactionLog The log to write the machine's transactions to, or null for no log.
+     * @param layout The layout of the machine's slots, or null for one slot per product holding its capacity or the max size of the machine.
+     * @throws MachineInitialisationError   Throws error if values are negative values, if the product level is greater than the max size of the machine,
+     * if the layout is not for the catalog, or if the inventory file or log does not match the machine.
+     */
+    public VendingMachine(ProductCatalog catalog, int MAX_SIZE, int productLevel, int changeLevel, boolean concurrent,
+                          MappedInventory inventory, TransactionLog transactionLog, SlotLayout layout) throws MachineInitialisationError {
+        this.transactionLock = concurrent ? new ReentrantLock() : null;
+        this.catalog = catalog;
+        if (layout == null) {
+            layout = SlotLayout.perProduct(catalog, Math.max(1, MAX_SIZE));
+        } else if (layout.getCatalog() != catalog) {
+            throw reportError(new MachineInitialisationError("Layout"));
+        }
+        this.layout = layout;
+        this.productStock = new ProductStock(catalog, layout);
+        this.pricing = new PricingEngine(catalog);
+        this.reservations = new ProductReservations(productStock);
+        this.sellableProducts = new SellableProducts(productStock, coinStock, changeMaker, pricing, reservations);
+        this.metrics = new MachineMetrics(catalog);
+        this.salesVelocity = new SalesVelocity(catalog);
         this.MAX_SIZE = MAX_SIZE;
         this.productLevel = productLevel;
         this.changeLevel = changeLevel;
 
-        this.coinSlot = new CoinSlot(this);
-        this.keypad = new Keypad(this);
-
         if(MAX_SIZE < 1){
-            throw new MachineInitialisationError("Size");
+            throw reportError(new MachineInitialisationError("Size"));
         } else if(productLevel < 0){
-            throw new MachineInitialisationError("Product");
+            throw reportError(new MachineInitialisationError("Product"));
         }else if(MAX_SIZE < productLevel){
-            throw new MachineInitialisationError("ProductMax");
+            throw reportError(new MachineInitialisationError("ProductMax"));
         } else if(changeLevel < 0){
-            throw new MachineInitialisationError("Change");
+            throw reportError(new MachineInitialisationError("Change"));
         } else {
             coinStock.setStock(changeLevel);
-            productStock.setStock(productLevel);
+            for (int i = 0; i < catalog.size(); i++) {
+                Product product = catalog.get(i);
+                productStock.put(product, Math.min(productLevel, getCapacity(product)));
+            }
+        }
+        try {
+            if (inventory != null) {
+                inventory.attach(coinStock, productStock);
+            }
+            if (transactionLog != null) {
+                transactionLog.attach(coinStock, productStock);
+            }
+        } catch (MachineInitialisationError e) {
+            throw reportError(e);
         }
+        this.transactionLog = transactionLog;
+        LowStockListener lowStockEvents = (item, level, watermark) -> eventSink.publish(MachineEventType.LOW_STOCK, item, level);
+        productStock.addLowStockListener(lowStockEvents);
+        coinStock.addLowStockListener(lowStockEvents);
 
-        itemPurchasedState = new ItemPurchasedState(this);
-        coinInsertedState = new CoinInsertedState(this);
-        itemSelectedState = new ItemSelectedState(this);
-        notSelectedState = new NotSelectedState(this);
-        productEmptyState = new ProductEmptyState(this);
-        adminModeState = new AdminModeState(this);
+        this.session = new Session(this, nextSessionId.getAndIncrement(), transactionLock);
+    }
 
-        if(productLevel > 0){
-            currentState = notSelectedState;
-        } else {
-            currentState = productEmptyState;
-        }
+    /**
+     * This method is used to open a new customer session on the machine, such as a remote order. The session has its
+     * own selection, inserted coins, bucket and state, and shares the machine's product and coin stock with every other session.
+     * On a concurrent machine each session can be driven from its own thread.
+     *
+     * @return The new session.
+     */
+    public Session openSession() {
+        return new Session(this, nextSessionId.getAndIncrement(), transactionLock == null ? null : new ReentrantLock());
+    }
 
+    /**
+     * @return The machine's default session, used by its front panel.
+     */
+    public Session getSession() {
+        return session;
     }
 
     /**
-     * Takes a state parameter and sets the current state to this state.
+     * Takes a state parameter and sets the current state of the front panel to this state.
      * Used to progress the machine between states.
      *
      * @param state The state to set the current state to.
      */
     void setCurrentState(State state) {
-        this.currentState = state;
+        session.setCurrentState(state);
     }
 
     /**
-     * @return Returns the current state the machine is in.
+     * @return Returns the current state the front panel is in. Can be read from any thread without the transaction lock.
      */
     State getCurrentState() {
-        return currentState;
+        return session.getCurrentState();
+    }
+
+    /**
+     * @return True if the machine's operations can be called from more than one thread.
+     */
+    public boolean isConcurrent() {
+        return transactionLock != null;
+    }
+
+    /**
+     * This method is used to start a change to the machine's shared stock. In concurrent mode it takes the transaction lock,
+     * which is held until the whole change has finished. Changes made from within another change already hold the lock.
+     */
+    void beginTransaction() {
+        if (transactionLock != null) {
+            transactionLock.lock();
+        }
+    }
+
+    /**
+     * This method is used to finish a change to the machine's shared stock, releasing the transaction lock in concurrent mode.
+     */
+    void endTransaction() {
+        if (transactionLock != null) {
+            transactionLock.unlock();
+        }
     }
 
     /**
      * @return Returns the item purchased state.
      */
-    State getItemPurchasedState() { return itemPurchasedState; }
+    State getItemPurchasedState() { return session.getItemPurchasedState(); }
 
     /**
      * @return Returns the coin inserted state.
      */
-    State getCoinInsertedState() { return coinInsertedState; }
+    State getCoinInsertedState() { return session.getCoinInsertedState(); }
 
     /**
      * @return Returns the item selected state.
      */
-    State getItemSelectedState() { return itemSelectedState; }
+    State getItemSelectedState() { return session.getItemSelectedState(); }
 
     /**
      * Sets the currently selected item to Null.
@@ -123,9 +275,7 @@ public class VendingMachine {
      * @return Returns the not selected state. This being the base state of the machine.
      */
     State getNotSelectedState() {
-        setSelectedItem(null);
-        setSelectedItemCode(null);
-        return notSelectedState;
+        return session.getNotSelectedState();
     }
 
     /**
@@ -135,8 +285,7 @@ public class VendingMachine {
      * @return Returns the product empty state.
      */
     State getProductEmptyState() {
-        System.out.println("The machine is empty! All stock has been sold!");
-        return productEmptyState;
+        return session.getProductEmptyState();
     }
 
     /**
@@ -145,7 +294,7 @@ public class VendingMachine {
      * @return Returns the admin mode state.
      */
     AdminState getAdminModeState() {
-        return adminModeState;
+        return session.getAdminModeState();
     }
 
     /**
@@ -154,7 +303,7 @@ public class VendingMachine {
      * @return The object coin slot.
      */
     CoinSlot getCoinSlot() {
-        return this.coinSlot;
+        return session.getCoinSlot();
     }
 
     /**
@@ -163,7 +312,157 @@ public class VendingMachine {
      * @return The object keypad.
      */
     public Keypad getKeypad() {
-        return this.keypad;
+        return session.getKeypad();
+    }
+
+    /**
+     * This method is used to get the event sink the machine publishes its events to.
+     *
+     * @return The machine's event sink.
+     */
+    public MachineEventSink getEventSink() {
+        return eventSink;
+    }
+
+    /**
+     * This method is used to change the event sink the machine publishes its events to. Machines print to the
+     * shared console sink by default; {@link MachineEventSink#NONE} turns the machine's events off. The sink can be
+     * changed while sessions are running, and each event goes to whichever sink was set when it was published.
+     *
+     * @param eventSink The event sink to publish the machine's events to.
+     */
+    public void setEventSink(MachineEventSink eventSink) {
+        this.eventSink = eventSink;
+    }
+
+    /**
+     * @return The log the machine writes its transactions to, or null if it has none.
+     */
+    TransactionLog getTransactionLog() {
+        return transactionLog;
+    }
+
+    /**
+     * @return The reservations holding the products selected by the machine's customers.
+     */
+    ProductReservations getReservations() {
+        return reservations;
+    }
+
+    /**
+     * This method is used to get the machine's metrics: the latency of each operation of its sessions, and counts of
+     * the products sold, coins accepted and errors thrown. Call {@link MachineMetrics#snapshot()} to read them.
+     *
+     * @return The machine's metrics.
+     */
+    public MachineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * This method is used to get how fast each of the machine's products sells, over the last minute, hour and day.
+     * Every sale is counted, from any session, without locking.
+     *
+     * @return The machine's sales velocity.
+     */
+    public SalesVelocity getSalesVelocity() {
+        return salesVelocity;
+    }
+
+    /**
+     * @param product A product of the machine's catalog.
+     * @param window The window to measure the rate of sales over.
+     * @return The number of the product sold per hour within the window.
+     */
+    public double getSalesPerHour(Product product, SalesVelocity.Window window) {
+        return salesVelocity.getSalesPerHour(product, window);
+    }
+
+    /**
+     * This method is used to get the machine's pricing engine, to set its pricing rules. Prices change for customers who
+     * select an item after the rules are set; customers who have already selected an item keep the price they were shown.
+     *
+     * @return The machine's pricing engine.
+     */
+    public PricingEngine getPricingEngine() {
+        return pricing;
+    }
+
+    /**
+     * @param product A product of the machine's catalog.
+     * @return The price the product would be sold at if it were selected now, for its current stock level.
+     */
+    public Money getPrice(Product product) {
+        return pricing.getPriceTable().getPrice(product, productStock.getInt(product));
+    }
+
+    /**
+     * This method is used to set how long a customer can be idle before the product they selected is released
+     * for other customers to buy. Defaults to {@link ProductReservations#DEFAULT_TIMEOUT_MILLIS}.
+     *
+     * @param timeoutMillis The idle time in milliseconds.
+     */
+    public void setReservationTimeout(long timeoutMillis) {
+        reservations.setTimeout(timeoutMillis);
+    }
+
+    /**
+     * This method is used to publish an error thrown while setting up the machine, before it is thrown to the user.
+     *
+     * @param error The error thrown.
+     * @return The error, to be thrown.
+     */
+    private RuntimeException reportError(RuntimeException error) {
+        eventSink.publish(MachineEventType.ERROR, error.getMessage());
+        return error;
+    }
+
+    /**
+     * This method is used to set the stock level below which a product is low. The machine publishes a low stock event,
+     * and tells its low stock listeners, once when the product's stock falls below the watermark, not on every sale after.
+     *
+     * @param product A product of the machine's catalog.
+     * @param watermark The lowest stock level of the product that is not low, or zero for no watermark.
+     */
+    public void setLowWatermark(Product product, int watermark) {
+        beginTransaction();
+        try {
+            productStock.setLowWatermark(product, watermark);
+        } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     * This method is used to set the number of a coin below which the machine's change is low. The machine publishes a
+     * low stock event, and tells its low stock listeners, once when the coin's stock falls below the watermark.
+     *
+     * @param coin The coin.
+     * @param watermark The lowest number of the coin that is not low, or zero for no watermark.
+     */
+    public void setLowWatermark(Coin coin, int watermark) {
+        beginTransaction();
+        try {
+            coinStock.setLowWatermark(coin, watermark);
+        } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     * This method is used to add a listener that is told when the stock of one of the machine's products or coins falls
+     * below its low watermark, and when it is restocked back up to it. Listeners are called while the stock is being changed.
+     *
+     * @param listener The listener to add.
+     */
+    public void addLowStockListener(LowStockListener listener) {
+        beginTransaction();
+        try {
+            productStock.addLowStockListener(listener);
+            coinStock.addLowStockListener(listener);
+        } finally {
+            endTransaction();
+        }
     }
 
     /**
@@ -173,6 +472,29 @@ public class VendingMachine {
         return this.MAX_SIZE;
     }
 
+    /**
+     * @return The catalog of products the machine sells.
+     */
+    public ProductCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * @return The layout of the slots holding the machine's products.
+     */
+    public SlotLayout getSlotLayout() {
+        return layout;
+    }
+
+    /**
+     * @param product A product of the machine's catalog.
+     * @return The most units of the product the machine holds, the total capacity of its slots. Without a slot layout this is
+     * the product's own capacity if it has one, or the max size of the machine.
+     */
+    int getCapacity(Product product) {
+        return layout.getCapacity(product);
+    }
+
     /**
      * @return The starting product level of the machine.
      */
@@ -190,75 +512,62 @@ public class VendingMachine {
     /**
      * @return The collection CoinStock. This is the machines overall amount of contained coins.
      */
-    CoinStock<Coin, Integer> getCoinStock() { return coinStock; }
+    CoinStock getCoinStock() { return coinStock; }
 
     /**
-     * @return The collection InsertedCoinStock. This is the machines overall inserted coins.
+     * @return The collection InsertedCoinStock. This is the front panel's overall inserted coins.
      */
-    CoinStock<Coin, Integer> getInsertedCoinStock() {
-        return insertedCoinStock;
+    CoinStock getInsertedCoinStock() {
+        return session.getInsertedCoinStock();
     }
 
     /**
-     * @return The collection Refund coin stock. This is the machines overall coins to be refunded to the user.
+     * @return The collection Refund coin stock. This is the front panel's overall coins to be refunded to the user.
      */
-    CoinStock<Coin, Integer> getRefundCoinStock() {
-        return refundCoinStock;
+    CoinStock getRefundCoinStock() {
+        return session.getRefundCoinStock();
     }
 
     /**
      * @return The collection Product stock. This is the machines overall amount of products in stock.
      */
-    Stock<Product, Integer> getProductStock() { return productStock; }
+    ProductStock getProductStock() { return productStock; }
 
     /**
-     * @return The collection product bucket. This is the machines current stock of products in the bucket.
+     * @return The collection product bucket. This is the front panel's current stock of products in the bucket.
      */
-    Stock<Product, Integer> getProductBucket() { return productBucket; }
+    ProductStock getProductBucket() { return session.getProductBucket(); }
 
     /**
-     * @return The collection coin bucket. This is the machines current stock of coins in the bucket.
+     * @return The collection coin bucket. This is the front panel's current stock of coins in the bucket.
      */
-    CoinStock<Coin, Integer> getCoinBucket() { return coinBucket; }
+    CoinStock getCoinBucket() { return session.getCoinBucket(); }
 
     /**
      * @return The total summed value of the coins in the collection coin Stock.
      */
-    double getCoinStockTotal() { return coinStock.getMachineTotalMoneyValue(); }
+    Money getCoinStockTotal() { return coinStock.getMachineTotalMoneyValue(); }
 
     /**
      * @return The total summed value of the coins in the collection inserted coin Stock.
      */
-    double getInsertedCoinStockTotal() { return insertedCoinStock.getMachineTotalMoneyValue(); }
+    Money getInsertedCoinStockTotal() { return session.getInsertedCoinStockTotal(); }
 
     /**
      * @return The total summed value of the coins in the collection refund coin Stock.
      */
-    double getRefundCoinStockTotal() { return refundCoinStock.getMachineTotalMoneyValue(); }
+    Money getRefundCoinStockTotal() { return session.getRefundCoinStockTotal(); }
 
     /**
      * @return The total summed value of the coins in the collection coin bucket.
      */
-    double getCoinBucketTotal() { return coinBucket.getMachineTotalMoneyValue(); }
+    Money getCoinBucketTotal() { return session.getCoinBucketTotal(); }
 
     /**
      * Method used to copy the contents of the Refund coin stock collection to the coin bucket collection.
      */
     void setCoinBucket() {
-        for (Map.Entry<Coin, Integer> entry : refundCoinStock.entrySet()) {
-            Coin coin = entry.getKey();
-            int value = refundCoinStock.get(coin);
-            coinBucket.put(coin,value);
-        }
-    }
-
-    /**
-     * This method sets the currently selected item's code.
-     *
-     * @param code The item code of the currently selected item.
-     */
-    void setSelectedItemCode(String code) {
-        this.selectedItemCode = code;
+        session.setCoinBucket();
     }
 
     /**
@@ -267,7 +576,7 @@ public class VendingMachine {
      * @param selectedItem The currently selected item by the user.
      */
     void setSelectedItem(Product selectedItem) {
-        this.selectedItem = selectedItem;
+        session.setSelectedItem(selectedItem);
     }
 
     /**
@@ -276,7 +585,7 @@ public class VendingMachine {
      * @return The currently selected item.
      */
     Product getSelectedItem() {
-        return selectedItem;
+        return session.getSelectedItem();
     }
 
     /**
@@ -288,20 +597,85 @@ public class VendingMachine {
      * @throws MachineStockException Throws exception if coin amount is not a number greater than 0.
      */
     public void insertCoin(Coin coin, Integer coinAmount) throws MachineStockException{
-        currentState.insertCoin(coin, coinAmount);
-        if(getInsertedCoinStockTotal() > 0){
-            System.out.println("Total money inserted = £" + amountDeposited());
+        session.insertCoin(coin, coinAmount);
+    }
+
+    /**
+     * This method is used to check whether the product can be sold for the inserted amount of money, without the
+     * machine running out of change. Lets the user be warned before inserting money the machine cannot give change for.
+     *
+     * @param product The product to check.
+     * @param inserted The amount of money inserted.
+     * @return True if an unreserved unit of the product is in stock, the amount covers its current price, and the machine
+     * can give the change.
+     */
+    public boolean canSell(Product product, Money inserted) {
+        beginTransaction();
+        try {
+            return sellableProducts.canSell(product, inserted.getPence());
+        } finally {
+            endTransaction();
         }
     }
 
+    /**
+     * This method is used to check whether the product can be sold for the inserted amount of money at the price a
+     * customer was quoted, without the machine running out of change.
+     *
+     * @param product The product to check.
+     * @param inserted The amount of money inserted.
+     * @param price The price the customer was quoted.
+     * @param reserved Whether the customer already holds a reserved unit of the product.
+     * @return True if a unit is in stock for the customer, the amount covers the price, and the machine can give the change.
+     */
+    boolean canSell(Product product, Money inserted, Money price, boolean reserved) {
+        beginTransaction();
+        try {
+            return sellableProducts.canSell(product, inserted.getPence(), price.getPence(), reserved);
+        } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     * This method is used to get all the products that can currently be sold for the inserted amount of money,
+     * without the machine running out of change or selling a unit reserved for another customer.
+     *
+     * @param inserted The amount of money inserted.
+     * @return The products that can be sold for the amount, in id order.
+     */
+    public List<Product> getSellableProducts(Money inserted) {
+        beginTransaction();
+        try {
+            BitSet sellable = sellableProducts.sellableFor(inserted.getPence());
+            List<Product> products = new ArrayList<>(sellable.cardinality());
+            for (int i = sellable.nextSetBit(0); i >= 0; i = sellable.nextSetBit(i + 1)) {
+                products.add(productStock.getKey(i));
+            }
+            return products;
+        } finally {
+            endTransaction();
+        }
+    }
+
+
+    /**
+     * This method is used to insert a burst of coins from the coin acceptor in one pass, giving the number of each coin.
+     *
+     * @param coinCounts The number of each coin inserted, indexed by the coin's id.
+     * @throws MachineStockException Throws exception if there is not one count for each coin, a count is negative, or there are no coins.
+     */
+    public void insertCoins(int[] coinCounts) throws MachineStockException {
+        session.insertCoins(coinCounts);
+    }
 
     /**
      * Method used to tell the user the amount of coins currently deposited by them.
      *
      * @return The current amount of coins deposited by the user.
      */
-    public double amountDeposited() {
-        return currentState.amountDeposited();
+    public Money amountDeposited() {
+        return session.amountDeposited();
     }
 
     /**
@@ -310,64 +684,95 @@ public class VendingMachine {
      *
      */
     public void requestRefund() {
-        currentState.requestRefund();
+        session.requestRefund();
     }
 
     /**
      * This method is used to check if the machine is completely empty of all products.
-     * If it is, the machine is progressed to product empty state.
      *
      * @return True if the machine is empty of all products. False if the machine is not empty of products.
      */
     boolean isMachineEmptyCheck(){
-        for (Map.Entry<Enum, Integer> entry : productStock.entrySet()) {
-            if(productStock.get((Product) entry.getKey()) > 0){
-                return false;
-            }
+        beginTransaction();
+        try {
+            return productStock.isEmpty();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     * This method is used to list the products the machine has in stock, taking time in the number of products listed.
+     *
+     * @return The products in stock, in id order.
+     */
+    public List<Product> getInStockProducts() {
+        beginTransaction();
+        try {
+            return productStock.getInStockProducts();
+        } finally {
+            endTransaction();
         }
-        return true;
     }
 
     /**
-     * This method is used to calculate the change coin denominations to return to the user based on the 
-     * amount of change to be refunded. Method ensures that change refunded to user is the largest available
-     * coins in stock, totaling to the required amount to be refunded.
+     * This method is used to calculate the change coin denominations to return to the user based on the
+     * amount of change to be refunded. Method ensures that change refunded to user is the fewest available
+     * coins in stock, totaling to the required amount to be refunded. The coin stock is only changed once
+     * the change has been found, so the machine's stock is untouched if the change cannot be made.
+     *
+     * @param amount The amount of money to break down into the fewest available coin denominations.
+     * @return refund coin stock containing coins to be returned to the user.
+     * @throws MachineStockException Throws an error if the coins in stock cannot make up the amount.
+     */
+    Stock<Coin,Integer> calculateChangeDenominations(Money amount){
+        return session.calculateChangeDenominations(amount);
+    }
+
+    /**
+     * This method is used to take the change for the amount from the coin stock, and add it to the session's
+     * refund coin stock. The coin stock is only changed once the change has been found.
      *
-     * @param amount The amount of money to break down into the largest available coin denominations.
+     * @param amount The amount of money to break down into the fewest available coin denominations.
+     * @param refundCoinStock The refund coin stock of the session the change is given to.
      * @return refund coin stock containing coins to be returned to the user.
+     * @throws MachineStockException Throws an error if the coins in stock cannot make up the amount.
      */
-    Stock<Coin,Integer> calculateChangeDenominations(double amount){
-        double refundAmount = amount;
-        for (Map.Entry<Coin, Integer> entry : coinStock.entrySet()) {
-            refundAmount = Rounding.round(refundAmount);
-            if(refundAmount == 0){
-                break;
-            } else {
-                Coin coin = entry.getKey();
-                double coinValue = coin.getMoneyValue();
-                int coinStockLevel = entry.getValue();
-                int coinMultiplier = (int) (refundAmount / coinValue);
-                if(coinMultiplier == 0){
-                    continue;
-                } else {
-                    double remainder = (refundAmount % coinValue);
-                    String coinString = coin.toString();
-                    if(coinMultiplier <= coinStockLevel){
-                        refundCoinStock.put(coin,coinMultiplier);
-                        System.out.println(coinMultiplier + " " + coinString + " coin was placed in the bucket");
-                        coinStock.put(coin,coinStockLevel-coinMultiplier);
-                        refundAmount = refundAmount - (coinValue * coinMultiplier);
-                    } else {
-                        coinMultiplier = coinStockLevel;
-                        refundCoinStock.put(coin,coinMultiplier);
-                        System.out.println(coinMultiplier + " " + coinString + " coin was placed in the bucket");
-                        coinStock.put(coin,coinStockLevel-coinMultiplier);
-                        refundAmount = refundAmount - (coinValue * coinMultiplier);
-                    }
+    Stock<Coin,Integer> calculateChangeDenominations(Money amount, CoinStock refundCoinStock){
+        beginTransaction();
+        try {
+            if(!changeMaker.makeChange(amount.getPence(), changeCoinCounts)){
+                throw new MachineStockException("CoinStock");
+            }
+            for (int i = 0; i < changeCoinCounts.length; i++) {
+                int coinMultiplier = changeCoinCounts[i];
+                if(coinMultiplier > 0){
+                    Coin coin = coinStock.getKey(i);
+                    refundCoinStock.add(coin,coinMultiplier);
+                    eventSink.publish(MachineEventType.CHANGE_DISPENSED, coin, coinMultiplier);
+                    coinStock.subtract(coin,coinMultiplier);
                 }
             }
+            return refundCoinStock;
+        } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     * This method is used to check whether the machine can give the amount as change from its current coin stock,
+     * without changing the coin stock.
+     *
+     * @param amount The amount of change.
+     * @return True if the coins in stock can make up the amount exactly.
+     */
+    boolean canMakeChange(Money amount) {
+        beginTransaction();
+        try {
+            return changeMaker.canMakeChange(amount.getPence());
+        } finally {
+            endTransaction();
         }
-        return refundCoinStock;
     }
 
     /**
@@ -378,7 +783,7 @@ public class VendingMachine {
      * @throws MachineSelectionException Throws error if the code entered by the user is an incorrect code.
      */
     public void selectItem(String code) throws MachineSelectionException{
-        currentState.selectItem(code);
+        session.selectItem(code);
     }
 
     /**
@@ -389,10 +794,7 @@ public class VendingMachine {
      * @throws MachineSelectionException Throws an error if the user has not currently selected an item.
      */
     public Product currentItem() throws MachineSelectionException {
-        if(this.selectedItem == null){
-            throw new MachineSelectionException("noItemSelected");
-        }
-        return currentState.currentItem();
+        return session.currentItem();
     }
 
     /**
@@ -401,14 +803,8 @@ public class VendingMachine {
      * @return The currently selected item's price.
      * @throws MachineSelectionException Throws an error if the user has not currently selected an item.
      */
-    double getSelectedItemPrice() throws MachineSelectionException {
-        if(this.selectedItem == null){
-            throw new MachineSelectionException("noItemSelected");
-        }else {
-            double itemPrice = Rounding.round(Product.getPrice(selectedItemCode));
-            selectedItemPrice = itemPrice;
-            return selectedItemPrice;
-        }
+    Money getSelectedItemPrice() throws MachineSelectionException {
+        return session.getSelectedItemPrice();
     }
 
     /**
@@ -418,10 +814,20 @@ public class VendingMachine {
      * @throws MachinePurchaseException Throws an error if the user has not entered enough money to purchase the item, or the item is out of stock.
      */
     public void purchaseItem() throws MachinePurchaseException {
-        currentState.purchaseItem();
-        if(getCurrentState() == getItemPurchasedState()){
-            requestRefund();
-        }
+        session.purchaseItem();
+    }
+
+    /**
+     * This method is used to buy a basket of products in one transaction, paid for with one batch of coins.
+     * Every product and the change are taken from the stock together, so either the whole basket is sold or nothing changes.
+     *
+     * @param basket The number of each product to buy.
+     * @param payment The number of each coin paid.
+     * @throws MachinePurchaseException Throws an error if the basket is not valid, another order is in progress, the payment
+     * does not cover the basket, a product is out of stock, or the machine cannot give the change.
+     */
+    public void purchaseBasket(Map<Product, Integer> basket, Map<Coin, Integer> payment) throws MachinePurchaseException {
+        session.purchaseBasket(basket, payment);
     }
 
     /**
@@ -430,11 +836,7 @@ public class VendingMachine {
      * @return A list containing all the products collected from the bucket.
      */
     public List<Product> getBucketProducts() {
-        List<Product> products = currentState.getBucketProducts();
-        if(products != null) {
-            this.collectedProducts = products;
-        }
-        return this.collectedProducts;
+        return session.getBucketProducts();
     }
 
     /**
@@ -443,39 +845,25 @@ public class VendingMachine {
      * @return A list containing all the products that have been collected from the bucket.
      */
     List<Product> getCollectedProducts() {
-        try{
-            return this.collectedProducts;
-        } catch (Exception e){
-            System.out.println("Collected Products is null");
-        }
-        return null;
+        return session.getCollectedProducts();
     }
 
     /**
      * This method is used to collect the refunded coins from the bucket.
      *
-     * @return A list containing all the coins collected from the bucket.
+     * @return The number of each coin collected from the bucket, which can also be read as a list of the coins.
      */
-    public List<Coin> getBucketCoins() {
-        List<Coin> coins = currentState.getBucketCoins();
-        if(coins != null) {
-            this.collectedCoins = coins;
-        }
-        return this.collectedCoins;
+    public CoinCollection getBucketCoins() {
+        return session.getBucketCoins();
     }
 
     /**
      * This method is used to check the machine is working as intended.
      *
-     * @return A list containing all the coins that have been collected from the bucket.
+     * @return The number of each coin that has been collected from the bucket.
      */
-    List<Coin> getCollectedCoins() {
-        try{
-            return this.collectedCoins;
-        } catch (Exception e){
-            System.out.println("Collected Coins is null");
-        }
-        return null;
+    CoinCollection getCollectedCoins() {
+        return session.getCollectedCoins();
     }
 
 
@@ -488,13 +876,46 @@ public class VendingMachine {
      * @throws MachineSelectionException Throws error if the code is incorrect and not a code of a product.
      */
     int getStock(String code) throws MachineSelectionException {
+        beginTransaction();
         try {
-            Product product = Product.getProducts(code);
-            int stockLevel = getProductStock().get(product);
-            System.out.println("Their are "+ stockLevel + " remaining " + product.toString() + " in the machine!");
+            Product product = catalog.getProduct(code);
+            int stockLevel = getProductStock().getInt(product);
+            eventSink.publish(MachineEventType.STOCK_LEVEL, product, stockLevel);
             return stockLevel;
         } catch (Exception e) {
-            throw new MachineSelectionException("InvalidCode");
+            throw session.reportError(new MachineSelectionException("InvalidCode"));
+        } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     * This method is used to check the current stock level of one of the machine's slots.
+     *
+     * @param slot The slot number, from the machine's slot layout.
+     * @return The number of units in the slot.
+     */
+    public int getSlotLevel(int slot) {
+        beginTransaction();
+        try {
+            return productStock.getSlotLevel(slot);
+        } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     * This method is used to find the slot the machine last vended a product from, such as to turn its spiral.
+     *
+     * @param product A product of the machine's catalog.
+     * @return The slot the last unit of the product was taken from, or -1 if none has been taken.
+     */
+    public int getLastVendedSlot(Product product) {
+        beginTransaction();
+        try {
+            return productStock.getLastSlot(product);
+        } finally {
+            endTransaction();
         }
     }
 
@@ -507,7 +928,7 @@ public class VendingMachine {
      * @throws AdminPrivilegeException Throws an error if the username or password are not correct.
      */
     public void login(String username, String password) throws AdminPrivilegeException{
-        currentState.login(username,password);
+        session.login(username, password);
     }
 
     /**
@@ -516,11 +937,7 @@ public class VendingMachine {
      * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
      */
     public void logout() throws AdminPrivilegeException {
-        if(getCurrentState() == getAdminModeState()) {
-            adminModeState.logout();
-        } else {
-            throw new AdminPrivilegeException("Must be logged in to Admin mode to Logout of Admin Mode!");
-        }
+        session.logout();
     }
 
     /**
@@ -531,12 +948,7 @@ public class VendingMachine {
      * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
      */
     public String printAdminCoinInfo() throws AdminPrivilegeException {
-        if(getCurrentState() == getAdminModeState()){
-            return adminModeState.printAdminCoinInfo();
-        } else {
-            throw new AdminPrivilegeException("Must be logged in to Admin mode to print Vending Machine info!");
-        }
-
+        return session.printAdminCoinInfo();
     }
 
     /**
@@ -546,11 +958,7 @@ public class VendingMachine {
      * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
      */
     public String printAdminProductInfo() throws AdminPrivilegeException {
-        if(getCurrentState() == getAdminModeState()){
-            return adminModeState.printAdminProductInfo();
-        } else {
-            throw new AdminPrivilegeException("Must be logged in to Admin mode to print Vending Machine info!");
-        }
+        return session.printAdminProductInfo();
     }
 
     /**
@@ -559,26 +967,18 @@ public class VendingMachine {
      * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
      */
     public void printAdminInfo() throws AdminPrivilegeException {
-        if(getCurrentState() == getAdminModeState()){
-            adminModeState.printAdminInfo();
-        } else {
-            throw new AdminPrivilegeException("Must be logged in to Admin mode to print Vending Machine info!");
-        }
+        session.printAdminInfo();
     }
 
     /**
      * This method is used by the admin to withdraw all coins from the machine.
      * Throws an error if the user is not in admin mode.
      *
-     * @return A list of all the coins withdrawn from the machine.
+     * @return The number of each coin withdrawn from the machine, which can also be read as a list of the coins.
      * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
      */
-    public List<Coin> withdrawCoins() throws AdminPrivilegeException{
-        if(getCurrentState() == getAdminModeState()) {
-            return adminModeState.withdrawCoins();
-        } else {
-            throw new AdminPrivilegeException("Must be logged in to Admin mode to withdraw coins from the machine!");
-        }
+    public CoinCollection withdrawCoins() throws AdminPrivilegeException{
+        return session.withdrawCoins();
     }
 
     /**
@@ -589,11 +989,7 @@ public class VendingMachine {
      * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
      */
     public void depositCoins(Integer amount) throws AdminPrivilegeException{
-        if(getCurrentState() == getAdminModeState()) {
-            adminModeState.depositCoins(amount);
-        } else {
-            throw new AdminPrivilegeException("Must be logged in to Admin mode to deposit coins into the machine!");
-        }
+        session.depositCoins(amount);
     }
 
     /**
@@ -604,11 +1000,7 @@ public class VendingMachine {
      * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
      */
     public void adminRefillProduct(Product product) throws AdminPrivilegeException {
-        if(getCurrentState() == getAdminModeState()) {
-            adminModeState.adminRefillProduct(product);
-        } else {
-            throw new AdminPrivilegeException("Must be logged in to Admin mode to refill the Vending Machine!");
-        }
+        session.adminRefillProduct(product);
     }
 
     /**
@@ -618,11 +1010,7 @@ public class VendingMachine {
      * @throws AdminPrivilegeException Throws an error if the user is not in admin mode.
      */
     public void adminRefillAllProduct() throws AdminPrivilegeException{
-        if(getCurrentState() == getAdminModeState()) {
-            adminModeState.adminRefillAllProduct();
-        } else {
-            throw new AdminPrivilegeException("Must be logged in to Admin mode to refill the Vending Machine!");
-        }
+        session.adminRefillAllProduct();
     }
 
 }
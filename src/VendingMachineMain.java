@@ -54,6 +54,7 @@ public class VendingMachineMain {
         vend.getStock("0003");
         vend.purchaseItem();
         vend.getStock("0003");
+        vend.getEventSink().flush();
         System.out.println("Collect Change = " + vend.getCollectedCoins());
         System.out.println("Collect Item = " + vend.getCollectedProducts());
 
@@ -1,8 +1,26 @@
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import static org.junit.Assert.*;
 
@@ -11,8 +29,6 @@ import static org.junit.Assert.*;
  */
 public class VendingMachineTest {
 
-    private static final double DELTA = 1e-15;
-
     @Test
     public void selectItem() {
         VendingMachine vend = new VendingMachine(20,10,10);
@@ -150,7 +166,7 @@ public class VendingMachineTest {
         vend.insertCoin(Coin.FIFTY_PENCE, 2);
         vend.insertCoin(Coin.TWO_PENCE, 2);
         vend.insertCoin(Coin.ONE_PENCE, 4);
-        assertEquals(vend.getCoinStockTotal(), 42.88, DELTA);
+        assertEquals(vend.getCoinStockTotal(), Money.ofPence(4288));
     }
 
     @Test
@@ -161,32 +177,85 @@ public class VendingMachineTest {
         vend.insertCoin(Coin.FIFTY_PENCE, 2);
         vend.insertCoin(Coin.TWO_PENCE, 2);
         vend.insertCoin(Coin.ONE_PENCE, 4);
-        assertEquals(vend.getInsertedCoinStockTotal(), 4.08, DELTA);
+        assertEquals(vend.getInsertedCoinStockTotal(), Money.ofPence(408));
     }
 
     @Test
     public void getRefundCoinStockTotal() {
         VendingMachine vend = new VendingMachine(20,10,10);
         vend.getRefundCoinStock().setStock(2);
-        assertEquals(vend.getRefundCoinStockTotal(), 7.76, DELTA);
+        assertEquals(vend.getRefundCoinStockTotal(), Money.ofPence(776));
     }
 
     @Test
     public void getCoinBucketTotal() {
         VendingMachine vend = new VendingMachine(20,10,10);
-        assertEquals(vend.getCoinBucketTotal(), 0, DELTA);
+        assertEquals(vend.getCoinBucketTotal(), Money.ZERO);
         vend.getRefundCoinStock().setStock(2);
         vend.setCoinBucket();
-        assertEquals(vend.getCoinBucketTotal(), 7.76, DELTA);
+        assertEquals(vend.getCoinBucketTotal(), Money.ofPence(776));
     }
 
     @Test
     public void setCoinBucket() {
         VendingMachine vend = new VendingMachine(20,10,10);
-        assertEquals(vend.getCoinBucketTotal(), 0, DELTA);
+        assertEquals(vend.getCoinBucketTotal(), Money.ZERO);
         vend.getRefundCoinStock().setStock(2);
         vend.setCoinBucket();
-        assertEquals(vend.getCoinBucketTotal(), 7.76, DELTA);
+        assertEquals(vend.getCoinBucketTotal(), Money.ofPence(776));
+    }
+
+    @Test
+    public void moneyIsExact() {
+        Money tenPence = Coin.TEN_PENCE.getMoneyValue();
+        Money twentyPence = Coin.TWENTY_PENCE.getMoneyValue();
+        assertEquals(tenPence.plus(twentyPence), Money.ofPence(30));
+        assertEquals(Money.ofPence(408).minus(Money.ofPence(200)), Money.ofPence(208));
+        assertEquals(Money.ofPence(408).toString(), "4.08");
+        assertEquals(Money.ofPence(200).toString(), "2.00");
+        assertEquals(Money.ofPence(123456).toString(), "1234.56");
+    }
+
+    @Test
+    public void stockRejectsKeysOfAnotherType() {
+        VendingMachine vend = new VendingMachine(20,10,10);
+        try {
+            vend.getProductStock().put(Coin.ONE_POUND, 5);
+            fail();
+        } catch (ClassCastException e) {
+            assertEquals(vend.getProductStock().getInt(Product.SPRITE), 10);
+        }
+        try {
+            vend.getCoinStock().getInt(Product.COKE);
+            fail();
+        } catch (ClassCastException e) {
+            assertEquals(vend.getCoinStock().getInt(Coin.TWO_POUND), 10);
+        }
+    }
+
+    @Test
+    public void coinStockRunningTotals() {
+        CoinStock.setConsistencyCheck(true);
+        try {
+            VendingMachine vend = new VendingMachine(20,10,10);
+            assertEquals(vend.getCoinStock().getCoinCount(), 80);
+            vend.selectItem("0001");
+            vend.insertCoin(Coin.ONE_POUND, 3);
+            vend.insertCoin(Coin.TWO_PENCE, 2);
+            assertEquals(vend.getInsertedCoinStock().getCoinCount(), 5);
+            assertEquals(vend.getInsertedCoinStockTotal(), Money.ofPence(304));
+            assertEquals(vend.getCoinStockTotal(), Money.ofPence(4184));
+            vend.requestRefund();
+            assertEquals(vend.getCoinStockTotal(), Money.ofPence(3880));
+            assertEquals(vend.getInsertedCoinStockTotal(), Money.ZERO);
+            assertEquals(vend.getRefundCoinStockTotal(), Money.ZERO);
+            vend.login("OwnerUsername","P4ssw0rd");
+            vend.withdrawCoins();
+            assertEquals(vend.getCoinStock().getCoinCount(), 0);
+            assertEquals(vend.getCoinStockTotal(), Money.ZERO);
+        } finally {
+            CoinStock.setConsistencyCheck(false);
+        }
     }
 
     @Test
@@ -218,7 +287,7 @@ public class VendingMachineTest {
         vend.insertCoin(Coin.FIFTY_PENCE, 2);
         vend.insertCoin(Coin.TWO_PENCE, 2);
         vend.insertCoin(Coin.ONE_PENCE, 4);
-        assertEquals(vend.amountDeposited(), 4.08, DELTA);
+        assertEquals(vend.amountDeposited(), Money.ofPence(408));
         assertEquals(vend.getCurrentState(), vend.getCoinInsertedState());
     }
 
@@ -227,7 +296,7 @@ public class VendingMachineTest {
         VendingMachine vend = new VendingMachine(20,10,10);
         assertEquals(vend.getCurrentState(), vend.getNotSelectedState());
         vend.insertCoin(Coin.ONE_POUND, 3);
-        assertEquals(vend.amountDeposited(), 0, DELTA);
+        assertEquals(vend.amountDeposited(), Money.ZERO);
         assertEquals(vend.getCurrentState(), vend.getNotSelectedState());
     }
 
@@ -237,7 +306,7 @@ public class VendingMachineTest {
         assertEquals(vend.getCurrentState(), vend.getNotSelectedState());
         vend.login("OwnerUsername","P4ssw0rd");
         assertEquals(vend.getCurrentState(), vend.getAdminModeState());
-        double totalMachineMoney = vend.getCoinStockTotal();
+        Money totalMachineMoney = vend.getCoinStockTotal();
         StringBuilder str = new StringBuilder();
         str.append("\n |--------------------------------------");
         str.append("\n | \t Printing Coin Stock information");
@@ -271,8 +340,8 @@ public class VendingMachineTest {
         str1.append("\n |--------------------------------------");
         str1.append("\n | \t Printing Product Stock information");
         str1.append("\n |--------------------------------------");
-        for (Map.Entry<Enum, Integer> entry : vend.getProductStock().entrySet()) {
-            Product product = (Product) entry.getKey();
+        for (Map.Entry<Product, Integer> entry : vend.getProductStock().entrySet()) {
+            Product product = entry.getKey();
             int value = vend.getProductStock().get(product);
             str1.append("\n |\t Product: ").append(product).append(" Amount: ").append(value);
         }
@@ -293,14 +362,14 @@ public class VendingMachineTest {
         VendingMachine vend = new VendingMachine(20,10,10);
         vend.selectItem("0001");
         assertEquals(vend.getCurrentState(), vend.getItemSelectedState());
-        assertEquals(vend.amountDeposited(), 0,DELTA);
+        assertEquals(vend.amountDeposited(), Money.ZERO);
         vend.insertCoin(Coin.ONE_POUND, 3);
         vend.insertCoin(Coin.FIFTY_PENCE, 2);
         vend.insertCoin(Coin.TWO_PENCE, 2);
         vend.insertCoin(Coin.ONE_PENCE, 4);
-        assertEquals(vend.amountDeposited(), 4.08, DELTA);
+        assertEquals(vend.amountDeposited(), Money.ofPence(408));
         vend.requestRefund();
-        assertEquals(vend.amountDeposited(), 0, DELTA);
+        assertEquals(vend.amountDeposited(), Money.ZERO);
     }
 
     @Test
@@ -308,20 +377,20 @@ public class VendingMachineTest {
         VendingMachine vend = new VendingMachine(20,10,10);
         vend.selectItem("0001");
         assertEquals(vend.getCurrentState(), vend.getItemSelectedState());
-        assertEquals(vend.amountDeposited(), 0,DELTA);
+        assertEquals(vend.amountDeposited(), Money.ZERO);
         vend.requestRefund();
-        assertEquals(vend.amountDeposited(), 0,DELTA);
+        assertEquals(vend.amountDeposited(), Money.ZERO);
         assertEquals(vend.getCurrentState(), vend.getItemSelectedState());
         vend.insertCoin(Coin.ONE_POUND, 3);
         vend.insertCoin(Coin.FIFTY_PENCE, 2);
         vend.insertCoin(Coin.TWO_PENCE, 2);
         vend.insertCoin(Coin.ONE_PENCE, 4);
-        assertEquals(vend.amountDeposited(), 4.08, DELTA);
-        assertEquals(vend.getInsertedCoinStockTotal(), 4.08, DELTA);
+        assertEquals(vend.amountDeposited(), Money.ofPence(408));
+        assertEquals(vend.getInsertedCoinStockTotal(), Money.ofPence(408));
         vend.requestRefund();
         assertEquals(vend.getCurrentState(), vend.getNotSelectedState());
-        assertEquals(vend.amountDeposited(), 0, DELTA);
-        assertEquals(vend.getInsertedCoinStockTotal(), 0, DELTA);
+        assertEquals(vend.amountDeposited(), Money.ZERO);
+        assertEquals(vend.getInsertedCoinStockTotal(), Money.ZERO);
 
         //Check Collected Change is correct Change returned is 4.08
         //4.08 change split into the highest change denominations available
@@ -334,6 +403,1045 @@ public class VendingMachineTest {
         assertEquals(testCoins,vend.getCollectedCoins());
     }
 
+    @Test
+    public void changeMakerFindsFewestCoins() {
+        CoinStock coinStock = new CoinStock();
+        ChangeMaker changeMaker = new ChangeMaker(coinStock);
+        coinStock.put(Coin.FIFTY_PENCE, 1);
+        coinStock.put(Coin.TWENTY_PENCE, 3);
+        int[] coinCounts = new int[coinStock.size()];
+
+        //A largest coin first pass would take the 50p and be left needing 10p
+        assertTrue(changeMaker.makeChange(60, coinCounts));
+        assertEquals(coinCounts[Coin.TWENTY_PENCE.ordinal()], 3);
+        assertEquals(coinCounts[Coin.FIFTY_PENCE.ordinal()], 0);
+        assertEquals(coinStock.getInt(Coin.TWENTY_PENCE), 3);
+
+        assertFalse(changeMaker.canMakeChange(30));
+        coinStock.insert(Coin.TEN_PENCE);
+        assertTrue(changeMaker.canMakeChange(30));
+        assertEquals(changeMaker.minimumCoins(80), 3);
+        coinStock.reduce(Coin.FIFTY_PENCE);
+        assertEquals(changeMaker.minimumCoins(70), 4);
+        assertFalse(changeMaker.canMakeChange(80));
+
+        coinStock.put(Coin.TWO_POUND, 10);
+        assertTrue(changeMaker.makeChange(2070, coinCounts));
+        assertEquals(coinCounts[Coin.TWO_POUND.ordinal()], 10);
+        assertEquals(coinCounts[Coin.TWENTY_PENCE.ordinal()], 3);
+        assertEquals(coinCounts[Coin.TEN_PENCE.ordinal()], 1);
+        assertFalse(changeMaker.canMakeChange(2005));
+
+        //Smaller amounts above the table limit reuse the larger table, with the coin stock as it is now
+        assertEquals(changeMaker.minimumCoins(1230), 8);
+        assertEquals(changeMaker.minimumCoins(1240), 8);
+        coinStock.insert(Coin.ONE_PENCE);
+        assertEquals(changeMaker.minimumCoins(2001), 11);
+        assertTrue(changeMaker.makeChange(1231, coinCounts));
+        assertEquals(coinCounts[Coin.TWO_POUND.ordinal()], 6);
+        assertEquals(coinCounts[Coin.ONE_PENCE.ordinal()], 1);
+    }
+
+    @Test
+    public void purchaseItemCannotMakeChange() {
+        VendingMachine vend = new VendingMachine(20,10,0);
+        vend.selectItem("0003");
+        vend.insertCoin(Coin.TWO_POUND, 1);
+        vend.insertCoin(Coin.ONE_POUND, 1);
+        try {
+            vend.purchaseItem();
+            fail("Expected the purchase to fail as the machine cannot give £1.50 change");
+        } catch (MachinePurchaseException e) {
+            assertEquals(vend.getCurrentState(), vend.getCoinInsertedState());
+            assertEquals(vend.getCoinStockTotal(), Money.ofPence(300));
+            assertEquals(vend.getStock("0003"), 10);
+        }
+        vend.requestRefund();
+        assertEquals(vend.getCoinStockTotal(), Money.ZERO);
+    }
+
+    @Test
+    public void getSellableProducts() {
+        VendingMachine vend = new VendingMachine(20,10,0);
+        assertTrue(vend.getSellableProducts(Money.ofPence(150)).contains(Product.WATER));
+        assertFalse(vend.getSellableProducts(Money.ofPence(150)).contains(Product.COKE));
+        assertFalse(vend.canSell(Product.WATER, Money.ofPence(200)));
+        vend.selectItem("0003");
+        vend.insertCoin(Coin.FIFTY_PENCE, 1);
+        vend.insertCoin(Coin.ONE_POUND, 1);
+        assertTrue(vend.canSell(Product.WATER, Money.ofPence(200)));
+        List<Product> expected = new ArrayList<>();
+        for (Product product : vend.getCatalog().getProducts()) {
+            long change = 200 - product.getPrice().getPence();
+            if (change == 0 || change == 50 || change == 100 || change == 150) {
+                expected.add(product);
+            }
+        }
+        assertEquals(vend.getSellableProducts(Money.ofPence(200)), expected);
+        vend.getProductStock().put(Product.COKE, 0);
+        expected.remove(Product.COKE);
+        assertEquals(vend.getSellableProducts(Money.ofPence(200)), expected);
+    }
+
+    @Test
+    public void getSellableProductsFollowsCoinStock() {
+        VendingMachine vend = new VendingMachine(20,10,0);
+        assertFalse(vend.getSellableProducts(Money.ofPence(200)).contains(Product.LEMONADE));
+        vend.getCoinStock().put(Coin.TWENTY_PENCE, 1);
+        vend.getCoinStock().put(Coin.FIVE_PENCE, 1);
+        assertTrue(vend.getSellableProducts(Money.ofPence(200)).contains(Product.LEMONADE));
+        assertFalse(vend.getSellableProducts(Money.ofPence(200)).contains(Product.WATER));
+        vend.getCoinStock().put(Coin.FIFTY_PENCE, 1);
+        assertTrue(vend.getSellableProducts(Money.ofPence(200)).contains(Product.WATER));
+        vend.getCoinStock().put(Coin.FIVE_PENCE, 0);
+        assertFalse(vend.getSellableProducts(Money.ofPence(200)).contains(Product.LEMONADE));
+        assertTrue(vend.getSellableProducts(Money.ofPence(200)).contains(Product.WATER));
+    }
+
+    @Test
+    public void getSellableProductsLeavesOutReservedUnits() {
+        VendingMachine vend = new VendingMachine(20,10,10);
+        vend.getProductStock().put(Product.COKE, 1);
+        assertTrue(vend.canSell(Product.COKE, Money.ofPence(200)));
+        Session remote = vend.openSession();
+        remote.selectItem("0001");
+        assertFalse(vend.canSell(Product.COKE, Money.ofPence(200)));
+        assertFalse(vend.getSellableProducts(Money.ofPence(200)).contains(Product.COKE));
+        assertTrue(vend.getSellableProducts(Money.ofPence(200)).contains(Product.SPRITE));
+        remote.selectItem("0002");
+        assertTrue(vend.getSellableProducts(Money.ofPence(200)).contains(Product.COKE));
+    }
+
+    @Test
+    public void eventSinkDeliversEventsInOrder() {
+        List<MachineEventType> types = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        MachineEventSink sink = new MachineEventSink(event -> {
+            types.add(event.getType());
+            messages.add(event.getMessage());
+        }, 4);
+        VendingMachine vend = new VendingMachine(20,10,10);
+        vend.setEventSink(sink);
+        vend.selectItem("0003");
+        vend.insertCoin(Coin.TWO_POUND, 1);
+        vend.purchaseItem();
+        try {
+            vend.selectItem("0000");
+        } catch (MachineSelectionException e) {
+            assertEquals(e.getMessage(), "ERROR: Code entered is invalid!");
+        }
+        sink.close();
+        assertEquals(types.get(0), MachineEventType.ITEM_SELECTED);
+        assertEquals(messages.get(1), "The currently selected item: Water's price is £1.50");
+        assertEquals(messages.get(2), "You inserted 1 Two pound coins");
+        assertEquals(messages.get(3), "Total money inserted = £2.00");
+        assertTrue(types.contains(MachineEventType.CHANGE_DISPENSED));
+        assertTrue(types.contains(MachineEventType.PRODUCT_VENDED));
+        assertEquals(types.get(types.size() - 1), MachineEventType.ERROR);
+        assertEquals(messages.get(messages.size() - 1), "ERROR: Code entered is invalid!");
+    }
+
+    @Test
+    public void eventSinkCountsListenerErrors() {
+        List<MachineEventType> types = new ArrayList<>();
+        MachineEventSink sink = new MachineEventSink(event -> {
+            if (event.getType() == MachineEventType.BALANCE) {
+                throw new IllegalStateException();
+            }
+            types.add(event.getType());
+        }, 4);
+        VendingMachine vend = new VendingMachine(20,10,10);
+        vend.setEventSink(sink);
+        vend.selectItem("0003");
+        vend.insertCoin(Coin.TWO_POUND, 1);
+        vend.insertCoin(Coin.ONE_POUND, 1);
+        sink.close();
+        assertEquals(sink.getListenerErrors(), 2);
+        assertEquals(types.get(types.size() - 1), MachineEventType.COIN_INSERTED);
+    }
+
+    @Test
+    public void eventSinkNone() {
+        VendingMachine vend = new VendingMachine(20,10,10);
+        vend.setEventSink(MachineEventSink.NONE);
+        assertFalse(vend.getEventSink().isEnabled());
+        vend.selectItem("0003");
+        vend.insertCoin(Coin.TWO_POUND, 1);
+        vend.purchaseItem();
+        vend.getEventSink().flush();
+        assertEquals(vend.getCollectedProducts().get(0), Product.WATER);
+    }
+
+    @Test
+    public void concurrentMachineConservesMoneyAndStock() throws InterruptedException {
+        AtomicIntegerArray vended = new AtomicIntegerArray(Product.values().length);
+        MachineEventSink sink = new MachineEventSink(event -> {
+            if (event.getType() == MachineEventType.PRODUCT_VENDED) {
+                vended.incrementAndGet(((Product) event.getItem()).getId());
+            }
+        }, 256);
+        VendingMachine vend = new VendingMachine(1000,1000,100, true);
+        vend.setEventSink(sink);
+        assertTrue(vend.isConcurrent());
+        Money startingMoney = vend.getCoinStockTotal();
+        String[] codes = {"0001", "0002", "0003", "0004", "1001", "1002", "1003", "1004"};
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            long seed = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 300; i++) {
+                    try {
+                        vend.selectItem(codes[random.nextInt(codes.length)]);
+                        vend.insertCoin(Coin.values()[random.nextInt(Coin.values().length)], 1 + random.nextInt(3));
+                        if (random.nextInt(4) == 0) {
+                            vend.requestRefund();
+                        } else {
+                            vend.purchaseItem();
+                        }
+                        vend.getBucketCoins();
+                        vend.getBucketProducts();
+                    } catch (MachineSelectionException | MachinePurchaseException | MachineStockException e) {
+                        // Another thread changed the selection or state, so this customer's step failed.
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        vend.requestRefund();
+        sink.close();
+
+        long soldPence = 0;
+        int soldCount = 0;
+        for (Product product : Product.values()) {
+            int sold = vended.get(product.getId());
+            assertEquals(vend.getProductStock().getInt(product), 1000 - sold);
+            soldPence = soldPence + product.getPrice().getPence() * sold;
+            soldCount = soldCount + sold;
+        }
+        assertTrue(soldCount > 0);
+        assertEquals(vend.getInsertedCoinStockTotal(), Money.ZERO);
+        assertEquals(vend.getCoinStockTotal(), startingMoney.plus(Money.ofPence(soldPence)));
+    }
+
+    @Test
+    public void sessionsShareStockButNotSelections() {
+        VendingMachine vend = new VendingMachine(20,10,10);
+        Session remote = vend.openSession();
+        vend.selectItem("0001");
+        remote.selectItem("0003");
+        remote.insertCoin(Coin.TWO_POUND, 1);
+        assertEquals(vend.getSelectedItem(), Product.COKE);
+        assertEquals(vend.getCurrentState(), vend.getItemSelectedState());
+        assertEquals(vend.getInsertedCoinStockTotal(), Money.ZERO);
+        remote.purchaseItem();
+        assertEquals(remote.getCollectedProducts().get(0), Product.WATER);
+        assertEquals(vend.getProductStock().getInt(Product.WATER), 9);
+        assertEquals(vend.getCoinStockTotal(), Money.ofPence(3880 + 150));
+        assertEquals(remote.getCurrentState(), remote.getNotSelectedState());
+        assertEquals(vend.getCurrentState(), vend.getItemSelectedState());
+    }
+
+    @Test
+    public void concurrentSessionsConserveMoneyAndStock() throws InterruptedException {
+        VendingMachine vend = new VendingMachine(1000,1000,1000, true);
+        vend.setEventSink(MachineEventSink.NONE);
+        Money startingMoney = vend.getCoinStockTotal();
+        String[] codes = {"0001", "0002", "0003", "0004", "1001", "1002", "1004"};
+        int purchases = 100;
+        Thread[] threads = new Thread[8];
+        int[][] sold = new int[threads.length][Product.values().length];
+        int[] completed = new int[threads.length];
+        for (int t = 0; t < threads.length; t++) {
+            int customer = t;
+            Session session = vend.openSession();
+            threads[t] = new Thread(() -> {
+                Random random = new Random(customer);
+                for (int i = 0; i < purchases; i++) {
+                    String code = codes[random.nextInt(codes.length)];
+                    session.selectItem(code);
+                    session.insertCoin(Coin.TWO_POUND, 1);
+                    session.purchaseItem();
+                    session.getBucketProducts();
+                    sold[customer][Product.getProducts(code).getId()]++;
+                    completed[customer]++;
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+            assertEquals(completed[t], purchases);
+        }
+
+        long soldPence = 0;
+        for (Product product : Product.values()) {
+            int soldCount = 0;
+            for (int[] customerSold : sold) {
+                soldCount = soldCount + customerSold[product.getId()];
+            }
+            assertEquals(vend.getProductStock().getInt(product), 1000 - soldCount);
+            soldPence = soldPence + product.getPrice().getPence() * soldCount;
+        }
+        assertEquals(vend.getCoinStockTotal(), startingMoney.plus(Money.ofPence(soldPence)));
+    }
+
+    @Test
+    public void selectedProductIsReservedForTheSession() {
+        VendingMachine vend = new VendingMachine(20,1,10);
+        vend.setEventSink(MachineEventSink.NONE);
+        Session remote = vend.openSession();
+        vend.selectItem("0001");
+        assertEquals(vend.getReservations().getUnreserved(Product.COKE), 0);
+        remote.selectItem("0001");
+        remote.insertCoin(Coin.TWO_POUND, 1);
+        try {
+            remote.purchaseItem();
+            fail();
+        } catch (MachinePurchaseException e) {
+            assertEquals(vend.getProductStock().getInt(Product.COKE), 1);
+        }
+        vend.insertCoin(Coin.TWO_POUND, 1);
+        vend.purchaseItem();
+        assertEquals(vend.getBucketProducts().get(0), Product.COKE);
+        assertEquals(vend.getProductStock().getInt(Product.COKE), 0);
+        vend.selectItem("0002");
+        vend.selectItem("0003");
+        assertEquals(vend.getReservations().getUnreserved(Product.SPRITE), 1);
+        assertEquals(vend.getReservations().getUnreserved(Product.WATER), 0);
+    }
+
+    @Test
+    public void idleReservationExpires() throws InterruptedException {
+        VendingMachine vend = new VendingMachine(20,1,10);
+        vend.setEventSink(MachineEventSink.NONE);
+        vend.setReservationTimeout(1);
+        Session remote = vend.openSession();
+        vend.selectItem("0001");
+        assertEquals(vend.getReservations().getUnreserved(Product.COKE), 0);
+        Thread.sleep(50);
+        remote.selectItem("0001");
+        remote.insertCoin(Coin.TWO_POUND, 1);
+        remote.purchaseItem();
+        assertEquals(remote.getBucketProducts().get(0), Product.COKE);
+        vend.insertCoin(Coin.TWO_POUND, 1);
+        try {
+            vend.purchaseItem();
+            fail();
+        } catch (MachinePurchaseException e) {
+            assertEquals(vend.getProductStock().getInt(Product.COKE), 0);
+        }
+    }
+
+    @Test
+    public void productCodesLookUpProductsAndPrices() {
+        for (Product product : Product.values()) {
+            assertEquals(Product.getProducts(product.getCode()), product);
+            assertSame(Product.getPrice(product.getCode()), product.getPrice());
+        }
+        assertNull(Product.getProducts("0005"));
+        assertNull(Product.getProducts("001"));
+        assertNull(Product.getProducts("00a1"));
+        assertNull(Product.getProducts(null));
+        assertEquals(Product.getPrice("9999"), Money.ZERO);
+    }
+
+    @Test
+    public void machineSellsProductsOfALoadedCatalog() throws IOException {
+        ProductCatalog catalog = ProductCatalog.read(new StringReader(
+                "code,name,price,capacity\n"
+                + "# Office pantry\n"
+                + "20001,Flapjack,120,5\n"
+                + "20002,Orange juice,230\n"));
+        assertEquals(catalog.size(), 2);
+        Product flapjack = catalog.getProduct("20001");
+        assertEquals(flapjack.getId(), 0);
+        assertEquals(flapjack.toString(), "Flapjack");
+        assertEquals(catalog.getPrice("20002"), Money.ofPence(230));
+        assertNull(catalog.getProduct("0001"));
+
+        VendingMachine vend = new VendingMachine(catalog, 20, 10, 10, false);
+        assertEquals(vend.getProductStock().getInt(flapjack), 5);
+        assertEquals(vend.getProductStock().getInt(catalog.getProduct("20002")), 10);
+        vend.selectItem("20001");
+        vend.insertCoin(Coin.TWO_POUND, 1);
+        vend.purchaseItem();
+        assertEquals(vend.getCollectedProducts().get(0), flapjack);
+        assertEquals(vend.getCollectedCoins().size(), 3);
+        vend.login("OwnerUsername","P4ssw0rd");
+        vend.adminRefillAllProduct();
+        assertEquals(vend.getStock("20001"), 5);
+        assertEquals(vend.getStock("20002"), 20);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void catalogRejectsDuplicateCodes() throws IOException {
+        ProductCatalog.read(new StringReader("0001,Coke,200\n0001,Pepsi,190\n"));
+    }
+
+    @Test
+    public void mappedInventoryRestoresStockAfterRestart() throws IOException {
+        Path file = Files.createTempFile("inventory", ".bin");
+        Files.delete(file);
+        try {
+            try (MappedInventory inventory = new MappedInventory(file)) {
+                VendingMachine vend = new VendingMachine(ProductCatalog.DEFAULT, 20, 10, 10, false, inventory);
+                vend.selectItem("0003");
+                vend.insertCoin(Coin.TWO_POUND, 1);
+                vend.purchaseItem();
+            }
+            try (MappedInventory inventory = new MappedInventory(file)) {
+                VendingMachine vend = new VendingMachine(ProductCatalog.DEFAULT, 20, 1, 1, false, inventory);
+                assertEquals(vend.getProductStock().getInt(Product.WATER), 9);
+                assertEquals(vend.getProductStock().getInt(Product.COKE), 10);
+                assertEquals(vend.getCoinStockTotal(), Money.ofPence(3880 + 150));
+                vend.selectItem("0001");
+                vend.insertCoin(Coin.TWO_POUND, 1);
+                vend.purchaseItem();
+            }
+            try (MappedInventory inventory = new MappedInventory(file)) {
+                VendingMachine vend = new VendingMachine(ProductCatalog.DEFAULT, 20, 1, 1, false, inventory);
+                assertEquals(vend.getProductStock().getInt(Product.COKE), 9);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(expected = MachineInitialisationError.class)
+    public void mappedInventoryRejectsAnotherCatalog() throws IOException {
+        Path file = Files.createTempFile("inventory", ".bin");
+        Files.delete(file);
+        try {
+            try (MappedInventory inventory = new MappedInventory(file)) {
+                new VendingMachine(ProductCatalog.DEFAULT, 20, 10, 10, false, inventory);
+            }
+            try (MappedInventory inventory = new MappedInventory(file)) {
+                ProductCatalog catalog = ProductCatalog.read(new StringReader("0001,Coke,200\n"));
+                new VendingMachine(catalog, 20, 10, 10, false, inventory);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void transactionLogReplaysStockAfterRestart() throws IOException {
+        Path file = Files.createTempFile("transactions", ".log");
+        Files.delete(file);
+        try {
+            Map<Coin, Integer> coinLevels = new EnumMap<>(Coin.class);
+            int[] productLevels = new int[Product.values().length];
+            try (TransactionLog log = new TransactionLog(file)) {
+                VendingMachine vend = new VendingMachine(ProductCatalog.DEFAULT, 20, 10, 10, false, null, log);
+                vend.selectItem("0003");
+                vend.insertCoin(Coin.TWO_POUND, 1);
+                vend.purchaseItem();
+                vend.selectItem("1001");
+                vend.insertCoin(Coin.ONE_POUND, 2);
+                vend.requestRefund();
+                vend.login("OwnerUsername","P4ssw0rd");
+                vend.depositCoins(3);
+                vend.adminRefillProduct(Product.WATER);
+                assertTrue(log.getDurableSequence() > 0);
+                for (Map.Entry<Coin, Integer> entry : vend.getCoinStock().entrySet()) {
+                    coinLevels.put(entry.getKey(), entry.getValue());
+                }
+                for (Product product : Product.values()) {
+                    productLevels[product.getId()] = vend.getProductStock().getInt(product);
+                }
+            }
+            try (TransactionLog log = new TransactionLog(file)) {
+                VendingMachine vend = new VendingMachine(ProductCatalog.DEFAULT, 20, 1, 1, false, null, log);
+                for (Map.Entry<Coin, Integer> entry : vend.getCoinStock().entrySet()) {
+                    assertEquals(entry.getValue(), coinLevels.get(entry.getKey()));
+                }
+                for (Product product : Product.values()) {
+                    assertEquals(vend.getProductStock().getInt(product), productLevels[product.getId()]);
+                }
+                assertEquals(vend.getProductStock().getInt(Product.WATER), 20);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void transactionLogDropsRecordsAfterTornBatch() throws IOException {
+        Path file = Files.createTempFile("transactions", ".log");
+        Files.delete(file);
+        try {
+            try (TransactionLog log = new TransactionLog(file)) {
+                VendingMachine vend = new VendingMachine(ProductCatalog.DEFAULT, 20, 10, 10, false, null, log);
+                for (int i = 0; i < 5; i++) {
+                    vend.selectItem("0003");
+                    vend.insertCoin(Coin.TWO_POUND, 1);
+                    vend.purchaseItem();
+                    vend.getBucketProducts();
+                    vend.getBucketCoins();
+                }
+            }
+            int torn = 20;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(TransactionLog.RECORD_BYTES), (long) torn * TransactionLog.RECORD_BYTES);
+            }
+            int water;
+            long sequence;
+            try (TransactionLog log = new TransactionLog(file)) {
+                VendingMachine vend = new VendingMachine(ProductCatalog.DEFAULT, 20, 1, 1, false, null, log);
+                assertEquals(log.getDurableSequence(), torn);
+                vend.getProductStock().put(Product.COKE, 3);
+                water = vend.getProductStock().getInt(Product.WATER);
+                log.commit();
+                sequence = log.getDurableSequence();
+            }
+            MachineSnapshot snapshot = TransactionLog.rebuild(file);
+            assertEquals(snapshot.getSequence(), sequence);
+            assertEquals(snapshot.getProductLevel(Product.COKE), 3);
+            assertEquals(snapshot.getProductLevel(Product.WATER), water);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(TransactionLog.snapshotFileOf(file));
+        }
+    }
+
+    @Test
+    public void transactionLogWritesSessionOfEachOperation() throws IOException {
+        Path file = Files.createTempFile("transactions", ".log");
+        Files.delete(file);
+        try {
+            int sessionId;
+            try (TransactionLog log = new TransactionLog(file)) {
+                VendingMachine vend = new VendingMachine(ProductCatalog.DEFAULT, 20, 10, 10, true, null, log);
+                Session remote = vend.openSession();
+                sessionId = remote.getId();
+                assertNotEquals(sessionId, vend.getSession().getId());
+                remote.insertCoin(Coin.ONE_POUND, 1);
+            }
+            ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(file));
+            int operations = 0;
+            for (int start = 0; start + TransactionLog.RECORD_BYTES <= records.limit(); start += TransactionLog.RECORD_BYTES) {
+                if (records.get(start + 8) == 2) {
+                    assertEquals(records.get(start + 9), TransactionLog.Operation.INSERT_COIN.ordinal());
+                    assertEquals(records.getInt(start + 12), sessionId);
+                    assertEquals(records.getInt(start + 16), Coin.ONE_POUND.getId());
+                    operations++;
+                }
+            }
+            assertEquals(operations, 1);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void transactionLogRecoversFromSnapshotAndRebuildsInParallel() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try {
+            int[][] productLevels = new int[3][];
+            for (int m = 0; m < 3; m++) {
+                Path file = Files.createTempFile("transactions", ".log");
+                Files.delete(file);
+                files.add(file);
+                try (TransactionLog log = new TransactionLog(file, 16)) {
+                    VendingMachine vend = new VendingMachine(ProductCatalog.DEFAULT, 20, 10, 10, false, null, log);
+                    for (int i = 0; i <= m * 2; i++) {
+                        vend.selectItem("0003");
+                        vend.insertCoin(Coin.TWO_POUND, 1);
+                        vend.purchaseItem();
+                    }
+                    vend.selectItem("1001");
+                    assertTrue(log.getSnapshotSequence() > 0);
+                    assertTrue(Files.exists(TransactionLog.snapshotFileOf(file)));
+                    productLevels[m] = new int[Product.values().length];
+                    for (Product product : Product.values()) {
+                        productLevels[m][product.getId()] = vend.getProductStock().getInt(product);
+                    }
+                }
+            }
+
+            try (TransactionLog log = new TransactionLog(files.get(2), 16)) {
+                VendingMachine vend = new VendingMachine(ProductCatalog.DEFAULT, 20, 1, 1, false, null, log);
+                assertEquals(vend.getProductStock().getInt(Product.WATER), productLevels[2][Product.WATER.getId()]);
+                vend.selectItem("0003");
+                vend.insertCoin(Coin.TWO_POUND, 1);
+                vend.purchaseItem();
+                productLevels[2][Product.WATER.getId()]--;
+
+                Session remote = vend.openSession();
+                remote.selectItem("0001");
+                try {
+                    remote.close();
+                    fail();
+                } catch (MachinePurchaseException e) {
+                    assertEquals(e.getErrorType(), "close");
+                }
+                try {
+                    vend.getSession().close();
+                    fail();
+                } catch (MachinePurchaseException e) {
+                    assertEquals(e.getErrorType(), "close");
+                }
+                for (int i = 0; i < 40; i++) {
+                    vend.openSession().close();
+                }
+            }
+
+            MachineSnapshot[] snapshots = TransactionLog.rebuildAll(files, new ForkJoinPool(2));
+            for (int m = 0; m < 3; m++) {
+                assertArrayEquals(snapshots[m].getProductLevels(), productLevels[m]);
+                assertEquals(snapshots[m].getFingerprint(), ProductCatalog.DEFAULT.fingerprint());
+            }
+            assertEquals(snapshots[0].getSessionState(0), MachineStateType.ITEM_SELECTED);
+            assertEquals(snapshots[2].getSessionState(0), MachineStateType.NOT_SELECTED);
+            assertEquals(snapshots[2].getSessionState(1), MachineStateType.ITEM_SELECTED);
+            assertEquals(snapshots[2].getSessionState(2), null);
+            assertEquals(snapshots[2].getSessionStates().size(), 2);
+            assertEquals(snapshots[2].getProductLevel(Product.WATER), 10 - 6);
+        } finally {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+                Files.deleteIfExists(TransactionLog.snapshotFileOf(file));
+            }
+        }
+    }
+
+    @Test
+    public void metricsRecordLatenciesSalesCoinsAndErrors() {
+        VendingMachine vend = new VendingMachine(20,10,10);
+        vend.setEventSink(MachineEventSink.NONE);
+        vend.selectItem("0001");
+        vend.insertCoin(Coin.ONE_POUND, 1);
+        try {
+            vend.purchaseItem();
+            fail();
+        } catch (MachinePurchaseException e) {
+            assertEquals(e.getErrorType(), "money");
+        }
+        vend.insertCoin(Coin.FIFTY_PENCE, 2);
+        vend.purchaseItem();
+        vend.getBucketProducts();
+        for (int i = 0; i < 2; i++) {
+            try {
+                vend.selectItem("0000");
+                fail();
+            } catch (MachineSelectionException e) {
+                assertEquals(e.getErrorType(), "InvalidCode");
+            }
+        }
+
+        MetricsSnapshot metrics = vend.getMetrics().snapshot();
+        assertEquals(metrics.getCount(MachineMetrics.Operation.PURCHASE_ITEM), 2);
+        assertEquals(metrics.getCount(MachineMetrics.Operation.INSERT_COIN), 2);
+        assertEquals(metrics.getCount(MachineMetrics.Operation.REQUEST_REFUND), 0);
+        assertTrue(metrics.getLatency(MachineMetrics.Operation.PURCHASE_ITEM, 0.99) > 0);
+        assertTrue(metrics.getMaxLatency(MachineMetrics.Operation.PURCHASE_ITEM) >= metrics.getLatency(MachineMetrics.Operation.PURCHASE_ITEM, 0.5));
+        assertEquals(metrics.getSales(Product.COKE), 1);
+        assertEquals(metrics.getSales(Product.WATER), 0);
+        assertEquals(metrics.getCoinsAccepted(Coin.ONE_POUND), 1);
+        assertEquals(metrics.getCoinsAccepted(Coin.FIFTY_PENCE), 2);
+        assertEquals(metrics.getErrors("MachinePurchaseException(money)"), 1);
+        assertEquals(metrics.getErrors("MachineSelectionException(InvalidCode)"), 2);
+        assertEquals(metrics.getErrors().size(), 2);
+    }
+
+    @Test
+    public void basketIsSoldInOneTransaction() {
+        VendingMachine vend = new VendingMachine(20,2,10);
+        Map<Product, Integer> basket = new HashMap<>();
+        basket.put(Product.COKE, 2);
+        basket.put(Product.WATER, 1);
+        Map<Coin, Integer> payment = new EnumMap<>(Coin.class);
+        payment.put(Coin.TWO_POUND, 3);
+        long price = Product.COKE.getPrice().getPence() * 2 + Product.WATER.getPrice().getPence();
+        Money coinsBefore = vend.getCoinStockTotal();
+
+        vend.purchaseBasket(basket, payment);
+        assertEquals(vend.getProductStock().getInt(Product.COKE), 0);
+        assertEquals(vend.getProductStock().getInt(Product.WATER), 1);
+        assertEquals(vend.getCoinStockTotal(), coinsBefore.plus(Money.ofPence(price)));
+        List<Product> collected = vend.getCollectedProducts();
+        assertEquals(collected.size(), 3);
+        assertEquals(Collections.frequency(collected, Product.COKE), 2);
+        assertEquals(Collections.frequency(collected, Product.WATER), 1);
+        long change = 0;
+        for (Coin coin : vend.getCollectedCoins()) {
+            change = change + coin.getPence();
+        }
+        assertEquals(change, 600 - price);
+        assertEquals(vend.getCurrentState(), vend.getNotSelectedState());
+        assertEquals(vend.getMetrics().snapshot().getSales(Product.COKE), 2);
+
+        Money coinsAfter = vend.getCoinStockTotal();
+        basket.put(Product.WATER, 2);
+        payment.put(Coin.ONE_POUND, 1);
+        try {
+            vend.purchaseBasket(basket, payment);
+            fail();
+        } catch (MachinePurchaseException e) {
+            assertEquals(e.getErrorType(), "stock");
+        }
+        basket.remove(Product.COKE);
+        basket.put(Product.WATER, 1);
+        payment.clear();
+        payment.put(Coin.FIFTY_PENCE, 1);
+        try {
+            vend.purchaseBasket(basket, payment);
+            fail();
+        } catch (MachinePurchaseException e) {
+            assertEquals(e.getErrorType(), "money");
+        }
+        assertEquals(vend.getProductStock().getInt(Product.WATER), 1);
+        assertEquals(vend.getCoinStockTotal(), coinsAfter);
+
+        Map<Coin, Integer> unknownCoin = new HashMap<>();
+        unknownCoin.put(null, 1);
+        try {
+            vend.purchaseBasket(basket, unknownCoin);
+            fail();
+        } catch (MachineStockException e) {
+            assertEquals(e.getErrorType(), "Coin amount");
+        }
+        assertEquals(vend.getCoinStockTotal(), coinsAfter);
+
+        Map<Product, Integer> overflowing = new HashMap<>();
+        overflowing.put(Product.WATER, Integer.MAX_VALUE);
+        overflowing.put(Product.CRISPS, Integer.MAX_VALUE);
+        overflowing.put(Product.PEANUTS, 3);
+        try {
+            vend.purchaseBasket(overflowing, payment);
+            fail();
+        } catch (MachinePurchaseException e) {
+            assertEquals(e.getErrorType(), "basket");
+        }
+        assertEquals(vend.getProductStock().getInt(Product.WATER), 1);
+        assertEquals(vend.getCoinStockTotal(), coinsAfter);
+    }
+
+    @Test
+    public void coinBurstIsInsertedInOnePass() {
+        VendingMachine vend = new VendingMachine(20,10,10);
+        int[] burst = new int[Coin.values().length];
+        burst[Coin.FIFTY_PENCE.getId()] = 3;
+        burst[Coin.TEN_PENCE.getId()] = 5;
+        Money coinsBefore = vend.getCoinStockTotal();
+
+        vend.insertCoins(burst);
+        assertEquals(vend.getCurrentState(), vend.getNotSelectedState());
+        assertEquals(vend.getCoinStockTotal(), coinsBefore);
+
+        vend.selectItem("0001");
+        vend.insertCoins(burst);
+        assertEquals(vend.getCurrentState(), vend.getCoinInsertedState());
+        assertEquals(vend.amountDeposited(), Money.ofPence(200));
+        assertEquals(vend.getCoinStockTotal(), coinsBefore.plus(Money.ofPence(200)));
+        assertEquals(vend.getMetrics().snapshot().getCoinsAccepted(Coin.TEN_PENCE), 5);
+
+        burst[Coin.TEN_PENCE.getId()] = -1;
+        try {
+            vend.insertCoins(burst);
+            fail();
+        } catch (MachineStockException e) {
+            assertEquals(e.getErrorType(), "Coin amount");
+        }
+        assertEquals(vend.amountDeposited(), Money.ofPence(200));
+        vend.purchaseItem();
+        assertEquals(vend.getProductStock().getInt(Product.COKE), 9);
+    }
+
+    @Test
+    public void coinBurstPublishesOneEvent() {
+        List<MachineEventType> types = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        MachineEventSink sink = new MachineEventSink(event -> {
+            types.add(event.getType());
+            messages.add(event.getMessage());
+        }, 16);
+        VendingMachine vend = new VendingMachine(20,10,10);
+        int[] burst = new int[Coin.values().length];
+        burst[Coin.FIFTY_PENCE.getId()] = 3;
+        burst[Coin.TEN_PENCE.getId()] = 5;
+        vend.selectItem("0001");
+        vend.setEventSink(sink);
+        vend.insertCoins(burst);
+        sink.close();
+        assertEquals(types, List.of(MachineEventType.COINS_INSERTED, MachineEventType.BALANCE));
+        assertEquals(messages.get(0), "You inserted 8 coins worth £2.00");
+
+        Money coinsBefore = vend.getCoinStockTotal();
+        burst[Coin.FIFTY_PENCE.getId()] = Integer.MAX_VALUE;
+        try {
+            vend.insertCoins(burst);
+            fail();
+        } catch (MachineStockException e) {
+            assertEquals(e.getErrorType(), "Coin amount");
+        }
+        assertEquals(vend.getCoinStockTotal(), coinsBefore);
+    }
+
+    @Test
+    public void withdrawnCoinsAreCountedByDenomination() {
+        VendingMachine vend = new VendingMachine(20,10,1000);
+        Money total = vend.getCoinStockTotal();
+        vend.login("OwnerUsername","P4ssw0rd");
+        CoinCollection withdrawn = vend.withdrawCoins();
+        assertEquals(withdrawn.getTotal(), total);
+        assertEquals(withdrawn.getCount(Coin.TWO_POUND), 1000);
+        assertEquals(withdrawn.size(), 1000 * Coin.values().length);
+        assertEquals(withdrawn.get(0), Coin.TWO_POUND);
+        assertEquals(withdrawn.get(1000), Coin.ONE_POUND);
+        assertEquals(withdrawn.get(withdrawn.size() - 1), Coin.ONE_PENCE);
+        assertEquals(vend.getCoinStockTotal(), Money.ZERO);
+    }
+
+    @Test
+    public void productsAreVendedFromTheSlotsOfALayout() throws IOException {
+        String slots = "code,capacity\n0001,3\n0003,4\n0001,2\n";
+        SlotLayout layout = SlotLayout.read(ProductCatalog.DEFAULT, new StringReader(slots), SlotLayout.Policy.ROUND_ROBIN);
+        assertEquals(layout.size(), 3);
+        assertEquals(layout.getCapacity(Product.COKE), 5);
+        assertEquals(layout.getCapacity(Product.SPRITE), 0);
+
+        VendingMachine vend = new VendingMachine(ProductCatalog.DEFAULT, 20, 10, 10, false, null, null, layout);
+        assertEquals(vend.getStock("0001"), 5);
+        assertEquals(vend.getStock("0002"), 0);
+        assertEquals(vend.getSlotLevel(0), 3);
+        assertEquals(vend.getSlotLevel(2), 2);
+        int[] vended = new int[4];
+        for (int i = 0; i < vended.length; i++) {
+            vend.selectItem("0001");
+            vend.insertCoin(Coin.TWO_POUND, 1);
+            vend.purchaseItem();
+            vend.getBucketProducts();
+            vended[i] = vend.getLastVendedSlot(Product.COKE);
+        }
+        assertArrayEquals(vended, new int[] {0, 2, 0, 2});
+        assertEquals(vend.getSlotLevel(0), 1);
+        assertEquals(vend.getSlotLevel(2), 0);
+        assertEquals(vend.getStock("0001"), 1);
+        vend.login("OwnerUsername","P4ssw0rd");
+        vend.adminRefillAllProduct();
+        assertEquals(vend.getStock("0001"), 5);
+        assertEquals(vend.getSlotLevel(0), 3);
+        assertEquals(vend.getSlotLevel(2), 2);
+
+        SlotLayout fullestFirst = SlotLayout.read(ProductCatalog.DEFAULT, new StringReader(slots), SlotLayout.Policy.FULLEST_FIRST);
+        ProductStock stock = new ProductStock(ProductCatalog.DEFAULT, fullestFirst);
+        stock.put(Product.COKE, 5);
+        int[] taken = new int[5];
+        for (int i = 0; i < taken.length; i++) {
+            stock.reduce(Product.COKE);
+            taken[i] = stock.getLastSlot(Product.COKE);
+        }
+        assertArrayEquals(taken, new int[] {0, 2, 0, 2, 0});
+        assertEquals(stock.getInt(Product.COKE), 0);
+    }
+
+    @Test(expected = MachineInitialisationError.class)
+    public void slotLayoutMustBeForTheMachineCatalog() throws IOException {
+        ProductCatalog catalog = ProductCatalog.read(new StringReader("0001,Coke,200\n"));
+        SlotLayout layout = SlotLayout.perProduct(ProductCatalog.DEFAULT, 20);
+        new VendingMachine(catalog, 20, 10, 10, false, null, null, layout);
+    }
+
+    @Test
+    public void lowStockIsNotifiedOnceAndRestockIsPlanned() {
+        VendingMachine vend = new VendingMachine(20,4,30);
+        List<String> notified = new ArrayList<>();
+        vend.addLowStockListener(new LowStockListener() {
+            @Override
+            public void stockLow(Item item, int level, int watermark) {
+                notified.add("low " + item + " " + level);
+            }
+
+            @Override
+            public void stockRestored(Item item, int level, int watermark) {
+                notified.add("restored " + item + " " + level);
+            }
+        });
+        vend.setLowWatermark(Product.COKE, 3);
+        vend.setLowWatermark(Coin.FIFTY_PENCE, 25);
+        for (int i = 0; i < 3; i++) {
+            vend.selectItem("0001");
+            vend.insertCoin(Coin.TWO_POUND, 1);
+            vend.purchaseItem();
+            vend.getBucketProducts();
+        }
+        assertEquals(notified, List.of("low Coke 2"));
+        assertTrue(vend.getProductStock().isLow(Product.COKE));
+
+        RestockPlanner planner = new RestockPlanner(0);
+        RestockManifest manifest = planner.plan(vend);
+        assertEquals(manifest.getUnits(Product.COKE), 2);
+        assertEquals(manifest.getUnits(Product.WATER), 0);
+        assertEquals(manifest.getRolls(Coin.FIFTY_PENCE), 0);
+        vend.getCoinStock().put(Coin.FIFTY_PENCE, 1);
+        vend.getCoinStock().put(Coin.ONE_PENCE, 0);
+        manifest = planner.plan(vend);
+        assertEquals(manifest.getRolls(Coin.FIFTY_PENCE), 2);
+        assertEquals(manifest.getCoins(Coin.FIFTY_PENCE), 40);
+        assertEquals(manifest.getRolls(Coin.ONE_PENCE), 1);
+        assertEquals(notified, List.of("low Coke 2", "low Fifty pence 1"));
+
+        assertEquals(new RestockPlanner(Long.MAX_VALUE / 2).plan(vend).getUnits(Product.COKE), 19);
+        vend.login("OwnerUsername","P4ssw0rd");
+        vend.adminRefillProduct(Product.COKE);
+        assertEquals(notified.get(2), "restored Coke 20");
+        assertEquals(new RestockPlanner(Long.MAX_VALUE / 2).plan(vend).getUnits(Product.COKE), 0);
+
+        List<VendingMachine> route = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            VendingMachine machine = new VendingMachine(20,10,10);
+            machine.setLowWatermark(Product.WATER, 15);
+            route.add(machine);
+        }
+        RestockManifest[] manifests = planner.planRoute(route, ForkJoinPool.commonPool());
+        assertEquals(manifests.length, 100);
+        RestockManifest load = RestockManifest.total(manifests);
+        assertEquals(load.getUnits(Product.WATER), 500);
+        assertEquals(load.getTotalUnits(), 500);
+        assertTrue(load.getTotalChange().isZero());
+    }
+
+    @Test
+    public void salesVelocityCountsSalesInSlidingWindows() {
+        long second = 1_000_000_000L;
+        SalesVelocity velocity = new SalesVelocity(ProductCatalog.DEFAULT, 0);
+        velocity.recordSale(Product.COKE, 2, 10 * second);
+        velocity.recordSale(Product.COKE, 1, 50 * second);
+        velocity.recordSale(Product.WATER, 4, 50 * second);
+        assertEquals(velocity.getSales(Product.COKE, SalesVelocity.Window.MINUTE, 55 * second), 3);
+        assertEquals(velocity.getSales(Product.COKE, SalesVelocity.Window.MINUTE, 95 * second), 1);
+        assertEquals(velocity.getSales(Product.COKE, SalesVelocity.Window.MINUTE, 200 * second), 0);
+        assertEquals(velocity.getSales(Product.COKE, SalesVelocity.Window.HOUR, 200 * second), 3);
+        assertEquals(velocity.getSales(Product.WATER, SalesVelocity.Window.DAY, 200 * second), 4);
+        assertEquals(velocity.getSalesPerHour(Product.COKE, SalesVelocity.Window.HOUR, 360 * second), 30.0, 0.001);
+
+        velocity.recordSale(Product.COKE, 5, 3_700 * second);
+        assertEquals(velocity.getSales(Product.COKE, SalesVelocity.Window.HOUR, 3_700 * second), 5);
+        assertEquals(velocity.getSales(Product.COKE, SalesVelocity.Window.DAY, 3_700 * second), 8);
+        velocity.recordSale(Product.COKE, 1, 20 * second);
+        assertEquals(velocity.getSales(Product.COKE, SalesVelocity.Window.HOUR, 3_700 * second), 5);
+
+        VendingMachine vend = new VendingMachine(20,10,10);
+        vend.selectItem("0003");
+        vend.insertCoin(Coin.TWO_POUND, 1);
+        vend.purchaseItem();
+        assertEquals(vend.getSalesVelocity().getSales(Product.WATER, SalesVelocity.Window.MINUTE), 1);
+        assertTrue(vend.getSalesPerHour(Product.WATER, SalesVelocity.Window.DAY) > 0);
+        assertEquals(vend.getSalesPerHour(Product.COKE, SalesVelocity.Window.DAY), 0.0, 0.0);
+    }
+
+    @Test
+    public void selectedItemIsChargedThePriceItWasShown() {
+        VendingMachine vend = new VendingMachine(20,3,10);
+        assertEquals(vend.getPrice(Product.COKE), Money.ofPence(200));
+        vend.selectItem("0001");
+        assertEquals(vend.getSelectedItemPrice(), Money.ofPence(200));
+
+        vend.getPricingEngine().setRules(List.of(PricingRule.lowStockSurcharge(Product.COKE, 3, Money.ofPence(50))));
+        assertEquals(vend.getPrice(Product.COKE), Money.ofPence(200));
+        vend.insertCoin(Coin.TWO_POUND, 1);
+        vend.purchaseItem();
+        assertEquals(vend.getCollectedCoins().size(), 0);
+        vend.getBucketProducts();
+
+        assertEquals(vend.getPrice(Product.COKE), Money.ofPence(250));
+        assertFalse(vend.canSell(Product.COKE, Money.ofPence(200)));
+        assertFalse(vend.getSellableProducts(Money.ofPence(200)).contains(Product.COKE));
+        vend.selectItem("0001");
+        assertEquals(vend.getSelectedItemPrice(), Money.ofPence(250));
+        vend.insertCoin(Coin.TWO_POUND, 1);
+        try {
+            vend.purchaseItem();
+            fail();
+        } catch (MachinePurchaseException e) {
+            assertEquals(e.getErrorType(), "money");
+        }
+    }
+
+    @Test
+    public void priceTableIsCompiledAgainWhenATimeWindowChanges() {
+        Instant[] now = {Instant.parse("2024-05-01T11:59:00Z")};
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now[0];
+            }
+        };
+        PricingEngine pricing = new PricingEngine(ProductCatalog.DEFAULT, clock);
+        Map<Product, Integer> mealDeal = new HashMap<>();
+        mealDeal.put(Product.COKE, 1);
+        mealDeal.put(Product.CRISPS, 1);
+        pricing.setRules(List.of(
+                PricingRule.timeWindow(null, LocalTime.of(12, 0), LocalTime.of(14, 0), -20),
+                PricingRule.timeWindow(Product.WATER, LocalTime.of(22, 0), LocalTime.of(2, 0), 10),
+                PricingRule.bundle(mealDeal, Money.ofPence(50))));
+        PriceTable morning = pricing.getPriceTable();
+        assertEquals(morning.getPrice(Product.COKE, 10), Money.ofPence(200));
+        assertSame(pricing.getPriceTable(), morning);
+
+        now[0] = Instant.parse("2024-05-01T12:30:00Z");
+        PriceTable lunch = pricing.getPriceTable();
+        assertNotSame(lunch, morning);
+        assertEquals(lunch.getPrice(Product.COKE, 10), Money.ofPence(160));
+        assertEquals(morning.getPrice(Product.COKE, 10), Money.ofPence(200));
+
+        now[0] = Instant.parse("2024-05-01T23:00:00Z");
+        assertEquals(pricing.getPriceTable().getPrice(Product.WATER, 10), Money.ofPence(165));
+        assertEquals(pricing.getPriceTable().getPrice(Product.COKE, 10), Money.ofPence(200));
+
+        ProductStock stock = new ProductStock();
+        stock.setStock(10);
+        Map<Product, Integer> basket = new HashMap<>();
+        basket.put(Product.COKE, 2);
+        basket.put(Product.CRISPS, 1);
+        assertEquals(pricing.getPriceTable().getBasketPence(basket, stock), 200 * 2 + 150 - 50);
+        basket.remove(Product.CRISPS);
+        assertEquals(pricing.getPriceTable().getBasketPence(basket, stock), 200 * 2);
+    }
+
+    @Test
+    public void lowStockSurchargesAddUpBelowEachLevel() {
+        PricingEngine pricing = new PricingEngine(ProductCatalog.DEFAULT);
+        pricing.setRules(List.of(
+                PricingRule.lowStockSurcharge(null, 5, Money.ofPence(10)),
+                PricingRule.lowStockSurcharge(Product.COKE, 2, Money.ofPence(30)),
+                PricingRule.lowStockSurcharge(Product.COKE, 5, Money.ofPence(5)),
+                PricingRule.lowStockSurcharge(Product.WATER, Integer.MAX_VALUE, Money.ofPence(20))));
+        PriceTable prices = pricing.getPriceTable();
+        assertEquals(prices.getPrice(Product.COKE, 20), Money.ofPence(200));
+        assertEquals(prices.getPrice(Product.COKE, 5), Money.ofPence(200));
+        assertEquals(prices.getPrice(Product.COKE, 4), Money.ofPence(215));
+        assertEquals(prices.getPrice(Product.COKE, 2), Money.ofPence(215));
+        assertEquals(prices.getPrice(Product.COKE, 1), Money.ofPence(245));
+        assertEquals(prices.getPrice(Product.COKE, 0), Money.ofPence(245));
+        assertEquals(prices.getPrice(Product.SPRITE, 4), Money.ofPence(210));
+        assertEquals(prices.getPrice(Product.WATER, 0), Money.ofPence(180));
+        assertEquals(prices.getPrice(Product.WATER, 1_000_000), Money.ofPence(170));
+        assertEquals(prices.getPrice(Product.WATER, Integer.MAX_VALUE), Money.ofPence(150));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pricingRulesMustBeForTheMachineCatalog() throws IOException {
+        ProductCatalog catalog = ProductCatalog.read(new StringReader("0001,Coke,200\n"));
+        VendingMachine vend = new VendingMachine(catalog, 20, 10, 10, false);
+        vend.getPricingEngine().setRules(List.of(PricingRule.lowStockSurcharge(Product.WATER, 2, Money.ofPence(10))));
+    }
+
     @Test
     public void isMachineEmptyCheck() {
         VendingMachine vend = new VendingMachine(20,0,10);
@@ -342,6 +1450,31 @@ public class VendingMachineTest {
         assertFalse(vend2.isMachineEmptyCheck());
     }
 
+    @Test
+    public void productStockTracksProductsInStock() {
+        ProductStock stock = new ProductStock();
+        assertTrue(stock.isEmpty());
+        stock.put(Product.WATER, 2);
+        stock.add(Product.CANDY, 1);
+        stock.put(Product.WATER, 3);
+        assertEquals(stock.getInStockCount(), 2);
+        assertEquals(stock.getInStockProducts(), List.of(Product.WATER, Product.CANDY));
+        assertEquals(stock.nextInStock(Product.WATER.getId() + 1), Product.CANDY.getId());
+        stock.reduce(Product.CANDY);
+        assertEquals(stock.getInStockProducts(), List.of(Product.WATER));
+        stock.clear();
+        assertTrue(stock.isEmpty());
+        assertEquals(stock.getInt(Product.WATER), 0);
+
+        VendingMachine vend = new VendingMachine(20,1,10);
+        vend.selectItem("0001");
+        vend.insertCoin(Coin.TWO_POUND, 1);
+        vend.purchaseItem();
+        assertEquals(vend.getBucketProducts(), List.of(Product.COKE));
+        assertFalse(vend.getInStockProducts().contains(Product.COKE));
+        assertEquals(vend.getInStockProducts().size(), Product.values().length - 1);
+    }
+
     @Test
     public void testSelectItemCorrectState() {
         VendingMachine vend = new VendingMachine(20,10,10);
@@ -400,7 +1533,7 @@ public class VendingMachineTest {
         VendingMachine vend = new VendingMachine(20,10,10);
         vend.selectItem("0001");
         assertEquals(vend.currentItem(), Product.COKE);
-        assertEquals(vend.getSelectedItemPrice(), 2.00, DELTA);
+        assertEquals(vend.getSelectedItemPrice(), Money.ofPence(200));
     }
 
     @Test(expected = MachineSelectionException.class)
@@ -577,37 +1710,37 @@ public class VendingMachineTest {
         assertEquals(vend.getCurrentState(), vend.getNotSelectedState());
         vend.login("OwnerUsername","P4ssw0rd");
         assertEquals(vend.getCurrentState(), vend.getAdminModeState());
-        assertEquals(vend.getCoinStockTotal(), 38.8,DELTA);
+        assertEquals(vend.getCoinStockTotal(), Money.ofPence(3880));
         vend.depositCoins(10);
-        assertEquals(vend.getCoinStockTotal(), 77.6,DELTA);
+        assertEquals(vend.getCoinStockTotal(), Money.ofPence(7760));
     }
 
     @Test(expected = AdminPrivilegeException.class)
     public void depositCoinsNotAdminState() {
         VendingMachine vend = new VendingMachine(20,10,10);
         assertEquals(vend.getCurrentState(), vend.getNotSelectedState());
-        assertEquals(vend.getCoinStockTotal(), 38.8,DELTA);
+        assertEquals(vend.getCoinStockTotal(), Money.ofPence(3880));
         vend.depositCoins(10);
-        assertEquals(vend.getCoinStockTotal(), 38.8,DELTA);
+        assertEquals(vend.getCoinStockTotal(), Money.ofPence(3880));
     }
 
     @Test
     public void withdrawCoins() {
         VendingMachine vend = new VendingMachine(20,10,10);
         assertEquals(vend.getCurrentState(), vend.getNotSelectedState());
-        assertEquals(vend.getCoinStockTotal(), 38.8,DELTA);
+        assertEquals(vend.getCoinStockTotal(), Money.ofPence(3880));
         vend.login("OwnerUsername","P4ssw0rd");
         vend.withdrawCoins();
-        assertEquals(vend.getCoinStockTotal(), 0,DELTA);
+        assertEquals(vend.getCoinStockTotal(), Money.ZERO);
     }
 
     @Test(expected = AdminPrivilegeException.class)
     public void withdrawCoinsNotAdminState() {
         VendingMachine vend = new VendingMachine(20,10,10);
         assertEquals(vend.getCurrentState(), vend.getNotSelectedState());
-        assertEquals(vend.getCoinStockTotal(), 38.8,DELTA);
+        assertEquals(vend.getCoinStockTotal(), Money.ofPence(3880));
         vend.withdrawCoins();
-        assertEquals(vend.getCoinStockTotal(), 38.8,DELTA);
+        assertEquals(vend.getCoinStockTotal(), Money.ofPence(3880));
     }
 
     @Test